@@ -25,9 +25,9 @@ import de.flapdoodle.embed.mongo.config.Storage;
 import de.flapdoodle.embed.mongo.distribution.IFeatureAwareVersion;
 import de.flapdoodle.embed.mongo.packageresolver.Command;
 import de.flapdoodle.embed.mongo.packageresolver.Feature;
+import de.flapdoodle.embed.mongo.runtime.HostPlatform;
 import de.flapdoodle.embed.mongo.types.DatabaseDir;
 import de.flapdoodle.embed.process.config.SupportConfig;
-import de.flapdoodle.embed.process.runtime.NUMA;
 import de.flapdoodle.os.OS;
 import de.flapdoodle.os.OSType;
 import de.flapdoodle.os.Platform;
@@ -189,7 +189,7 @@ public abstract class MongodArguments {
 	}
 
 	private static List<String> warpWithNumaSupport(Platform platform, List<String> commands) {
-		if (NUMA.isNUMA(forCommand(Command.MongoD), platform)) {
+		if (HostPlatform.isNUMA(forCommand(Command.MongoD), platform)) {
 			if (platform.operatingSystem().type() == OSType.Linux) {
 				List<String> ret = new ArrayList<>();
 				ret.add("numactl");
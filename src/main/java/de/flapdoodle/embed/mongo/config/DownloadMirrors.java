@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.config;
+
+import de.flapdoodle.checks.Preconditions;
+import org.immutables.value.Value;
+
+import java.util.List;
+
+/**
+ * other servers with the same content as the distribution base url, e.g. a local cache or an internal repository
+ */
+@Value.Immutable
+public abstract class DownloadMirrors {
+
+	/**
+	 * tried in this order as long as nothing about their latency is known
+	 */
+	public abstract List<Mirror> mirrors();
+
+	/**
+	 * download urls starting with this base url are loaded from the mirrors
+	 */
+	@Value.Default
+	public String primaryBaseUrl() {
+		return "https://fastdl.mongodb.org";
+	}
+
+	/**
+	 * if a mirror did not send anything within this time, the next one is asked too, and the first one to answer wins
+	 */
+	@Value.Default
+	public long hedgeAfterMillis() {
+		return 2000;
+	}
+
+	/**
+	 * a download slower than this (after throughputGraceMillis) is aborted and the next mirror is used
+	 */
+	@Value.Default
+	public long minBytesPerSecond() {
+		return 32 * 1024;
+	}
+
+	@Value.Default
+	public long throughputGraceMillis() {
+		return 5000;
+	}
+
+	/**
+	 * a mirror failing this often in a row is tried last for unhealthyForMillis
+	 */
+	@Value.Default
+	public int failuresUntilUnhealthy() {
+		return 2;
+	}
+
+	@Value.Default
+	public long unhealthyForMillis() {
+		return 60000;
+	}
+
+	@Value.Check
+	protected void check() {
+		Preconditions.checkArgument(hedgeAfterMillis() > 0, "hedgeAfterMillis <= 0: %s", hedgeAfterMillis());
+		Preconditions.checkArgument(minBytesPerSecond() >= 0, "minBytesPerSecond < 0: %s", minBytesPerSecond());
+		Preconditions.checkArgument(failuresUntilUnhealthy() >= 1, "failuresUntilUnhealthy < 1: %s", failuresUntilUnhealthy());
+	}
+
+	@Value.Immutable
+	public static abstract class Mirror {
+		@Value.Parameter
+		public abstract String baseUrl();
+
+		/**
+		 * a mirror with a higher weight is preferred, even if its latency is a little bit higher
+		 */
+		@Value.Default
+		public int weight() {
+			return 1;
+		}
+
+		@Value.Check
+		protected void check() {
+			Preconditions.checkArgument(weight() >= 1, "weight < 1: %s", weight());
+		}
+
+		public static ImmutableMirror of(String baseUrl) {
+			return ImmutableMirror.of(baseUrl);
+		}
+
+		public static ImmutableMirror of(String baseUrl, int weight) {
+			return ImmutableMirror.of(baseUrl).withWeight(weight);
+		}
+	}
+
+	public static ImmutableDownloadMirrors.Builder builder() {
+		return ImmutableDownloadMirrors.builder();
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.config;
+
+import de.flapdoodle.checks.Preconditions;
+import org.immutables.value.Value;
+
+/**
+ * limits for archives and extracted file sets in the persistent dir (~/.embedmongo)
+ */
+@Value.Immutable
+public abstract class EvictionConfig {
+
+	/**
+	 * disabled by default, because each start updates the usage index and marks its entries as used
+	 */
+	@Value.Default
+	public boolean enabled() {
+		return false;
+	}
+
+	/**
+	 * least recently used entries are removed until the store is smaller
+	 */
+	@Value.Default
+	public long maxSizeInBytes() {
+		return 10L * 1024 * 1024 * 1024;
+	}
+
+	/**
+	 * entries not used for this time are removed
+	 */
+	@Value.Default
+	public long maxAgeInMillis() {
+		return 30L * 24 * 60 * 60 * 1000;
+	}
+
+	/**
+	 * entries used within this time are never removed, even if the store is too big
+	 */
+	@Value.Default
+	public long keepRecentlyUsedInMillis() {
+		return 60L * 60 * 1000;
+	}
+
+	@Value.Check
+	protected void check() {
+		Preconditions.checkArgument(maxSizeInBytes() >= 0, "maxSizeInBytes < 0: %s", maxSizeInBytes());
+		Preconditions.checkArgument(maxAgeInMillis() > 0, "maxAgeInMillis <= 0: %s", maxAgeInMillis());
+		Preconditions.checkArgument(keepRecentlyUsedInMillis() >= 0, "keepRecentlyUsedInMillis < 0: %s", keepRecentlyUsedInMillis());
+	}
+
+	public static ImmutableEvictionConfig.Builder builder() {
+		return ImmutableEvictionConfig.builder();
+	}
+
+	public static ImmutableEvictionConfig defaults() {
+		return builder().build();
+	}
+
+	public static ImmutableEvictionConfig enabledWithDefaults() {
+		return builder().enabled(true).build();
+	}
+
+	public static ImmutableEvictionConfig disabled() {
+		return builder().enabled(false).build();
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.config;
+
+import de.flapdoodle.checks.Preconditions;
+import org.immutables.value.Value;
+
+@Value.Immutable
+public abstract class PoolConfig {
+
+	/**
+	 * instances kept running, even if nobody asked for them
+	 */
+	@Value.Default
+	public int minSize() {
+		return 1;
+	}
+
+	@Value.Default
+	public int maxSize() {
+		return 4;
+	}
+
+	/**
+	 * idle instances above minSize are stopped after this time
+	 */
+	@Value.Default
+	public long idleTimeoutInMillis() {
+		return 60000;
+	}
+
+	/**
+	 * how long lease() waits for an instance if maxSize is reached
+	 */
+	@Value.Default
+	public long leaseTimeoutInMillis() {
+		return 60000;
+	}
+
+	@Value.Check
+	protected void check() {
+		Preconditions.checkArgument(minSize() >= 0, "minSize < 0: %s", minSize());
+		Preconditions.checkArgument(maxSize() >= 1, "maxSize < 1: %s", maxSize());
+		Preconditions.checkArgument(minSize() <= maxSize(), "minSize(%s) > maxSize(%s)", minSize(), maxSize());
+		Preconditions.checkArgument(idleTimeoutInMillis() > 0, "idleTimeoutInMillis <= 0: %s", idleTimeoutInMillis());
+	}
+
+	public static ImmutablePoolConfig.Builder builder() {
+		return ImmutablePoolConfig.builder();
+	}
+
+	public static ImmutablePoolConfig defaults() {
+		return builder().build();
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.config;
+
+import de.flapdoodle.checks.Preconditions;
+import de.flapdoodle.embed.process.io.directories.PersistentDir;
+import org.immutables.value.Value;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+@Value.Immutable
+public abstract class RangedDownloadConfig {
+
+	/**
+	 * number of range requests running at the same time
+	 */
+	@Value.Default
+	public int parallel() {
+		return 4;
+	}
+
+	@Value.Default
+	public long partSizeInBytes() {
+		return 8 * 1024 * 1024;
+	}
+
+	/**
+	 * parts of an interrupted download are kept here and reused by the next download of the same url.
+	 * if not set, the download of ExtractFileSet uses resumeDirOf its persistent dir, where downloads run with the lock
+	 * of their package. anywhere else parts are kept next to the destination and are not reused.
+	 */
+	public abstract Optional<Path> resumeDir();
+
+	/**
+	 * compare with the sha256 published next to the archive (url + ".sha256"), if there is one
+	 */
+	@Value.Default
+	public boolean verifyChecksum() {
+		return true;
+	}
+
+	@Value.Check
+	protected void check() {
+		Preconditions.checkArgument(parallel() >= 1, "parallel < 1: %s", parallel());
+		Preconditions.checkArgument(partSizeInBytes() >= 1024, "partSizeInBytes < 1024: %s", partSizeInBytes());
+	}
+
+	public static Path resumeDirOf(PersistentDir persistentDir) {
+		return persistentDir.value().resolve("archives").resolve(".partial");
+	}
+
+	public static ImmutableRangedDownloadConfig.Builder builder() {
+		return ImmutableRangedDownloadConfig.builder();
+	}
+
+	public static ImmutableRangedDownloadConfig defaults() {
+		return builder().build();
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.config;
+
+/**
+ * how to find out that a started mongod/mongos accepts connections
+ */
+public enum ReadinessCheck {
+	/**
+	 * wait for "waiting for connections" in the process output
+	 */
+	LOG_MESSAGE,
+	/**
+	 * wait for the log message, but poll the port with an isMaster handshake
+	 * at the same time, whatever comes first wins
+	 */
+	LOG_MESSAGE_OR_WIRE_PROTOCOL
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.config;
+
+import de.flapdoodle.checks.Preconditions;
+import org.immutables.value.Value;
+
+/**
+ * limits for the process output kept while waiting for a mongod/mongos to start,
+ * only the last lines are part of the error message if the start fails
+ */
+@Value.Immutable
+public abstract class StartupLogCapture {
+
+	@Value.Default
+	public int maxLines() {
+		return 200;
+	}
+
+	@Value.Default
+	public int maxChars() {
+		return 64 * 1024;
+	}
+
+	@Value.Check
+	protected void check() {
+		Preconditions.checkArgument(maxLines() >= 1, "maxLines < 1: %s", maxLines());
+		Preconditions.checkArgument(maxChars() >= 1, "maxChars < 1: %s", maxChars());
+	}
+
+	public static ImmutableStartupLogCapture.Builder builder() {
+		return ImmutableStartupLogCapture.builder();
+	}
+
+	public static ImmutableStartupLogCapture defaults() {
+		return builder().build();
+	}
+}
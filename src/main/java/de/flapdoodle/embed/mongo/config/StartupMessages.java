@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.config;
+
+import org.immutables.value.Value;
+
+import java.util.List;
+
+/**
+ * regular expressions matched against each line of the process output while
+ * waiting for a mongod/mongos to start. a failure message must contain a named group 'error'.
+ * to add your own failure messages start with
+ * {@code StartupMessages.builder().from(StartupMessages.defaults())}
+ */
+@Value.Immutable
+public abstract class StartupMessages {
+
+	public static final String ERROR_GROUP = "error";
+
+	public abstract List<String> successMessages();
+
+	public abstract List<String> failureMessages();
+
+	public static ImmutableStartupMessages.Builder builder() {
+		return ImmutableStartupMessages.builder();
+	}
+
+	public static ImmutableStartupMessages defaults() {
+		return builder()
+			// old: waiting for connections on port
+			// since 4.4.5: Waiting for connections
+			.addSuccessMessages("aiting for connections")
+			.addFailureMessages(
+				"(?<error>failed errno)",
+				"ERROR:(?<error>.*)",
+				"(?<error>error command line)",
+				"(?<error>Error parsing command line:.*)",
+				"(?<error>Address already in use)",
+				"(?<error>error while loading shared libraries:.*)",
+				"(?<error>SSLEAY32.dll was not found)",
+				"(?<error>LIBEAY32.dll was not found)",
+				"(?<error>the code execution cannot proceed because.*)"
+			)
+			.build();
+	}
+}
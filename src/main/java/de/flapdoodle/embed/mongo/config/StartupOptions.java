@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.config;
+
+import de.flapdoodle.embed.mongo.runtime.StructuredLog;
+import org.immutables.value.Value;
+
+/**
+ * everything a mongod/mongos startup needs besides the process itself,
+ * new options are added here, so that the factory signature does not change
+ */
+@Value.Immutable
+public abstract class StartupOptions {
+
+	@Value.Default
+	public long startupTimeout() {
+		return 20000;
+	}
+
+	@Value.Default
+	public ReadinessCheck readinessCheck() {
+		return ReadinessCheck.LOG_MESSAGE;
+	}
+
+	@Value.Default
+	public StartupLogCapture logCapture() {
+		return StartupLogCapture.defaults();
+	}
+
+	@Value.Default
+	public StartupMessages startupMessages() {
+		return StartupMessages.defaults();
+	}
+
+	@Value.Default
+	@Value.Auxiliary
+	public StructuredLog structuredLog() {
+		return StructuredLog.disabled();
+	}
+
+	@Value.Default
+	public StopConfig stopConfig() {
+		return StopConfig.defaults();
+	}
+
+	public static ImmutableStartupOptions.Builder builder() {
+		return ImmutableStartupOptions.builder();
+	}
+
+	public static ImmutableStartupOptions defaults() {
+		return builder().build();
+	}
+}
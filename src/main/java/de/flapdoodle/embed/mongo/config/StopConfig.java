@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.config;
+
+import de.flapdoodle.checks.Preconditions;
+import de.flapdoodle.embed.mongo.runtime.ShutdownCommand;
+import org.immutables.value.Value;
+
+import java.util.Optional;
+
+/**
+ * how a mongod/mongos is stopped: first the shutdown command is sent and the process gets
+ * ProcessConfig.stopTimeoutInMillis() to exit. if it is still alive, it is destroyed (SIGTERM)
+ * and then destroyed forcibly (SIGKILL), each step with its own timeout.
+ */
+@Value.Immutable
+public abstract class StopConfig {
+
+	/**
+	 * if not set, it is derived from the version
+	 */
+	public abstract Optional<ShutdownCommand> shutdownCommand();
+
+	/**
+	 * use java.lang.ProcessHandle (java 9+) instead of calling kill/taskkill
+	 */
+	@Value.Default
+	public boolean useProcessHandle() {
+		return true;
+	}
+
+	@Value.Default
+	public long destroyTimeoutInMillis() {
+		return 3000;
+	}
+
+	@Value.Default
+	public long destroyForciblyTimeoutInMillis() {
+		return 2000;
+	}
+
+	@Value.Check
+	protected void check() {
+		Preconditions.checkArgument(destroyTimeoutInMillis() >= 0, "destroyTimeoutInMillis < 0: %s", destroyTimeoutInMillis());
+		Preconditions.checkArgument(destroyForciblyTimeoutInMillis() >= 0, "destroyForciblyTimeoutInMillis < 0: %s", destroyForciblyTimeoutInMillis());
+	}
+
+	public static ImmutableStopConfig.Builder builder() {
+		return ImmutableStopConfig.builder();
+	}
+
+	public static ImmutableStopConfig defaults() {
+		return builder().build();
+	}
+}
@@ -259,23 +259,18 @@ public enum Version implements IFeatureAwareVersion, HasMongotoolsPackage {
   ;
 
 	private final String specificVersion;
-	private final FeatureSet features;
-	private final NumericVersion numericVersion;
 	private final MongotoolsVersion.Main mongodumpVersion;
+	// computed on first access, so that class init does not resolve features of all versions
+	private volatile FeatureSet features;
+	private volatile NumericVersion numericVersion;
 
 		Version(String vName) {
 				this.specificVersion = vName;
-				this.features = FeatureSetResolver.defaultInstance()
-					.featuresOf(de.flapdoodle.embed.process.distribution.Version.of(specificVersion));
-				this.numericVersion = NumericVersion.of(vName);
 				this.mongodumpVersion = null;
 		}
 
 		Version(String vName, MongotoolsVersion.Main mongodumpVersion) {
 				this.specificVersion = vName;
-				this.features = FeatureSetResolver.defaultInstance()
-					.featuresOf(de.flapdoodle.embed.process.distribution.Version.of(specificVersion));
-				this.numericVersion = NumericVersion.of(vName);
 				this.mongodumpVersion = mongodumpVersion;
 		}
 
@@ -290,12 +285,23 @@ public enum Version implements IFeatureAwareVersion, HasMongotoolsPackage {
 
 	@Override
 	public NumericVersion numericVersion() {
-		return numericVersion;
+		NumericVersion ret = numericVersion;
+		if (ret == null) {
+			ret = NumericVersion.of(specificVersion);
+			numericVersion = ret;
+		}
+		return ret;
 	}
 
 	@Override
 	public FeatureSet features() {
-		return features;
+		FeatureSet ret = features;
+		if (ret == null) {
+			ret = FeatureSetResolver.defaultInstance()
+				.featuresOf(de.flapdoodle.embed.process.distribution.Version.of(specificVersion));
+			features = ret;
+		}
+		return ret;
 	}
 	@Override
 	public String toString() {
@@ -24,26 +24,29 @@ import de.flapdoodle.embed.mongo.packageresolver.FeatureSet;
 import de.flapdoodle.embed.mongo.packageresolver.FeatureSetResolver;
 import de.flapdoodle.embed.mongo.packageresolver.NumericVersion;
 
+import de.flapdoodle.embed.mongo.util.LruCache;
+
 import java.util.Objects;
 
 public class Versions {
 
+	private static final LruCache<de.flapdoodle.embed.process.distribution.Version, IFeatureAwareVersion> WITH_FEATURES = new LruCache<>(256);
+
 	private Versions() {
 		// no instance
 	}
 
 	public static IFeatureAwareVersion withFeatures(de.flapdoodle.embed.process.distribution.Version version) {
-		return new GenericFeatureAwareVersion(version);
+		return WITH_FEATURES.get(version, GenericFeatureAwareVersion::new);
 	}
 
 	static class GenericFeatureAwareVersion implements IFeatureAwareVersion {
 
 		private final de.flapdoodle.embed.process.distribution.Version _version;
-		private final FeatureSet featureSet;
+		private volatile FeatureSet featureSet;
 
 		public GenericFeatureAwareVersion(de.flapdoodle.embed.process.distribution.Version version) {
 			_version = version;
-			featureSet = FeatureSetResolver.defaultInstance().featuresOf(version);
 		}
 
 		@Override
@@ -53,7 +56,12 @@ public class Versions {
 
 		@Override
 		public FeatureSet features() {
-			return featureSet;
+			FeatureSet ret = featureSet;
+			if (ret == null) {
+				ret = FeatureSetResolver.defaultInstance().featuresOf(_version);
+				featureSet = ret;
+			}
+			return ret;
 		}
 
 		@Override
@@ -70,11 +78,11 @@ public class Versions {
 			if (this == o) return true;
 			if (o == null || getClass() != o.getClass()) return false;
 			GenericFeatureAwareVersion that = (GenericFeatureAwareVersion) o;
-			return _version.equals(that._version) && featureSet.equals(that.featureSet);
+			return _version.equals(that._version) && features().equals(that.features());
 		}
 		
 		@Override public int hashCode() {
-			return Objects.hash(_version, featureSet);
+			return Objects.hash(_version, features());
 		}
 	}
 }
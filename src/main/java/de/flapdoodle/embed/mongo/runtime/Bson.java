@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * minimal bson codec, just enough to send commands to a mongod without a driver
+ */
+public final class Bson {
+
+	private static final byte DOUBLE = 0x01;
+	private static final byte STRING = 0x02;
+	private static final byte DOCUMENT = 0x03;
+	private static final byte ARRAY = 0x04;
+	private static final byte BINARY = 0x05;
+	private static final byte UNDEFINED = 0x06;
+	private static final byte OBJECT_ID = 0x07;
+	private static final byte BOOLEAN = 0x08;
+	private static final byte DATE_TIME = 0x09;
+	private static final byte NULL = 0x0A;
+	private static final byte REGEX = 0x0B;
+	private static final byte INT32 = 0x10;
+	private static final byte TIMESTAMP = 0x11;
+	private static final byte INT64 = 0x12;
+	private static final byte DECIMAL128 = 0x13;
+	private static final byte MIN_KEY = (byte) 0xFF;
+	private static final byte MAX_KEY = 0x7F;
+
+	private Bson() {
+		// no instance
+	}
+
+	public static byte[] encode(Map<String, ?> document) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeDocument(out, document);
+		return out.toByteArray();
+	}
+
+	public static Map<String, Object> decode(byte[] content) throws IOException {
+		return decode(ByteBuffer.wrap(content));
+	}
+
+	public static Map<String, Object> decode(ByteBuffer buffer) throws IOException {
+		try {
+			return readDocument(buffer.order(ByteOrder.LITTLE_ENDIAN));
+		}
+		catch (RuntimeException rx) {
+			throw new IOException("could not decode bson document", rx);
+		}
+	}
+
+	private static void writeDocument(ByteArrayOutputStream out, Map<String, ?> document) {
+		ByteArrayOutputStream elements = new ByteArrayOutputStream();
+		document.forEach((key, value) -> writeElement(elements, key, value));
+		writeInt(out, elements.size() + 5);
+		out.write(elements.toByteArray(), 0, elements.size());
+		out.write(0);
+	}
+
+	private static void writeElement(ByteArrayOutputStream out, String key, Object value) {
+		if (value == null) {
+			out.write(NULL);
+			writeCString(out, key);
+		} else if (value instanceof String) {
+			out.write(STRING);
+			writeCString(out, key);
+			byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+			writeInt(out, bytes.length + 1);
+			out.write(bytes, 0, bytes.length);
+			out.write(0);
+		} else if (value instanceof Integer) {
+			out.write(INT32);
+			writeCString(out, key);
+			writeInt(out, (Integer) value);
+		} else if (value instanceof Long) {
+			out.write(INT64);
+			writeCString(out, key);
+			writeLong(out, (Long) value);
+		} else if (value instanceof Double) {
+			out.write(DOUBLE);
+			writeCString(out, key);
+			writeLong(out, Double.doubleToRawLongBits((Double) value));
+		} else if (value instanceof Boolean) {
+			out.write(BOOLEAN);
+			writeCString(out, key);
+			out.write(((Boolean) value) ? 1 : 0);
+		} else if (value instanceof Map) {
+			out.write(DOCUMENT);
+			writeCString(out, key);
+			@SuppressWarnings("unchecked")
+			Map<String, ?> document = (Map<String, ?>) value;
+			writeDocument(out, document);
+		} else if (value instanceof List) {
+			out.write(ARRAY);
+			writeCString(out, key);
+			Map<String, Object> asDocument = new LinkedHashMap<>();
+			List<?> list = (List<?>) value;
+			for (int i = 0; i < list.size(); i++) {
+				asDocument.put(String.valueOf(i), list.get(i));
+			}
+			writeDocument(out, asDocument);
+		} else {
+			throw new IllegalArgumentException("unsupported type for " + key + ": " + value.getClass());
+		}
+	}
+
+	private static void writeCString(ByteArrayOutputStream out, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.write(bytes, 0, bytes.length);
+		out.write(0);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+		out.write(value >>> 24);
+	}
+
+	private static void writeLong(ByteArrayOutputStream out, long value) {
+		writeInt(out, (int) value);
+		writeInt(out, (int) (value >>> 32));
+	}
+
+	private static Map<String, Object> readDocument(ByteBuffer buffer) {
+		int start = buffer.position();
+		int length = buffer.getInt();
+		int end = start + length - 1;
+		Map<String, Object> ret = new LinkedHashMap<>();
+		while (buffer.position() < end) {
+			byte type = buffer.get();
+			String key = readCString(buffer);
+			ret.put(key, readValue(buffer, type));
+		}
+		if (buffer.get() != 0) {
+			throw new IllegalArgumentException("document not terminated at " + buffer.position());
+		}
+		return ret;
+	}
+
+	private static Object readValue(ByteBuffer buffer, byte type) {
+		switch (type) {
+			case DOUBLE:
+				return buffer.getDouble();
+			case STRING:
+				return readString(buffer);
+			case DOCUMENT:
+				return readDocument(buffer);
+			case ARRAY:
+				return new ArrayList<>(readDocument(buffer).values());
+			case BINARY: {
+				int length = buffer.getInt();
+				buffer.get();
+				byte[] content = new byte[length];
+				buffer.get(content);
+				return content;
+			}
+			case OBJECT_ID: {
+				byte[] content = new byte[12];
+				buffer.get(content);
+				return content;
+			}
+			case BOOLEAN:
+				return buffer.get() != 0;
+			case DATE_TIME:
+			case TIMESTAMP:
+			case INT64:
+				return buffer.getLong();
+			case UNDEFINED:
+			case NULL:
+			case MIN_KEY:
+			case MAX_KEY:
+				return null;
+			case REGEX:
+				return readCString(buffer) + "/" + readCString(buffer);
+			case INT32:
+				return buffer.getInt();
+			case DECIMAL128: {
+				byte[] content = new byte[16];
+				buffer.get(content);
+				return content;
+			}
+			default:
+				throw new IllegalArgumentException("unsupported bson type: " + type);
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		byte[] content = new byte[length - 1];
+		buffer.get(content);
+		buffer.get();
+		return new String(content, StandardCharsets.UTF_8);
+	}
+
+	private static String readCString(ByteBuffer buffer) {
+		int start = buffer.position();
+		int end = start;
+		while (buffer.get(end) != 0) {
+			end++;
+		}
+		byte[] content = new byte[end - start];
+		buffer.get(content);
+		buffer.get();
+		return new String(content, StandardCharsets.UTF_8);
+	}
+}
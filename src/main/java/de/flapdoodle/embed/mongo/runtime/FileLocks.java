@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * lock a file, so that only one thread of all JVMs on this host runs an action.
+ * a file lock is held by the JVM, so threads of the same JVM are serialized with a lock per path.
+ * the last holder deletes the lock file and marks it as deleted before the lock is released, so that
+ * a process which got the lock of the unlinked file knows that it must open it again.
+ */
+public final class FileLocks {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileLocks.class);
+
+	private static final long DELETED_MARKER_SIZE = 1;
+	private static final boolean DELETE_LOCK_FILES = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+	private static final Map<Path, LocalLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+	private FileLocks() {
+		// no instance
+	}
+
+	public static <T> T withLock(Path lockFile, Supplier<T> action) {
+		Path path = lockFile.toAbsolutePath().normalize();
+		LocalLock localLock = LOCAL_LOCKS.compute(path, (key, it) -> {
+			LocalLock ret = it != null ? it : new LocalLock();
+			ret.users.incrementAndGet();
+			return ret;
+		});
+		try {
+			localLock.lock.lock();
+			try {
+				if (localLock.lock.getHoldCount() > 1) {
+					return action.get();
+				}
+				return withFileLock(path, action, localLock);
+			}
+			finally {
+				localLock.lock.unlock();
+			}
+		}
+		finally {
+			LOCAL_LOCKS.computeIfPresent(path, (key, it) -> it.users.decrementAndGet() == 0 ? null : it);
+		}
+	}
+
+	// VisibleForTesting
+	static int localLocks() {
+		return LOCAL_LOCKS.size();
+	}
+
+	private static <T> T withFileLock(Path path, Supplier<T> action, LocalLock localLock) {
+		try {
+			while (true) {
+				try (FileChannel channel = open(path); FileLock ignore = lock(channel, path)) {
+					if (channel.size() == DELETED_MARKER_SIZE) {
+						LOGGER.debug("{} was deleted while waiting for its lock, try again", path);
+						continue;
+					}
+					try {
+						return action.get();
+					}
+					finally {
+						if (DELETE_LOCK_FILES && localLock.users.get() == 1) {
+							deleteLocked(channel, path);
+						}
+					}
+				}
+			}
+		}
+		catch (IOException iox) {
+			throw new RuntimeException("could not lock " + path, iox);
+		}
+	}
+
+	private static void deleteLocked(FileChannel channel, Path path) {
+		try {
+			// unlink first, a marked file must never be found by its path
+			Files.deleteIfExists(path);
+			channel.write(ByteBuffer.wrap(new byte[] { 1 }), 0);
+		}
+		catch (IOException iox) {
+			LOGGER.debug("could not delete {}", path, iox);
+		}
+	}
+
+	private static FileChannel open(Path path) throws IOException {
+		Path parent = path.getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	}
+
+	private static FileLock lock(FileChannel channel, Path path) throws IOException {
+		FileLock ret = channel.tryLock();
+		if (ret == null) {
+			LOGGER.info("wait for other process, {} is locked", path);
+			ret = channel.lock();
+		}
+		return ret;
+	}
+
+	private static final class LocalLock {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final AtomicInteger users = new AtomicInteger();
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import de.flapdoodle.embed.process.config.SupportConfig;
+import de.flapdoodle.embed.process.runtime.NUMA;
+import de.flapdoodle.os.CommonOS;
+import de.flapdoodle.os.Platform;
+
+import java.util.function.Supplier;
+
+/**
+ * platform and NUMA detection reads os release files and starts processes,
+ * so it is done only once per JVM. both can be overridden for all following starts.
+ */
+public final class HostPlatform {
+
+	private static final Object LOCK = new Object();
+
+	private static volatile Supplier<Platform> detection = () -> Platform.detect(CommonOS.list());
+	private static volatile Platform platform;
+	private static volatile Boolean numaOverride;
+
+	private HostPlatform() {
+		// no instance
+	}
+
+	public static Platform detect() {
+		Platform ret = platform;
+		if (ret == null) {
+			synchronized (LOCK) {
+				ret = platform;
+				if (ret == null) {
+					ret = detection.get();
+					platform = ret;
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * NUMA caches the result for each platform
+	 */
+	public static boolean isNUMA(SupportConfig supportConfig, Platform platform) {
+		Boolean override = numaOverride;
+		return override != null
+			? override
+			: NUMA.isNUMA(supportConfig, platform);
+	}
+
+	public static void override(Platform platform) {
+		synchronized (LOCK) {
+			HostPlatform.platform = platform;
+		}
+	}
+
+	public static void overrideNUMA(boolean isNUMA) {
+		numaOverride = isNUMA;
+	}
+
+	/**
+	 * forget detected and overridden values, next call detects again
+	 */
+	public static void reset() {
+		synchronized (LOCK) {
+			platform = null;
+			numaOverride = null;
+		}
+	}
+
+	// VisibleForTesting
+	static void detectWith(Supplier<Platform> detection) {
+		synchronized (LOCK) {
+			HostPlatform.detection = detection;
+			platform = null;
+		}
+	}
+}
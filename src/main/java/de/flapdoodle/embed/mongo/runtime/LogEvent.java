@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import org.immutables.value.Value;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * one line of structured (json) log output, see
+ * https://www.mongodb.com/docs/manual/reference/log-messages/#structured-logging
+ */
+@Value.Immutable
+public abstract class LogEvent {
+
+	public static final int MONGODB_STARTING = 4615611;
+	public static final int WAITING_FOR_CONNECTIONS = 23016;
+	public static final int FATAL_ASSERTION = 23091;
+
+	/**
+	 * t.$date
+	 */
+	public abstract String timestamp();
+
+	/**
+	 * s: F, E, W, I, D1..D5
+	 */
+	public abstract String severity();
+
+	/**
+	 * c
+	 */
+	public abstract String component();
+
+	public abstract int id();
+
+	/**
+	 * ctx
+	 */
+	public abstract String context();
+
+	/**
+	 * msg
+	 */
+	public abstract String message();
+
+	/**
+	 * attr, json null values are skipped
+	 */
+	public abstract Map<String, Object> attributes();
+
+	public Optional<Object> attribute(String name) {
+		return Optional.ofNullable(attributes().get(name));
+	}
+
+	public Optional<Integer> intAttribute(String name) {
+		return attribute(name)
+			.filter(Number.class::isInstance)
+			.map(it -> ((Number) it).intValue());
+	}
+
+	public boolean isFatal() {
+		return "F".equals(severity());
+	}
+
+	public boolean isError() {
+		return "E".equals(severity()) || isFatal();
+	}
+
+	public boolean isWarning() {
+		return "W".equals(severity());
+	}
+
+	public static ImmutableLogEvent.Builder builder() {
+		return ImmutableLogEvent.builder();
+	}
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import de.flapdoodle.embed.mongo.config.DownloadMirrors;
+import de.flapdoodle.embed.process.config.TimeoutConfig;
+import de.flapdoodle.embed.process.net.DownloadToPath;
+import de.flapdoodle.embed.process.net.UrlStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * downloads from a list of mirrors instead of the primary base url.
+ * mirrors are ordered by weight and measured latency, a mirror which does not answer in time is hedged
+ * with the next one, and a failing or too slow download continues with the next mirror.
+ * mirrors failing repeatedly are tried last for some time.
+ */
+public class MirrorDownloadToPath implements DownloadToPath {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MirrorDownloadToPath.class);
+
+	private static final double LATENCY_WEIGHT = 0.3;
+
+	private final DownloadMirrors config;
+	private final DownloadToPath delegate;
+	private final LongSupplier now;
+	private final Map<String, Health> health = new ConcurrentHashMap<>();
+	private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "mirror-download");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public MirrorDownloadToPath(DownloadMirrors config) {
+		this(config, UrlStreams.asDownloadToPath());
+	}
+
+	public MirrorDownloadToPath(DownloadMirrors config, DownloadToPath delegate) {
+		this(config, delegate, System::currentTimeMillis);
+	}
+
+	MirrorDownloadToPath(DownloadMirrors config, DownloadToPath delegate, LongSupplier now) {
+		this.config = config;
+		this.delegate = delegate;
+		this.now = now;
+	}
+
+	@Override
+	public void download(URL url, Path destination, Optional<Proxy> proxy, String userAgent, TimeoutConfig timeoutConfig, DownloadCopyListener copyListener) throws IOException {
+		String source = url.toString();
+		if (config.mirrors().isEmpty() || !source.startsWith(config.primaryBaseUrl())) {
+			delegate.download(url, destination, proxy, userAgent, timeoutConfig, copyListener);
+			return;
+		}
+		String relativePath = source.substring(config.primaryBaseUrl().length());
+
+		List<DownloadMirrors.Mirror> candidates = new ArrayList<>(ordered());
+		BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+		AtomicReference<Attempt> leader = new AtomicReference<>();
+		List<Attempt> running = new ArrayList<>();
+		IOException failures = new IOException("could not download " + relativePath + " from any mirror");
+		int next = 0;
+
+		try {
+			while (true) {
+				if (running.isEmpty()) {
+					if (next >= candidates.size()) {
+						throw failures;
+					}
+					running.add(start(next, candidates.get(next++), relativePath, destination, proxy, userAgent, timeoutConfig, copyListener, leader, events));
+				}
+
+				boolean mayHedge = leader.get() == null && next < candidates.size();
+				Event event = mayHedge
+					? events.poll(config.hedgeAfterMillis(), TimeUnit.MILLISECONDS)
+					: events.take();
+
+				if (event == null) {
+					LOGGER.info("no answer from {} within {}ms, ask {} too", running.get(running.size() - 1).mirror.baseUrl(),
+						config.hedgeAfterMillis(), candidates.get(next).baseUrl());
+					running.add(start(next, candidates.get(next++), relativePath, destination, proxy, userAgent, timeoutConfig, copyListener, leader, events));
+					continue;
+				}
+
+				Attempt attempt = event.attempt;
+				switch (event.state) {
+					case LEADING:
+						for (Attempt other : running) {
+							if (other != attempt) {
+								other.cancel();
+								if (other.latencyMillis < 0) {
+									// did not answer until now, which is a lower bound of its latency
+									health(other.mirror).latency(now.getAsLong() - other.started);
+								}
+							}
+						}
+						break;
+					case DONE:
+						running.remove(attempt);
+						if (leader.get() == attempt || leader.compareAndSet(null, attempt)) {
+							Files.move(attempt.file, destination);
+							health(attempt.mirror).success(attempt.latencyMillis);
+							return;
+						}
+						deleteQuietly(attempt.file);
+						break;
+					case FAILED:
+						running.remove(attempt);
+						if (leader.compareAndSet(attempt, null)) {
+							// all others were cancelled by this one, but may be healthy, so they are tried again next
+							List<DownloadMirrors.Mirror> cancelled = running.stream()
+								.filter(it -> it.cancelled)
+								.map(it -> it.mirror)
+								.collect(Collectors.toList());
+							running.removeIf(it -> it.cancelled);
+							candidates.addAll(next, cancelled);
+						}
+						if (!attempt.cancelled) {
+							LOGGER.warn("download from {} failed: {}", attempt.mirror.baseUrl(), event.failure.getMessage());
+							health(attempt.mirror).failure(now.getAsLong(), config);
+							failures.addSuppressed(event.failure);
+						}
+						break;
+				}
+			}
+		}
+		catch (InterruptedException ix) {
+			Thread.currentThread().interrupt();
+			throw new IOException("download interrupted", ix);
+		}
+		finally {
+			running.forEach(Attempt::cancel);
+		}
+	}
+
+	private Attempt start(int index, DownloadMirrors.Mirror mirror, String relativePath, Path destination, Optional<Proxy> proxy, String userAgent,
+		TimeoutConfig timeoutConfig, DownloadCopyListener copyListener, AtomicReference<Attempt> leader, BlockingQueue<Event> events) throws IOException {
+		URL url = new URL(mirror.baseUrl() + relativePath);
+		Path file = destination.resolveSibling(destination.getFileName() + ".mirror-" + index);
+		Files.deleteIfExists(file);
+		Attempt attempt = new Attempt(mirror, file, now.getAsLong());
+
+		DownloadCopyListener attemptListener = (ignore, bytesCopied, contentLength) -> {
+			if (attempt.cancelled) {
+				throw new Cancelled();
+			}
+			if (bytesCopied > 0 && attempt.latencyMillis < 0) {
+				attempt.latencyMillis = now.getAsLong() - attempt.started;
+				if (leader.compareAndSet(null, attempt)) {
+					events.add(new Event(attempt, State.LEADING, null));
+				}
+			}
+			if (leader.get() == attempt) {
+				checkThroughput(attempt, bytesCopied);
+				copyListener.downloaded(url, bytesCopied, contentLength);
+			}
+		};
+
+		executor.execute(() -> {
+			try {
+				delegate.download(url, file, proxy, userAgent, timeoutConfig, attemptListener);
+				events.add(new Event(attempt, State.DONE, null));
+			}
+			catch (IOException | RuntimeException ex) {
+				deleteQuietly(file);
+				events.add(new Event(attempt, State.FAILED, ex));
+			}
+		});
+		return attempt;
+	}
+
+	private void checkThroughput(Attempt attempt, long bytesCopied) {
+		long firstByte = attempt.started + attempt.latencyMillis;
+		long elapsed = now.getAsLong() - firstByte;
+		if (elapsed > config.throughputGraceMillis() && bytesCopied * 1000 / elapsed < config.minBytesPerSecond()) {
+			throw new TooSlow(attempt.mirror.baseUrl() + ": " + (bytesCopied * 1000 / elapsed) + " bytes/s < " + config.minBytesPerSecond());
+		}
+	}
+
+	/**
+	 * healthy mirrors by weighted latency, then unhealthy ones, the one recovering first before the others
+	 */
+	List<DownloadMirrors.Mirror> ordered() {
+		long currentTime = now.getAsLong();
+		List<DownloadMirrors.Mirror> healthy = config.mirrors().stream()
+			.filter(it -> health(it).unhealthyUntil <= currentTime)
+			.sorted(Comparator.comparingDouble(it -> (Math.max(0, health(it).latencyMillis) + 1) / it.weight()))
+			.collect(Collectors.toList());
+		List<DownloadMirrors.Mirror> unhealthy = config.mirrors().stream()
+			.filter(it -> health(it).unhealthyUntil > currentTime)
+			.sorted(Comparator.comparingLong(it -> health(it).unhealthyUntil))
+			.collect(Collectors.toList());
+		healthy.addAll(unhealthy);
+		return healthy;
+	}
+
+	private Health health(DownloadMirrors.Mirror mirror) {
+		return health.computeIfAbsent(mirror.baseUrl(), it -> new Health());
+	}
+
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		}
+		catch (IOException iox) {
+			LOGGER.debug("could not delete {}", file, iox);
+		}
+	}
+
+	private enum State {
+		LEADING, DONE, FAILED
+	}
+
+	private static final class Event {
+		private final Attempt attempt;
+		private final State state;
+		private final Exception failure;
+
+		private Event(Attempt attempt, State state, Exception failure) {
+			this.attempt = attempt;
+			this.state = state;
+			this.failure = failure;
+		}
+	}
+
+	private static final class Attempt {
+		private final DownloadMirrors.Mirror mirror;
+		private final Path file;
+		private final long started;
+		private volatile long latencyMillis = -1;
+		private volatile boolean cancelled = false;
+
+		private Attempt(DownloadMirrors.Mirror mirror, Path file, long started) {
+			this.mirror = mirror;
+			this.file = file;
+			this.started = started;
+		}
+
+		private void cancel() {
+			cancelled = true;
+		}
+	}
+
+	private static final class Health {
+		private volatile double latencyMillis = -1;
+		private volatile long unhealthyUntil = 0;
+		private int failures = 0;
+
+		private synchronized void latency(long latency) {
+			latencyMillis = latencyMillis < 0
+				? latency
+				: latencyMillis * (1 - LATENCY_WEIGHT) + latency * LATENCY_WEIGHT;
+		}
+
+		private synchronized void success(long latency) {
+			latency(latency);
+			failures = 0;
+			unhealthyUntil = 0;
+		}
+
+		private synchronized void failure(long currentTime, DownloadMirrors config) {
+			failures++;
+			if (failures >= config.failuresUntilUnhealthy()) {
+				failures = 0;
+				unhealthyUntil = currentTime + config.unhealthyForMillis();
+			}
+		}
+	}
+
+	private static final class Cancelled extends RuntimeException {
+		private Cancelled() {
+			super("cancelled, another mirror was faster");
+		}
+	}
+
+	private static final class TooSlow extends RuntimeException {
+		private TooSlow(String message) {
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * talk to a mongod/mongos with plain wire protocol messages
+ */
+public final class MongoWire {
+
+	private static final int OP_REPLY = 1;
+	private static final int OP_QUERY = 2004;
+	private static final int OP_MSG = 2013;
+	private static final int HEADER_LENGTH = 16;
+	private static final int MAX_MESSAGE_LENGTH = 48 * 1024 * 1024;
+
+	/**
+	 * OP_MSG is available since mongodb 3.6
+	 */
+	private static final int OP_MSG_MIN_WIRE_VERSION = 6;
+
+	private MongoWire() {
+		// no instance
+	}
+
+	public static Connection connect(InetAddress address, int port, int timeoutInMillis) throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.setSoTimeout(timeoutInMillis);
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(address, port), timeoutInMillis);
+			return new Connection(socket);
+		}
+		catch (IOException | RuntimeException ex) {
+			socket.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * true if something on this port answers the isMaster handshake
+	 */
+	public static boolean isAcceptingCommands(InetAddress address, int port, int timeoutInMillis) {
+		try (Connection connection = connect(address, port, timeoutInMillis)) {
+			return isOk(connection.handshake());
+		}
+		catch (IOException iox) {
+			return false;
+		}
+	}
+
+	public static boolean isOk(Map<String, Object> reply) {
+		Object ok = reply.get("ok");
+		return ok instanceof Number && ((Number) ok).doubleValue() >= 1.0;
+	}
+
+	public static class Connection implements Closeable {
+		private final Socket socket;
+		private final OutputStream out;
+		private final DataInputStream in;
+		private final Map<String, Object> handshake;
+		private int requestId = 0;
+
+		private Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.out = socket.getOutputStream();
+			this.in = new DataInputStream(socket.getInputStream());
+			this.handshake = Collections.unmodifiableMap(legacyCommand("admin", singleton("isMaster", 1)));
+		}
+
+		/**
+		 * isMaster reply, every server version understands this as OP_QUERY
+		 */
+		public Map<String, Object> handshake() {
+			return handshake;
+		}
+
+		public int maxWireVersion() {
+			Object value = handshake.get("maxWireVersion");
+			return value instanceof Number ? ((Number) value).intValue() : 0;
+		}
+
+		public boolean supportsOpMsg() {
+			return maxWireVersion() >= OP_MSG_MIN_WIRE_VERSION;
+		}
+
+		public Map<String, Object> command(String database, Map<String, ?> command) throws IOException {
+			return supportsOpMsg()
+				? opMsgCommand(database, command)
+				: legacyCommand(database, command);
+		}
+
+		public Map<String, Object> legacyCommand(String database, Map<String, ?> command) throws IOException {
+			int id = ++requestId;
+			send(opQuery(id, database, command));
+			return readReply(id);
+		}
+
+		public Map<String, Object> opMsgCommand(String database, Map<String, ?> command) throws IOException {
+			int id = ++requestId;
+			send(opMsg(id, database, command));
+			return readReply(id);
+		}
+
+		public void send(byte[] message) throws IOException {
+			out.write(message);
+			out.flush();
+		}
+
+		public List<String> databaseNames() throws IOException {
+			Map<String, Object> command = new LinkedHashMap<>();
+			command.put("listDatabases", 1);
+			command.put("nameOnly", true);
+			Map<String, Object> reply = command("admin", command);
+			if (!isOk(reply)) {
+				throw new IOException("listDatabases failed: " + reply);
+			}
+			List<String> ret = new ArrayList<>();
+			Object databases = reply.get("databases");
+			if (databases instanceof List) {
+				for (Object database : (List<?>) databases) {
+					if (database instanceof Map) {
+						Object name = ((Map<?, ?>) database).get("name");
+						if (name instanceof String) {
+							ret.add((String) name);
+						}
+					}
+				}
+			}
+			return ret;
+		}
+
+		public void dropDatabase(String name) throws IOException {
+			Map<String, Object> reply = command(name, singleton("dropDatabase", 1));
+			if (!isOk(reply)) {
+				throw new IOException("dropDatabase " + name + " failed: " + reply);
+			}
+		}
+
+		private Map<String, Object> readReply(int id) throws IOException {
+			byte[] header = new byte[HEADER_LENGTH];
+			in.readFully(header);
+			ByteBuffer headerBuffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+			int length = headerBuffer.getInt();
+			headerBuffer.getInt();
+			int responseTo = headerBuffer.getInt();
+			int opCode = headerBuffer.getInt();
+
+			if (length < HEADER_LENGTH || length > MAX_MESSAGE_LENGTH) {
+				throw new IOException("invalid message length: " + length);
+			}
+			byte[] body = new byte[length - HEADER_LENGTH];
+			in.readFully(body);
+
+			if (responseTo != id) {
+				throw new IOException("response to " + responseTo + " does not match request " + id);
+			}
+			return parseBody(opCode, body);
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+
+	static Map<String, Object> parseBody(int opCode, byte[] body) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+		switch (opCode) {
+			case OP_REPLY:
+				// responseFlags, cursorID, startingFrom
+				buffer.position(4 + 8 + 4);
+				int numberReturned = buffer.getInt();
+				if (numberReturned < 1) {
+					throw new IOException("empty reply");
+				}
+				return Bson.decode(buffer);
+			case OP_MSG:
+				// flagBits
+				buffer.getInt();
+				byte kind = buffer.get();
+				if (kind != 0) {
+					throw new IOException("unexpected section kind: " + kind);
+				}
+				return Bson.decode(buffer);
+			default:
+				throw new IOException("unexpected opCode: " + opCode);
+		}
+	}
+
+	static byte[] opQuery(int requestId, String database, Map<String, ?> command) {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		// flags
+		writeInt(body, 0);
+		byte[] collection = (database + ".$cmd").getBytes(StandardCharsets.UTF_8);
+		body.write(collection, 0, collection.length);
+		body.write(0);
+		// numberToSkip, numberToReturn
+		writeInt(body, 0);
+		writeInt(body, -1);
+		byte[] document = Bson.encode(command);
+		body.write(document, 0, document.length);
+		return message(requestId, OP_QUERY, body);
+	}
+
+	static byte[] opMsg(int requestId, String database, Map<String, ?> command) {
+		Map<String, Object> withDatabase = new LinkedHashMap<>(command);
+		withDatabase.put("$db", database);
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		// flagBits
+		writeInt(body, 0);
+		// section kind: body
+		body.write(0);
+		byte[] document = Bson.encode(withDatabase);
+		body.write(document, 0, document.length);
+		return message(requestId, OP_MSG, body);
+	}
+
+	private static byte[] message(int requestId, int opCode, ByteArrayOutputStream body) {
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		writeInt(message, HEADER_LENGTH + body.size());
+		writeInt(message, requestId);
+		// responseTo
+		writeInt(message, 0);
+		writeInt(message, opCode);
+		message.write(body.toByteArray(), 0, body.size());
+		return message.toByteArray();
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+		out.write(value >>> 24);
+	}
+
+	private static Map<String, Object> singleton(String key, Object value) {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put(key, value);
+		return ret;
+	}
+}
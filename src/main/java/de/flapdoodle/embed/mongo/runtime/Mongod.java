@@ -87,6 +87,10 @@ public class Mongod {
 	private static final int BYTE_BUFFER_LENGTH = 512;
 	private static final int WAITING_TIME_SHUTDOWN_IN_MS = 100;
 
+	private static final Pattern PROCESS_ID = Pattern.compile("MongoDB starting : pid=([1234567890]+) port", Pattern.MULTILINE);
+	// since 4.4: structured log
+	private static final Pattern PROCESS_ID_STRUCTURED = Pattern.compile("\"msg\":\"MongoDB starting\",\"attr\":\\{\"pid\":([1234567890]+)");
+
 	public static boolean sendShutdown(InetAddress hostname, int port) {
 		return sendShutdown(hostname, port, SHUTDOWN_COMMAND);
 	}
@@ -95,7 +99,35 @@ public class Mongod {
 		return sendShutdown(hostname, port, SHUTDOWN_COMMAND_LEGACY);
 	}
 	
+	/**
+	 * sends the shutdown command once, without waiting afterwards.
+	 * shutdown is forced, because a primary without an electable secondary refuses it otherwise.
+	 */
+	public static boolean sendShutdown(InetAddress hostname, int port, ShutdownCommand command) {
+		switch (command) {
+			case LEGACY:
+				return send(hostname, port, SHUTDOWN_COMMAND_LEGACY);
+			case OP_MSG:
+				return send(hostname, port, SHUTDOWN_COMMAND_FORCE);
+			default:
+				return send(hostname, port, SHUTDOWN_COMMAND_LEGACY)
+					|| send(hostname, port, SHUTDOWN_COMMAND_FORCE);
+		}
+	}
+
 	public static boolean sendShutdown(InetAddress hostname, int port, byte[] commandBinaryStream) {
+		try {
+			return send(hostname, port, commandBinaryStream);
+		} finally {
+			try {
+				Thread.sleep(WAITING_TIME_SHUTDOWN_IN_MS);
+			} catch (InterruptedException ix) {
+				LOGGER.warn("sendShutdown {}:{}", hostname, port, ix);
+			}
+		}
+	}
+
+	private static boolean send(InetAddress hostname, int port, byte[] commandBinaryStream) {
 		if (!hostname.isLoopbackAddress()) {
 			LOGGER.warn("---------------------------------------\n"
 					+ "Your localhost ({}) is not a loopback adress\n"
@@ -129,8 +161,7 @@ public class Mongod {
 		} finally {
 			try {
 				s.close();
-				Thread.sleep(WAITING_TIME_SHUTDOWN_IN_MS);
-			} catch (InterruptedException | IOException ix) {
+			} catch (IOException ix) {
 				LOGGER.warn("sendShutdown closing {}:{}", hostname, port, ix);
 			}
 		}
@@ -138,11 +169,16 @@ public class Mongod {
 	}
 
 	public static int getMongodProcessId(String output, int defaultValue) {
-		Pattern pattern = Pattern.compile("MongoDB starting : pid=([1234567890]+) port", Pattern.MULTILINE);
-		Matcher matcher = pattern.matcher(output);
+		if (!output.contains("MongoDB starting")) {
+			return defaultValue;
+		}
+		Matcher matcher = PROCESS_ID.matcher(output);
+		if (matcher.find()) {
+			return Integer.parseInt(matcher.group(1));
+		}
+		matcher = PROCESS_ID_STRUCTURED.matcher(output);
 		if (matcher.find()) {
-			String value = matcher.group(1);
-			return Integer.parseInt(value);
+			return Integer.parseInt(matcher.group(1));
 		}
 		return defaultValue;
 	}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * java.lang.ProcessHandle (java 9+) without a compile time dependency,
+ * so that a process can be signaled without starting kill/taskkill
+ */
+public final class ProcessHandles {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ProcessHandles.class);
+
+	private static final Api API = Api.lookup();
+
+	private ProcessHandles() {
+		// no instance
+	}
+
+	public static boolean isAvailable() {
+		return API != null;
+	}
+
+	public static Optional<Handle> of(long pid) {
+		if (API == null) {
+			return Optional.empty();
+		}
+		Optional<?> handle = (Optional<?>) API.invoke(API.of, null, pid);
+		return handle.map(Handle::new);
+	}
+
+	public static final class Handle {
+		private final Object handle;
+
+		private Handle(Object handle) {
+			this.handle = handle;
+		}
+
+		public boolean isAlive() {
+			return (Boolean) API.invoke(API.isAlive, handle);
+		}
+
+		/**
+		 * SIGTERM on unix like systems
+		 */
+		public boolean destroy() {
+			return (Boolean) API.invoke(API.destroy, handle);
+		}
+
+		/**
+		 * SIGKILL on unix like systems
+		 */
+		public boolean destroyForcibly() {
+			return (Boolean) API.invoke(API.destroyForcibly, handle);
+		}
+
+		public boolean waitForExit(long timeoutInMillis) {
+			CompletableFuture<?> onExit = (CompletableFuture<?>) API.invoke(API.onExit, handle);
+			try {
+				onExit.get(timeoutInMillis, TimeUnit.MILLISECONDS);
+				return true;
+			}
+			catch (TimeoutException tx) {
+				return false;
+			}
+			catch (InterruptedException ix) {
+				Thread.currentThread().interrupt();
+				return !isAlive();
+			}
+			catch (ExecutionException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+	}
+
+	private static final class Api {
+		private final Method of;
+		private final Method isAlive;
+		private final Method destroy;
+		private final Method destroyForcibly;
+		private final Method onExit;
+
+		private Api(Class<?> processHandle) throws NoSuchMethodException {
+			this.of = processHandle.getMethod("of", long.class);
+			this.isAlive = processHandle.getMethod("isAlive");
+			this.destroy = processHandle.getMethod("destroy");
+			this.destroyForcibly = processHandle.getMethod("destroyForcibly");
+			this.onExit = processHandle.getMethod("onExit");
+		}
+
+		private Object invoke(Method method, Object instance, Object... args) {
+			try {
+				return method.invoke(instance, args);
+			}
+			catch (IllegalAccessException ix) {
+				throw new RuntimeException(ix);
+			}
+			catch (InvocationTargetException ix) {
+				Throwable cause = ix.getCause();
+				throw cause instanceof RuntimeException
+					? (RuntimeException) cause
+					: new RuntimeException(cause);
+			}
+		}
+
+		private static Api lookup() {
+			try {
+				return new Api(Class.forName("java.lang.ProcessHandle"));
+			}
+			catch (ClassNotFoundException | NoSuchMethodException e) {
+				LOGGER.debug("java.lang.ProcessHandle not available", e);
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import org.immutables.value.Value;
+
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+
+/**
+ * measurement of a running or finished phase (download, hash, extract) as seen by a ThroughputProgressListener
+ */
+@Value.Immutable
+public abstract class ProgressMetrics {
+
+	/**
+	 * first word of the label, e.g. download
+	 */
+	public abstract String phase();
+
+	public abstract String label();
+
+	public abstract boolean done();
+
+	@Value.Default
+	public boolean failed() {
+		return false;
+	}
+
+	public abstract long elapsedMillis();
+
+	public abstract OptionalInt percent();
+
+	public abstract OptionalLong bytes();
+
+	public abstract OptionalLong totalBytes();
+
+	public abstract OptionalDouble bytesPerSecond();
+
+	public abstract OptionalLong etaMillis();
+
+	public static ImmutableProgressMetrics.Builder builder() {
+		return ImmutableProgressMetrics.builder();
+	}
+}
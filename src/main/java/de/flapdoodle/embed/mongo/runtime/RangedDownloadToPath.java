@@ -0,0 +1,381 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import de.flapdoodle.embed.mongo.config.RangedDownloadConfig;
+import de.flapdoodle.embed.process.config.TimeoutConfig;
+import de.flapdoodle.embed.process.net.DownloadToPath;
+import de.flapdoodle.embed.process.net.UrlStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * downloads an archive with parallel http range requests.
+ * each range is written into its own part file in the resume dir, so that an interrupted download
+ * continues where it stopped. the parts are joined and verified before the archive is passed on.
+ * falls back to a single stream if the server does not support ranges.
+ */
+public class RangedDownloadToPath implements DownloadToPath {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RangedDownloadToPath.class);
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String META_FILE = "meta";
+
+	private final RangedDownloadConfig config;
+	private final DownloadToPath fallback;
+
+	public RangedDownloadToPath(RangedDownloadConfig config) {
+		this(config, UrlStreams.asDownloadToPath());
+	}
+
+	RangedDownloadToPath(RangedDownloadConfig config, DownloadToPath fallback) {
+		this.config = config;
+		this.fallback = fallback;
+	}
+
+	public static RangedDownloadToPath defaults() {
+		return new RangedDownloadToPath(RangedDownloadConfig.defaults());
+	}
+
+	/**
+	 * uses this resume dir, if the config has none
+	 */
+	public RangedDownloadToPath withDefaultResumeDir(Path resumeDir) {
+		return config.resumeDir().isPresent()
+			? this
+			: new RangedDownloadToPath(RangedDownloadConfig.builder().from(config).resumeDir(resumeDir).build(), fallback);
+	}
+
+	@Override
+	public void download(URL url, Path destination, Optional<Proxy> proxy, String userAgent, TimeoutConfig timeoutConfig, DownloadCopyListener copyListener) throws IOException {
+		Optional<Remote> remote = remote(url, proxy, userAgent, timeoutConfig);
+		if (!remote.isPresent()) {
+			LOGGER.debug("no ranges for {}, download as single stream", url);
+			fallback.download(url, destination, proxy, userAgent, timeoutConfig, copyListener);
+			return;
+		}
+
+		Path resumeDir = config.resumeDir()
+			.orElseGet(() -> destination.resolveSibling(destination.getFileName() + ".parts"))
+			.resolve(UUID.nameUUIDFromBytes(url.toString().getBytes(StandardCharsets.UTF_8)).toString());
+		List<Part> parts = prepareParts(resumeDir, remote.get());
+		try {
+			downloadParts(url, proxy, userAgent, timeoutConfig, remote.get().length, parts, copyListener);
+		}
+		catch (RangeNotSupported rx) {
+			LOGGER.debug("ranges not supported by {}, download as single stream", url);
+			de.flapdoodle.embed.process.io.Files.deleteAll(resumeDir);
+			fallback.download(url, destination, proxy, userAgent, timeoutConfig, copyListener);
+			return;
+		}
+
+		join(parts, destination);
+		try {
+			verify(url, destination, remote.get().length, proxy, userAgent, timeoutConfig);
+		}
+		catch (IOException iox) {
+			Files.deleteIfExists(destination);
+			throw iox;
+		}
+		finally {
+			// parts of a broken download must not be reused
+			de.flapdoodle.embed.process.io.Files.deleteAll(resumeDir);
+		}
+	}
+
+	private Optional<Remote> remote(URL url, Optional<Proxy> proxy, String userAgent, TimeoutConfig timeoutConfig) throws IOException {
+		URLConnection connection = UrlStreams.urlConnectionOf(url, userAgent, timeoutConfig, proxy);
+		if (!(connection instanceof HttpURLConnection)) {
+			return Optional.empty();
+		}
+		HttpURLConnection http = (HttpURLConnection) connection;
+		try {
+			http.setRequestMethod("HEAD");
+			int status = http.getResponseCode();
+			long length = http.getContentLengthLong();
+			boolean acceptsRanges = "bytes".equalsIgnoreCase(http.getHeaderField("Accept-Ranges"));
+			if (status != HttpURLConnection.HTTP_OK || length <= config.partSizeInBytes() || !acceptsRanges) {
+				return Optional.empty();
+			}
+			String version = Optional.ofNullable(http.getHeaderField("ETag"))
+				.orElseGet(() -> String.valueOf(http.getLastModified()));
+			return Optional.of(new Remote(length, version));
+		}
+		finally {
+			http.disconnect();
+		}
+	}
+
+	private List<Part> prepareParts(Path resumeDir, Remote remote) throws IOException {
+		Path metaFile = resumeDir.resolve(META_FILE);
+		String meta = remote.length + "\n" + remote.version + "\n" + config.partSizeInBytes();
+		if (Files.exists(metaFile)) {
+			String existing = new String(Files.readAllBytes(metaFile), StandardCharsets.UTF_8);
+			if (!existing.equals(meta)) {
+				LOGGER.debug("remote file changed, discard parts in {}", resumeDir);
+				de.flapdoodle.embed.process.io.Files.deleteAll(resumeDir);
+			}
+		}
+		Files.createDirectories(resumeDir);
+		Files.write(metaFile, meta.getBytes(StandardCharsets.UTF_8));
+
+		List<Part> ret = new ArrayList<>();
+		for (long start = 0, index = 0; start < remote.length; start += config.partSizeInBytes(), index++) {
+			long end = Math.min(remote.length, start + config.partSizeInBytes());
+			Part part = new Part(resumeDir.resolve("part-" + index), start, end);
+			if (part.downloaded() > part.size()) {
+				Files.delete(part.file);
+			}
+			ret.add(part);
+		}
+		return ret;
+	}
+
+	private void downloadParts(URL url, Optional<Proxy> proxy, String userAgent, TimeoutConfig timeoutConfig, long length, List<Part> parts, DownloadCopyListener copyListener) throws IOException {
+		AtomicLong copied = new AtomicLong();
+		for (Part part : parts) {
+			copied.addAndGet(part.downloaded());
+		}
+		DownloadCopyListener progress = synchronizedListener(copyListener);
+		progress.downloaded(url, 0, length);
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(config.parallel(), parts.size()), runnable -> {
+			Thread thread = new Thread(runnable, "ranged-download");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<?>> running = new ArrayList<>();
+			for (Part part : parts) {
+				if (part.downloaded() < part.size()) {
+					running.add(executor.submit(() -> {
+						downloadPart(url, proxy, userAgent, timeoutConfig, part, bytes -> progress.downloaded(url, copied.addAndGet(bytes), length));
+						return null;
+					}));
+				}
+			}
+			for (Future<?> future : running) {
+				await(future);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		progress.downloaded(url, length, length);
+	}
+
+	private static void await(Future<?> future) throws IOException {
+		try {
+			future.get();
+		}
+		catch (InterruptedException ix) {
+			Thread.currentThread().interrupt();
+			throw new IOException("download interrupted", ix);
+		}
+		catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("download failed", cause);
+		}
+	}
+
+	private static void downloadPart(URL url, Optional<Proxy> proxy, String userAgent, TimeoutConfig timeoutConfig, Part part, BytesCopied bytesCopied) throws IOException {
+		long from = part.start + part.downloaded();
+		HttpURLConnection connection = (HttpURLConnection) UrlStreams.urlConnectionOf(url, userAgent, timeoutConfig, proxy);
+		try {
+			connection.setRequestProperty("Range", "bytes=" + from + "-" + (part.end - 1));
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+				throw new RangeNotSupported();
+			}
+			try (InputStream in = connection.getInputStream();
+				 OutputStream out = Files.newOutputStream(part.file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				long missing = part.end - from;
+				int read;
+				while (missing > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, missing))) != -1) {
+					out.write(buffer, 0, read);
+					missing -= read;
+					bytesCopied.copied(read);
+				}
+				if (missing > 0) {
+					throw new IOException("range " + part.start + "-" + part.end + " of " + url + " incomplete, " + missing + " bytes missing");
+				}
+			}
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+
+	private static void join(List<Part> parts, Path destination) throws IOException {
+		try (FileChannel out = FileChannel.open(destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (Part part : parts) {
+				try (FileChannel in = FileChannel.open(part.file, StandardOpenOption.READ)) {
+					long position = 0;
+					long size = in.size();
+					while (position < size) {
+						position += in.transferTo(position, size - position, out);
+					}
+				}
+			}
+		}
+	}
+
+	private void verify(URL url, Path destination, long length, Optional<Proxy> proxy, String userAgent, TimeoutConfig timeoutConfig) throws IOException {
+		long size = Files.size(destination);
+		if (size != length) {
+			throw new IOException("downloaded " + size + " bytes of " + url + ", expected " + length);
+		}
+		if (config.verifyChecksum()) {
+			Optional<String> expected = publishedSha256(url, proxy, userAgent, timeoutConfig);
+			if (expected.isPresent()) {
+				String actual = sha256(destination);
+				if (!actual.equalsIgnoreCase(expected.get())) {
+					throw new IOException("checksum of " + url + " does not match: " + actual + " != " + expected.get());
+				}
+			} else {
+				LOGGER.debug("no published checksum for {}", url);
+			}
+		}
+	}
+
+	private static Optional<String> publishedSha256(URL url, Optional<Proxy> proxy, String userAgent, TimeoutConfig timeoutConfig) {
+		try {
+			URLConnection connection = UrlStreams.urlConnectionOf(new URL(url.toString() + ".sha256"), userAgent, timeoutConfig, proxy);
+			try (InputStream in = connection.getInputStream()) {
+				byte[] content = new byte[1024];
+				int length = 0;
+				int read;
+				while (length < content.length && (read = in.read(content, length, content.length - length)) != -1) {
+					length += read;
+				}
+				String text = new String(content, 0, length, StandardCharsets.US_ASCII).trim();
+				String hash = text.split("\\s+")[0];
+				return hash.matches("[0-9a-fA-F]{64}") ? Optional.of(hash) : Optional.empty();
+			}
+		}
+		catch (FileNotFoundException nfx) {
+			return Optional.empty();
+		}
+		catch (IOException iox) {
+			LOGGER.debug("could not read checksum of {}", url, iox);
+			return Optional.empty();
+		}
+	}
+
+	static String sha256(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException nsx) {
+			throw new IOException(nsx);
+		}
+		try (InputStream in = Files.newInputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		StringBuilder ret = new StringBuilder();
+		for (byte b : digest.digest()) {
+			ret.append(String.format("%02x", b));
+		}
+		return ret.toString();
+	}
+
+	private static DownloadCopyListener synchronizedListener(DownloadCopyListener delegate) {
+		return (url, bytesCopied, contentLength) -> {
+			synchronized (delegate) {
+				delegate.downloaded(url, bytesCopied, contentLength);
+			}
+		};
+	}
+
+	private interface BytesCopied {
+		void copied(long bytes);
+	}
+
+	private static final class Remote {
+		private final long length;
+		private final String version;
+
+		private Remote(long length, String version) {
+			this.length = length;
+			this.version = version;
+		}
+	}
+
+	private static final class Part {
+		private final Path file;
+		private final long start;
+		private final long end;
+
+		private Part(Path file, long start, long end) {
+			this.file = file;
+			this.start = start;
+			this.end = end;
+		}
+
+		private long size() {
+			return end - start;
+		}
+
+		private long downloaded() throws IOException {
+			return Files.exists(file) ? Files.size(file) : 0;
+		}
+	}
+
+	private static final class RangeNotSupported extends IOException {
+		private RangeNotSupported() {
+			super("range request not supported");
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import de.flapdoodle.embed.mongo.packageresolver.NumericVersion;
+import de.flapdoodle.embed.process.distribution.Version;
+
+/**
+ * which wire protocol message is used to send the shutdown command
+ */
+public enum ShutdownCommand {
+	/**
+	 * OP_QUERY, removed in 6.0
+	 */
+	LEGACY,
+	/**
+	 * OP_MSG, since 3.6
+	 */
+	OP_MSG,
+	/**
+	 * try LEGACY first, then OP_MSG
+	 */
+	ANY;
+
+	public static ShutdownCommand of(Version version) {
+		try {
+			return NumericVersion.of(version.asInDownloadPath()).isNewerOrEqual(3, 6, 0)
+				? OP_MSG
+				: LEGACY;
+		}
+		catch (RuntimeException rx) {
+			return ANY;
+		}
+	}
+}
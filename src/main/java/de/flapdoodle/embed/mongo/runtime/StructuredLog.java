@@ -0,0 +1,313 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import de.flapdoodle.embed.mongo.packageresolver.NumericVersion;
+import de.flapdoodle.embed.process.distribution.Version;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * parses json log lines (mongodb 4.4+) and hands them to a listener
+ */
+public final class StructuredLog {
+
+	private final boolean enabled;
+	private final LogEventListener listener;
+
+	private StructuredLog(boolean enabled, LogEventListener listener) {
+		this.enabled = enabled;
+		this.listener = listener;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * false if parsed lines are not passed to anyone
+	 */
+	public boolean hasListener() {
+		return enabled && listener != LogEventListener.noop();
+	}
+
+	public Optional<LogEvent> inspect(String line) {
+		if (!enabled) {
+			return Optional.empty();
+		}
+		Optional<LogEvent> event = parse(line);
+		event.ifPresent(listener::onEvent);
+		return event;
+	}
+
+	public static StructuredLog disabled() {
+		return new StructuredLog(false, LogEventListener.noop());
+	}
+
+	public static StructuredLog of(Version version, LogEventListener listener) {
+		return new StructuredLog(isAvailable(version), listener);
+	}
+
+	public static boolean isAvailable(Version version) {
+		try {
+			return NumericVersion.of(version.asInDownloadPath()).isNewerOrEqual(4, 4, 0);
+		}
+		catch (RuntimeException rx) {
+			// unknown version scheme, lines which are not json are skipped anyway
+			return true;
+		}
+	}
+
+	/**
+	 * @return empty if this is not a structured log line
+	 */
+	public static Optional<LogEvent> parse(String line) {
+		if (line.isEmpty() || line.charAt(0) != '{') {
+			return Optional.empty();
+		}
+		try {
+			Object parsed = new Parser(line).parse();
+			if (!(parsed instanceof Map)) {
+				return Optional.empty();
+			}
+			Map<?, ?> map = (Map<?, ?>) parsed;
+			Object id = map.get("id");
+			if (!(id instanceof Number) || !map.containsKey("msg")) {
+				return Optional.empty();
+			}
+
+			Object timestamp = map.get("t");
+			if (timestamp instanceof Map) {
+				timestamp = ((Map<?, ?>) timestamp).get("$date");
+			}
+			Object attributes = map.get("attr");
+
+			@SuppressWarnings("unchecked")
+			Map<String, Object> attributesAsMap = attributes instanceof Map
+				? (Map<String, Object>) attributes
+				: new LinkedHashMap<>();
+
+			return Optional.of(LogEvent.builder()
+				.timestamp(asString(timestamp))
+				.severity(asString(map.get("s")))
+				.component(asString(map.get("c")))
+				.id(((Number) id).intValue())
+				.context(asString(map.get("ctx")))
+				.message(asString(map.get("msg")))
+				.attributes(attributesAsMap)
+				.build());
+		}
+		catch (IllegalArgumentException ix) {
+			return Optional.empty();
+		}
+	}
+
+	private static String asString(Object value) {
+		return value != null ? value.toString() : "";
+	}
+
+	/**
+	 * just enough json for log lines, null values in objects are skipped
+	 */
+	private static final class Parser {
+		private final String content;
+		private int pos = 0;
+
+		private Parser(String content) {
+			this.content = content;
+		}
+
+		private Object parse() {
+			Object ret = value();
+			skipWhitespace();
+			if (pos != content.length()) {
+				throw new IllegalArgumentException("unexpected content at " + pos);
+			}
+			return ret;
+		}
+
+		private Object value() {
+			skipWhitespace();
+			char c = current();
+			switch (c) {
+				case '{':
+					return object();
+				case '[':
+					return array();
+				case '"':
+					return string();
+				case 't':
+					expect("true");
+					return Boolean.TRUE;
+				case 'f':
+					expect("false");
+					return Boolean.FALSE;
+				case 'n':
+					expect("null");
+					return null;
+				default:
+					return number();
+			}
+		}
+
+		private Map<String, Object> object() {
+			Map<String, Object> ret = new LinkedHashMap<>();
+			pos++;
+			skipWhitespace();
+			if (current() == '}') {
+				pos++;
+				return ret;
+			}
+			while (true) {
+				skipWhitespace();
+				String key = string();
+				skipWhitespace();
+				expect(":");
+				Object value = value();
+				if (value != null) {
+					ret.put(key, value);
+				}
+				skipWhitespace();
+				char c = next();
+				if (c == '}') {
+					return ret;
+				}
+				if (c != ',') {
+					throw new IllegalArgumentException("expected , or } at " + pos);
+				}
+			}
+		}
+
+		private List<Object> array() {
+			List<Object> ret = new ArrayList<>();
+			pos++;
+			skipWhitespace();
+			if (current() == ']') {
+				pos++;
+				return ret;
+			}
+			while (true) {
+				ret.add(value());
+				skipWhitespace();
+				char c = next();
+				if (c == ']') {
+					return ret;
+				}
+				if (c != ',') {
+					throw new IllegalArgumentException("expected , or ] at " + pos);
+				}
+			}
+		}
+
+		private String string() {
+			if (next() != '"') {
+				throw new IllegalArgumentException("expected \" at " + pos);
+			}
+			StringBuilder sb = new StringBuilder();
+			while (true) {
+				char c = next();
+				if (c == '"') {
+					return sb.toString();
+				}
+				if (c == '\\') {
+					char escaped = next();
+					switch (escaped) {
+						case 'b':
+							sb.append('\b');
+							break;
+						case 'f':
+							sb.append('\f');
+							break;
+						case 'n':
+							sb.append('\n');
+							break;
+						case 'r':
+							sb.append('\r');
+							break;
+						case 't':
+							sb.append('\t');
+							break;
+						case 'u':
+							if (pos + 4 > content.length()) {
+								throw new IllegalArgumentException("unexpected end of content");
+							}
+							sb.append((char) Integer.parseInt(content.substring(pos, pos + 4), 16));
+							pos += 4;
+							break;
+						default:
+							sb.append(escaped);
+					}
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+
+		private Number number() {
+			int start = pos;
+			while (pos < content.length() && "+-0123456789.eE".indexOf(content.charAt(pos)) >= 0) {
+				pos++;
+			}
+			String number = content.substring(start, pos);
+			if (number.isEmpty()) {
+				throw new IllegalArgumentException("unexpected content at " + pos);
+			}
+			if (number.contains(".") || number.contains("e") || number.contains("E")) {
+				return Double.parseDouble(number);
+			}
+			long value = Long.parseLong(number);
+			if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+				return (int) value;
+			}
+			return value;
+		}
+
+		private void expect(String expected) {
+			if (!content.startsWith(expected, pos)) {
+				throw new IllegalArgumentException("expected " + expected + " at " + pos);
+			}
+			pos += expected.length();
+		}
+
+		private void skipWhitespace() {
+			while (pos < content.length() && Character.isWhitespace(content.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private char current() {
+			if (pos >= content.length()) {
+				throw new IllegalArgumentException("unexpected end of content");
+			}
+			return content.charAt(pos);
+		}
+
+		private char next() {
+			char c = current();
+			pos++;
+			return c;
+		}
+	}
+}
@@ -0,0 +1,285 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import de.flapdoodle.embed.process.io.progress.ProgressListener;
+import de.flapdoodle.embed.process.net.DownloadToPath;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * tracks duration, throughput and eta of each phase (download, hash, extract).
+ * progress is printed at most once per interval, every measurement is passed to the metrics callback.
+ * byte counts are passed as info messages ("&lt;n&gt; bytes", "size &lt;n&gt; bytes"), so any other listener just prints them.
+ */
+public class ThroughputProgressListener implements ProgressListener {
+
+	/**
+	 * info message of a phase which did not complete, it is reported as failed instead of done
+	 */
+	public static final String FAILED = "failed";
+
+	private static final Pattern BYTES = Pattern.compile("(\\d+) bytes");
+	private static final Pattern SIZE = Pattern.compile("size (\\d+) bytes");
+
+	private final Consumer<ProgressMetrics> metrics;
+	private final Consumer<String> console;
+	private final long intervalMillis;
+	private final LongSupplier now;
+	private final Map<String, Phase> phases = new ConcurrentHashMap<>();
+
+	public ThroughputProgressListener() {
+		this(metrics -> {});
+	}
+
+	public ThroughputProgressListener(Consumer<ProgressMetrics> metrics) {
+		this(metrics, System.out::println, 1000);
+	}
+
+	public ThroughputProgressListener(Consumer<ProgressMetrics> metrics, Consumer<String> console, long intervalMillis) {
+		this(metrics, console, intervalMillis, System::currentTimeMillis);
+	}
+
+	ThroughputProgressListener(Consumer<ProgressMetrics> metrics, Consumer<String> console, long intervalMillis, LongSupplier now) {
+		this.metrics = metrics;
+		this.console = console;
+		this.intervalMillis = intervalMillis;
+		this.now = now;
+	}
+
+	@Override
+	public void start(String label) {
+		phases.put(label, new Phase(now.getAsLong()));
+		console.accept(label + " START");
+	}
+
+	@Override
+	public void progress(String label, int percent) {
+		Phase phase = phaseOf(label);
+		synchronized (phase) {
+			phase.percent = percent;
+			if (phase.total > 0) {
+				phase.bytes = phase.total * percent / 100;
+			}
+		}
+		report(label, phase);
+	}
+
+	@Override
+	public void info(String label, String message) {
+		if (FAILED.equals(message)) {
+			failed(label);
+			return;
+		}
+		Matcher size = SIZE.matcher(message);
+		Matcher bytes = BYTES.matcher(message);
+		if (size.matches()) {
+			Phase phase = phaseOf(label);
+			synchronized (phase) {
+				phase.total = Long.parseLong(size.group(1));
+			}
+		} else if (bytes.matches()) {
+			Phase phase = phaseOf(label);
+			synchronized (phase) {
+				phase.bytes = Long.parseLong(bytes.group(1));
+			}
+			report(label, phase);
+		} else {
+			console.accept(label + " " + message);
+		}
+	}
+
+	@Override
+	public void done(String label) {
+		Phase phase = phases.remove(label);
+		if (phase == null) {
+			phase = new Phase(now.getAsLong());
+		}
+		synchronized (phase) {
+			if (phase.total > 0) {
+				phase.bytes = phase.total;
+			}
+		}
+		ProgressMetrics measurement = phase.metrics(label, true, false, now.getAsLong());
+		metrics.accept(measurement);
+		console.accept(label + " DONE " + format(measurement));
+	}
+
+	private void failed(String label) {
+		Phase phase = phases.remove(label);
+		if (phase == null) {
+			phase = new Phase(now.getAsLong());
+		}
+		ProgressMetrics measurement = phase.metrics(label, false, true, now.getAsLong());
+		metrics.accept(measurement);
+		console.accept(label + " FAILED " + format(measurement));
+	}
+
+	private Phase phaseOf(String label) {
+		return phases.computeIfAbsent(label, it -> new Phase(now.getAsLong()));
+	}
+
+	private void report(String label, Phase phase) {
+		long currentTime = now.getAsLong();
+		ProgressMetrics measurement;
+		synchronized (phase) {
+			measurement = phase.metrics(label, false, false, currentTime);
+			if (currentTime - phase.lastPrinted < intervalMillis) {
+				measurement = null;
+			} else {
+				phase.lastPrinted = currentTime;
+			}
+		}
+		if (measurement != null) {
+			metrics.accept(measurement);
+			console.accept(label + " " + format(measurement));
+		}
+	}
+
+	static String format(ProgressMetrics metrics) {
+		StringBuilder sb = new StringBuilder();
+		if (metrics.percent().isPresent() && !metrics.done()) {
+			sb.append(metrics.percent().getAsInt()).append("% ");
+		}
+		if (metrics.bytes().isPresent()) {
+			sb.append(size(metrics.bytes().getAsLong())).append(" ");
+		}
+		if (metrics.bytesPerSecond().isPresent()) {
+			sb.append(size((long) metrics.bytesPerSecond().getAsDouble())).append("/s ");
+		}
+		if (metrics.etaMillis().isPresent() && !metrics.done() && !metrics.failed()) {
+			sb.append("eta ").append(seconds(metrics.etaMillis().getAsLong())).append(" ");
+		}
+		if (metrics.done() || metrics.failed()) {
+			sb.append(metrics.done() ? "in " : "after ").append(seconds(metrics.elapsedMillis()));
+		}
+		return sb.toString().trim();
+	}
+
+	private static String size(long bytes) {
+		if (bytes < 1024) {
+			return bytes + "B";
+		}
+		if (bytes < 1024 * 1024) {
+			return String.format(Locale.ROOT, "%.1fKB", bytes / 1024.0);
+		}
+		return String.format(Locale.ROOT, "%.1fMB", bytes / (1024.0 * 1024));
+	}
+
+	private static String seconds(long millis) {
+		return String.format(Locale.ROOT, "%.1fs", millis / 1000.0);
+	}
+
+	/**
+	 * label of a download as reported by the copy listener
+	 */
+	public static String downloadLabel(URL url) {
+		return "download " + url;
+	}
+
+	/**
+	 * like DownloadToPath.downloadCopyListenerDelegatingTo, but passes the size of the download too.
+	 * done is not reported, because the listener can not tell when a download of unknown length is complete,
+	 * the caller reports it once the download returns.
+	 */
+	public static DownloadToPath.DownloadCopyListener copyListenerOf(ProgressListener progressListener) {
+		return (url, bytesCopied, contentLength) -> {
+			String label = downloadLabel(url);
+			if (bytesCopied == 0) {
+				progressListener.start(label);
+				if (contentLength > 0) {
+					progressListener.info(label, "size " + contentLength + " bytes");
+				}
+			} else if (contentLength > 0) {
+				progressListener.progress(label, (int) (bytesCopied * 100 / contentLength));
+			} else {
+				progressListener.info(label, bytesCopied + " bytes");
+			}
+		};
+	}
+
+	/**
+	 * reports progress of each download of the delegate with copyListenerOf and done once it is complete
+	 */
+	public static DownloadToPath reporting(DownloadToPath delegate, ProgressListener progressListener) {
+		DownloadToPath.DownloadCopyListener copyListener = copyListenerOf(progressListener);
+		return (url, destination, proxy, userAgent, timeoutConfig, ignore) -> {
+			try {
+				delegate.download(url, destination, proxy, userAgent, timeoutConfig, copyListener);
+			}
+			catch (IOException | RuntimeException ex) {
+				progressListener.info(downloadLabel(url), FAILED);
+				throw ex;
+			}
+			progressListener.done(downloadLabel(url));
+		};
+	}
+
+	private static final class Phase {
+		private final long started;
+		private int percent = -1;
+		private long bytes = -1;
+		private long total = -1;
+		private long lastPrinted = Long.MIN_VALUE / 2;
+
+		private Phase(long started) {
+			this.started = started;
+		}
+
+		private synchronized ProgressMetrics metrics(String label, boolean done, boolean failed, long currentTime) {
+			long elapsed = Math.max(0, currentTime - started);
+			ImmutableProgressMetrics.Builder builder = ProgressMetrics.builder()
+				.label(label)
+				.phase(label.split(" ", 2)[0])
+				.done(done)
+				.failed(failed)
+				.elapsedMillis(elapsed);
+			if (percent >= 0) {
+				builder.percent(done ? 100 : percent);
+			}
+			if (bytes >= 0) {
+				builder.bytes(bytes);
+				if (elapsed > 0) {
+					builder.bytesPerSecond(bytes * 1000.0 / elapsed);
+				}
+			}
+			if (total > 0) {
+				builder.totalBytes(total);
+			}
+			if (!done && !failed) {
+				if (total > 0 && bytes > 0) {
+					builder.etaMillis((total - bytes) * elapsed / bytes);
+				} else if (percent > 0) {
+					builder.etaMillis(elapsed * (100 - percent) / percent);
+				}
+			}
+			return builder.build();
+		}
+	}
+}
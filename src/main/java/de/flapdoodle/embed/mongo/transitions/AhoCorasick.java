@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.checks.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * finds all of up to 64 literals in one pass over a line,
+ * the result is a bit set of literal indices
+ */
+final class AhoCorasick {
+
+	private final Node root = new Node();
+
+	AhoCorasick(List<String> literals) {
+		Preconditions.checkArgument(literals.size() <= 64, "more than 64 literals: %s", literals.size());
+		for (int i = 0; i < literals.size(); i++) {
+			Node current = root;
+			for (char c : literals.get(i).toCharArray()) {
+				current = current.childOrCreate(c);
+			}
+			current.outputs |= 1L << i;
+		}
+
+		Deque<Node> queue = new ArrayDeque<>();
+		for (Node child : root.children) {
+			child.fail = root;
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			Node node = queue.poll();
+			for (int i = 0; i < node.keys.length; i++) {
+				Node child = node.children[i];
+				Node fail = node.fail;
+				while (fail != root && fail.child(node.keys[i]) == null) {
+					fail = fail.fail;
+				}
+				Node target = fail.child(node.keys[i]);
+				child.fail = target != null && target != child ? target : root;
+				child.outputs |= child.fail.outputs;
+				queue.add(child);
+			}
+		}
+	}
+
+	long matches(CharSequence text) {
+		long found = 0;
+		Node current = root;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			Node next = current.child(c);
+			while (next == null && current != root) {
+				current = current.fail;
+				next = current.child(c);
+			}
+			current = next != null ? next : root;
+			found |= current.outputs;
+		}
+		return found;
+	}
+
+	private static final class Node {
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+		private Node fail;
+		private long outputs;
+
+		private Node child(char c) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node childOrCreate(char c) {
+			Node child = child(c);
+			if (child == null) {
+				child = new Node();
+				keys = Arrays.copyOf(keys, keys.length + 1);
+				children = Arrays.copyOf(children, children.length + 1);
+				keys[keys.length - 1] = c;
+				children[children.length - 1] = child;
+			}
+			return child;
+		}
+	}
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
+import de.flapdoodle.embed.process.archives.ImmutableExtractedFileSet;
+import de.flapdoodle.embed.process.config.store.FileSet;
+import de.flapdoodle.embed.process.config.store.FileType;
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.utils.BoundedInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * names, offsets and sizes of all files of an archive, stored next to the archive (archive + ".index").
+ * extraction matches the file set against the index and reads only the matching entries:
+ * zip entries are read with the central directory, tar entries are skipped to without parsing other entries.
+ * a tar archive without index is indexed while it is extracted, so it is decompressed only once.
+ */
+final class ArchiveIndex {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveIndex.class);
+
+	private static final String VERSION = "v1";
+	private static final String SUFFIX = ".index";
+
+	private final List<Entry> entries;
+
+	private ArchiveIndex(List<Entry> entries) {
+		this.entries = Collections.unmodifiableList(entries);
+	}
+
+	List<Entry> entries() {
+		return entries;
+	}
+
+	static boolean isSupported(ArchiveType archiveType) {
+		switch (archiveType) {
+			case TGZ:
+			case TBZ2:
+			case ZIP:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	static ExtractedFileSet extractWithIndex(Path archive, ArchiveType archiveType, Path destination, FileSet fileSet) throws IOException {
+		String stamp = stamp(archive);
+		Optional<ArchiveIndex> stored = stored(archive, stamp);
+		if (stored.isPresent()) {
+			return stored.get().extract(archive, archiveType, destination, fileSet);
+		}
+		if (archiveType == ArchiveType.ZIP) {
+			return indexed(archive, stamp, scan(archive, archiveType)).extract(archive, archiveType, destination, fileSet);
+		}
+
+		List<Entry> entries = new ArrayList<>();
+		List<FileSet.Entry> missing = new ArrayList<>(fileSet.entries());
+		ImmutableExtractedFileSet.Builder builder = ExtractedFileSet.builder(destination);
+		try (TarArchiveInputStream tar = new TarArchiveInputStream(decompressed(archive, archiveType))) {
+			TarArchiveEntry entry;
+			while ((entry = tar.getNextTarEntry()) != null) {
+				if (entry.isFile()) {
+					entries.add(new Entry(entry.getName(), tar.getBytesRead(), entry.getSize()));
+					Optional<FileSet.Entry> match = firstMatch(missing, entry.getName());
+					if (match.isPresent()) {
+						missing.remove(match.get());
+						write(builder, tar, destination, match.get());
+					}
+				}
+			}
+		}
+		indexed(archive, stamp, entries);
+		StreamingExtractPackage.failOnMissing(missing);
+		return builder.build();
+	}
+
+	static ArchiveIndex of(Path archive, ArchiveType archiveType) throws IOException {
+		String stamp = stamp(archive);
+		Optional<ArchiveIndex> stored = stored(archive, stamp);
+		return stored.isPresent()
+			? stored.get()
+			: indexed(archive, stamp, scan(archive, archiveType));
+	}
+
+	private static Optional<ArchiveIndex> stored(Path archive, String stamp) {
+		Path indexFile = indexFile(archive);
+		return Files.exists(indexFile)
+			? read(indexFile, stamp)
+			: Optional.empty();
+	}
+
+	private static ArchiveIndex indexed(Path archive, String stamp, List<Entry> entries) {
+		ArchiveIndex ret = new ArchiveIndex(entries);
+		Path indexFile = indexFile(archive);
+		try {
+			ret.write(indexFile, stamp);
+		}
+		catch (IOException iox) {
+			LOGGER.debug("could not write index {}", indexFile, iox);
+		}
+		return ret;
+	}
+
+	ExtractedFileSet extract(Path archive, ArchiveType archiveType, Path destination, FileSet fileSet) throws IOException {
+		List<Match> matches = matches(fileSet);
+		ImmutableExtractedFileSet.Builder builder = ExtractedFileSet.builder(destination);
+		if (archiveType == ArchiveType.ZIP) {
+			try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+				for (Match match : matches) {
+					ZipArchiveEntry zipEntry = zipFile.getEntry(match.entry.name);
+					if (zipEntry == null) {
+						throw new IOException("index of " + archive + " does not match, no entry " + match.entry.name);
+					}
+					try (InputStream in = zipFile.getInputStream(zipEntry)) {
+						write(builder, in, destination, match.fileSetEntry);
+					}
+				}
+			}
+		} else {
+			matches.sort(Comparator.comparingLong(match -> match.entry.offset));
+			try (InputStream in = decompressed(archive, archiveType)) {
+				long position = 0;
+				for (Match match : matches) {
+					long skip = match.entry.offset - position;
+					if (IOUtils.skip(in, skip) != skip) {
+						throw new IOException("index of " + archive + " does not match, could not skip to " + match.entry.name);
+					}
+					write(builder, new BoundedInputStream(in, match.entry.size), destination, match.fileSetEntry);
+					position = match.entry.offset + match.entry.size;
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * same matching as the extractors of the library: first matching file set entry in archive order, each only once
+	 */
+	private List<Match> matches(FileSet fileSet) throws IOException {
+		List<FileSet.Entry> missing = new ArrayList<>(fileSet.entries());
+		List<Match> ret = new ArrayList<>();
+		for (Entry entry : entries) {
+			if (missing.isEmpty()) {
+				break;
+			}
+			Optional<FileSet.Entry> match = firstMatch(missing, entry.name);
+			if (match.isPresent()) {
+				missing.remove(match.get());
+				ret.add(new Match(entry, match.get()));
+			}
+		}
+		StreamingExtractPackage.failOnMissing(missing);
+		return ret;
+	}
+
+	private static Optional<FileSet.Entry> firstMatch(List<FileSet.Entry> fileSetEntries, String name) {
+		return fileSetEntries.stream()
+			.filter(it -> it.matchingPattern().matcher(name).matches())
+			.findFirst();
+	}
+
+	private static void write(ImmutableExtractedFileSet.Builder builder, InputStream in, Path destination, FileSet.Entry fileSetEntry) throws IOException {
+		Path dest = destination.resolve(fileSetEntry.destination());
+		if (dest.getParent() != null) {
+			Files.createDirectories(dest.getParent());
+		}
+		Files.copy(in, dest, StandardCopyOption.REPLACE_EXISTING);
+		if (fileSetEntry.type() == FileType.Executable) {
+			if (!dest.toFile().setExecutable(true)) {
+				throw new IOException("could not set executable flag on " + dest);
+			}
+			builder.executable(dest);
+		} else {
+			builder.addLibraryFiles(dest);
+		}
+	}
+
+	private static List<Entry> scan(Path archive, ArchiveType archiveType) throws IOException {
+		List<Entry> ret = new ArrayList<>();
+		if (archiveType == ArchiveType.ZIP) {
+			try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+				for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+					if (!entry.isDirectory()) {
+						ret.add(new Entry(entry.getName(), -1, entry.getSize()));
+					}
+				}
+			}
+		} else {
+			try (TarArchiveInputStream tar = new TarArchiveInputStream(decompressed(archive, archiveType))) {
+				TarArchiveEntry entry;
+				while ((entry = tar.getNextTarEntry()) != null) {
+					if (entry.isFile()) {
+						ret.add(new Entry(entry.getName(), tar.getBytesRead(), entry.getSize()));
+					}
+				}
+			}
+		}
+		return ret;
+	}
+
+	private static InputStream decompressed(Path archive, ArchiveType archiveType) throws IOException {
+		InputStream in = new BufferedInputStream(Files.newInputStream(archive), 64 * 1024);
+		try {
+			switch (archiveType) {
+				case TGZ:
+					return new GzipCompressorInputStream(in);
+				case TBZ2:
+					return new BZip2CompressorInputStream(in);
+				default:
+					throw new IllegalArgumentException("no index for " + archiveType);
+			}
+		}
+		catch (IOException | RuntimeException ex) {
+			in.close();
+			throw ex;
+		}
+	}
+
+	private static Optional<ArchiveIndex> read(Path indexFile, String stamp) {
+		try {
+			List<String> lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+			if (lines.isEmpty() || !lines.get(0).equals(stamp)) {
+				return Optional.empty();
+			}
+			List<Entry> entries = new ArrayList<>();
+			for (String line : lines.subList(1, lines.size())) {
+				String[] parts = line.split("\t", 3);
+				entries.add(new Entry(parts[2], Long.parseLong(parts[0]), Long.parseLong(parts[1])));
+			}
+			return Optional.of(new ArchiveIndex(entries));
+		}
+		catch (IOException | RuntimeException ex) {
+			LOGGER.debug("could not read index {}", indexFile, ex);
+			return Optional.empty();
+		}
+	}
+
+	private void write(Path indexFile, String stamp) throws IOException {
+		StringBuilder content = new StringBuilder(stamp).append('\n');
+		for (Entry entry : entries) {
+			content.append(entry.offset).append('\t').append(entry.size).append('\t').append(entry.name).append('\n');
+		}
+		Path partial = Files.createTempFile(indexFile.getParent(), "archive", SUFFIX + ".part");
+		try {
+			Files.write(partial, content.toString().getBytes(StandardCharsets.UTF_8));
+			try {
+				Files.move(partial, indexFile, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException ax) {
+				Files.move(partial, indexFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(partial);
+		}
+	}
+
+	static Path indexFile(Path archive) {
+		return archive.resolveSibling(archive.getFileName() + SUFFIX);
+	}
+
+	private static String stamp(Path archive) throws IOException {
+		return VERSION + " " + Files.size(archive) + " " + Files.getLastModifiedTime(archive).toMillis();
+	}
+
+	static final class Entry {
+		private final String name;
+		// start of the data in the uncompressed tar stream, -1 for zip entries
+		private final long offset;
+		private final long size;
+
+		private Entry(String name, long offset, long size) {
+			this.name = name;
+			this.offset = offset;
+			this.size = size;
+		}
+
+		String name() {
+			return name;
+		}
+	}
+
+	private static final class Match {
+		private final Entry entry;
+		private final FileSet.Entry fileSetEntry;
+
+		private Match(Entry entry, FileSet.Entry fileSetEntry) {
+			this.entry = entry;
+			this.fileSetEntry = fileSetEntry;
+		}
+	}
+}
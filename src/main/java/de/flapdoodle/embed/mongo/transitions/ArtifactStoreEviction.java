@@ -0,0 +1,478 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.config.EvictionConfig;
+import de.flapdoodle.embed.mongo.runtime.FileLocks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * removes least recently used archives, extracted file sets and abandoned partial downloads from the persistent dir.
+ * the last use of an entry is tracked in an index file, entries in use by a running process
+ * are marked with a shared file lock and are never removed.
+ * files are counted once, even if they are hard linked into more than one file set.
+ */
+final class ArtifactStoreEviction {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactStoreEviction.class);
+
+	private static final List<String> STORES = Arrays.asList("archives", "fileSets");
+	private static final List<String> NOT_AN_ENTRY = Arrays.asList("contentHashes", "hashes", "blobs");
+	private static final String PARTIAL_DOWNLOADS = ".partial";
+	private static final String LAST_EVICTION = "lastEviction";
+	private static final long LOCK_RETRY_INTERVAL = 10;
+
+	private static final Map<Path, InUseLock> IN_USE = new HashMap<>();
+	private static final Set<Path> SCHEDULED = ConcurrentHashMap.newKeySet();
+	private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "embedmongo-eviction");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Path baseDir;
+	private final EvictionConfig config;
+	private final LongSupplier now;
+
+	ArtifactStoreEviction(Path baseDir, EvictionConfig config, LongSupplier now) {
+		this.baseDir = baseDir.toAbsolutePath().normalize();
+		this.config = config;
+		this.now = now;
+	}
+
+	ArtifactStoreEviction(Path baseDir, EvictionConfig config) {
+		this(baseDir, config, System::currentTimeMillis);
+	}
+
+	/**
+	 * the entry (archive or file set) containing this path, if it is part of the store
+	 */
+	Path entryOf(Path path) {
+		Path normalized = path.toAbsolutePath().normalize();
+		for (String store : STORES) {
+			Path storeDir = baseDir.resolve(store);
+			if (normalized.startsWith(storeDir) && !normalized.equals(storeDir)) {
+				if (store.equals("archives")) {
+					return Files.isDirectory(normalized) ? normalized : normalized.getParent();
+				}
+				return storeDir.resolve(storeDir.relativize(normalized).getName(0));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * updates the last use of these entries and marks them as in use until the returned handle is closed
+	 */
+	AutoCloseable markUsed(List<Path> entries) {
+		FileLocks.withLock(usageLock(), () -> {
+			Map<String, Long> index = readIndex();
+			entries.forEach(entry -> index.put(key(entry), now.getAsLong()));
+			writeIndex(index);
+			return null;
+		});
+		List<Path> locks = entries.stream()
+			.map(this::inUseLockFile)
+			.filter(ArtifactStoreEviction::acquire)
+			.collect(Collectors.toList());
+		return () -> locks.forEach(ArtifactStoreEviction::release);
+	}
+
+	/**
+	 * the store is scanned at most once within keepRecentlyUsedInMillis
+	 */
+	void evictInBackground() {
+		if (config.enabled() && SCHEDULED.add(baseDir)) {
+			EXECUTOR.execute(() -> {
+				SCHEDULED.remove(baseDir);
+				try {
+					evictIfDue();
+				}
+				catch (RuntimeException rx) {
+					LOGGER.warn("eviction in {} failed", baseDir, rx);
+				}
+			});
+		}
+	}
+
+	List<Path> evictIfDue() {
+		if (!config.enabled()) {
+			return new ArrayList<>();
+		}
+		return FileLocks.withLock(evictLock(), () -> {
+			Long lastEviction = FileLocks.withLock(usageLock(), this::readIndex).get(LAST_EVICTION);
+			if (lastEviction != null && now.getAsLong() - lastEviction < config.keepRecentlyUsedInMillis()) {
+				return new ArrayList<>();
+			}
+			return evictLocked();
+		});
+	}
+
+	/**
+	 * @return removed entries
+	 */
+	List<Path> evict() {
+		if (!config.enabled()) {
+			return new ArrayList<>();
+		}
+		return FileLocks.withLock(evictLock(), this::evictLocked);
+	}
+
+	private List<Path> evictLocked() {
+		removeUnusedBlobs();
+
+		Map<String, Long> index = FileLocks.withLock(usageLock(), this::readIndex);
+		long currentTime = now.getAsLong();
+		Map<String, Long> firstSeen = new LinkedHashMap<>();
+		List<Entry> entries = entries(index, currentTime, firstSeen);
+
+		// a hard linked file is part of more than one entry, its space is freed with the last one
+		Map<Object, Integer> references = new HashMap<>();
+		Map<Object, Long> sizes = new HashMap<>();
+		for (Entry entry : entries) {
+			entry.files.forEach((key, size) -> {
+				references.merge(key, 1, Integer::sum);
+				sizes.put(key, size);
+			});
+		}
+		long total = sizes.values().stream().mapToLong(Long::longValue).sum();
+
+		List<Path> removed = new ArrayList<>();
+		for (Entry entry : entries) {
+			long unused = currentTime - entry.lastUsed;
+			boolean expired = unused > config.maxAgeInMillis();
+			boolean tooBig = total > config.maxSizeInBytes();
+			if ((expired || tooBig) && unused >= config.keepRecentlyUsedInMillis() && removeIfNotInUse(entry.path)) {
+				long freed = 0;
+				for (Map.Entry<Object, Long> file : entry.files.entrySet()) {
+					if (references.merge(file.getKey(), -1, Integer::sum) == 0) {
+						freed += file.getValue();
+					}
+				}
+				LOGGER.info("evicted {} ({} bytes freed, unused for {}ms)", entry.path, freed, unused);
+				total -= freed;
+				removed.add(entry.path);
+			}
+		}
+
+		if (!removed.isEmpty()) {
+			removeUnusedBlobs();
+		}
+		FileLocks.withLock(usageLock(), () -> {
+			Map<String, Long> current = readIndex();
+			// entries without a record are not evicted by their file time, they count as used now
+			firstSeen.forEach(current::putIfAbsent);
+			removed.forEach(entry -> current.remove(key(entry)));
+			current.put(LAST_EVICTION, currentTime);
+			writeIndex(current);
+			return null;
+		});
+		return removed;
+	}
+
+	private void removeUnusedBlobs() {
+		int removedBlobs = CachedHashExtractedFileSetStore.removeUnusedBlobs(baseDir.resolve("fileSets"));
+		if (removedBlobs > 0) {
+			LOGGER.info("removed {} unused blob(s)", removedBlobs);
+		}
+	}
+
+	private List<Entry> entries(Map<String, Long> index, long currentTime, Map<String, Long> firstSeen) {
+		List<Entry> ret = new ArrayList<>();
+		for (Path entryPath : entryPaths()) {
+			try {
+				String key = key(entryPath);
+				Long lastUsed = index.get(key);
+				if (lastUsed == null) {
+					lastUsed = currentTime;
+					firstSeen.put(key, currentTime);
+				}
+				ret.add(new Entry(entryPath, files(entryPath), lastUsed));
+			}
+			catch (IOException | UncheckedIOException iox) {
+				LOGGER.warn("could not inspect {}", entryPath, iox);
+			}
+		}
+		ret.sort(Comparator.comparingLong(it -> it.lastUsed));
+		return ret;
+	}
+
+	private List<Path> entryPaths() {
+		List<Path> ret = new ArrayList<>();
+		for (String store : STORES) {
+			Path storeDir = baseDir.resolve(store);
+			if (!Files.isDirectory(storeDir)) {
+				continue;
+			}
+			try (Stream<Path> files = store.equals("archives") ? Files.walk(storeDir) : Files.list(storeDir)) {
+				files
+					.filter(it -> store.equals("archives")
+						? Files.isRegularFile(it) && it.getFileName().toString().startsWith("archive.")
+						: Files.isDirectory(it) && !NOT_AN_ENTRY.contains(it.getFileName().toString()) && !it.getFileName().toString().startsWith("."))
+					.map(it -> store.equals("archives") ? it.getParent() : it)
+					.distinct()
+					.forEach(ret::add);
+			}
+			catch (IOException | UncheckedIOException iox) {
+				LOGGER.warn("could not list {}", storeDir, iox);
+			}
+		}
+
+		Path partialDownloads = baseDir.resolve("archives").resolve(PARTIAL_DOWNLOADS);
+		if (Files.isDirectory(partialDownloads)) {
+			try (Stream<Path> files = Files.list(partialDownloads)) {
+				files.filter(Files::isDirectory).forEach(ret::add);
+			}
+			catch (IOException | UncheckedIOException iox) {
+				LOGGER.warn("could not list {}", partialDownloads, iox);
+			}
+		}
+		return ret;
+	}
+
+	private boolean removeIfNotInUse(Path entry) {
+		Path lockFile = inUseLockFile(entry);
+		synchronized (IN_USE) {
+			if (IN_USE.containsKey(lockFile)) {
+				return false;
+			}
+			try (FileChannel channel = open(lockFile); FileLock lock = channel.tryLock()) {
+				if (lock == null) {
+					return false;
+				}
+				de.flapdoodle.embed.process.io.Files.deleteAll(entry);
+				return true;
+			}
+			catch (IOException iox) {
+				LOGGER.warn("could not remove {}", entry, iox);
+				return false;
+			}
+		}
+	}
+
+	private String key(Path entry) {
+		return baseDir.relativize(entry.toAbsolutePath().normalize()).toString().replace('\\', '/');
+	}
+
+	private Path evictLock() {
+		return baseDir.resolve("locks").resolve("evict.lock");
+	}
+
+	private Path usageLock() {
+		return baseDir.resolve("locks").resolve("usage.lock");
+	}
+
+	private Path indexFile() {
+		return baseDir.resolve("usage.index");
+	}
+
+	private Path inUseLockFile(Path entry) {
+		String name = UUID.nameUUIDFromBytes(key(entry).getBytes(StandardCharsets.UTF_8)).toString();
+		return baseDir.resolve("locks").resolve("inUse-" + name + ".lock");
+	}
+
+	private Map<String, Long> readIndex() {
+		Map<String, Long> ret = new LinkedHashMap<>();
+		Path indexFile = indexFile();
+		if (Files.exists(indexFile)) {
+			try {
+				for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+					int tab = line.indexOf('\t');
+					if (tab > 0) {
+						ret.put(line.substring(tab + 1), Long.parseLong(line.substring(0, tab)));
+					}
+				}
+			}
+			catch (IOException | NumberFormatException ex) {
+				LOGGER.warn("could not read {}, start with an empty index", indexFile, ex);
+				ret.clear();
+			}
+		}
+		return ret;
+	}
+
+	private void writeIndex(Map<String, Long> index) {
+		Path indexFile = indexFile();
+		List<String> lines = index.entrySet().stream()
+			.map(it -> it.getValue() + "\t" + it.getKey())
+			.collect(Collectors.toList());
+		try {
+			Files.createDirectories(baseDir);
+			Path partial = Files.createTempFile(baseDir, "usage", ".part");
+			try {
+				Files.write(partial, lines, StandardCharsets.UTF_8);
+				try {
+					Files.move(partial, indexFile, StandardCopyOption.ATOMIC_MOVE);
+				}
+				catch (AtomicMoveNotSupportedException ax) {
+					Files.move(partial, indexFile, StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			finally {
+				Files.deleteIfExists(partial);
+			}
+		}
+		catch (IOException iox) {
+			LOGGER.warn("could not write {}", indexFile, iox);
+		}
+	}
+
+	/**
+	 * size of each file by its file key (or path, if there is none)
+	 */
+	private static Map<Object, Long> files(Path entry) throws IOException {
+		Map<Object, Long> ret = new HashMap<>();
+		try (Stream<Path> files = Files.walk(entry)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				if (attributes.isRegularFile()) {
+					Object key = attributes.fileKey();
+					ret.put(key != null ? key : file.toAbsolutePath(), attributes.size());
+				}
+			}
+		}
+		return ret;
+	}
+
+	private static FileChannel open(Path lockFile) throws IOException {
+		Files.createDirectories(lockFile.getParent());
+		return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * a JVM can hold only one lock per file, so the shared lock is counted for all users in this JVM.
+	 * an eviction in another process holds the exclusive lock while it removes the entry, which is waited for
+	 * outside of the monitor, so that other threads are not blocked.
+	 */
+	private static boolean acquire(Path lockFile) {
+		while (true) {
+			synchronized (IN_USE) {
+				InUseLock inUse = IN_USE.get(lockFile);
+				if (inUse == null) {
+					try {
+						inUse = tryLockShared(lockFile);
+					}
+					catch (IOException iox) {
+						LOGGER.warn("could not mark {} as in use", lockFile, iox);
+						return false;
+					}
+					if (inUse != null) {
+						IN_USE.put(lockFile, inUse);
+					}
+				}
+				if (inUse != null) {
+					inUse.count++;
+					return true;
+				}
+			}
+			try {
+				Thread.sleep(LOCK_RETRY_INTERVAL);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+
+	private static InUseLock tryLockShared(Path lockFile) throws IOException {
+		FileChannel channel = open(lockFile);
+		try {
+			FileLock lock = channel.tryLock(0, Long.MAX_VALUE, true);
+			if (lock != null) {
+				return new InUseLock(channel, lock);
+			}
+		}
+		catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+		channel.close();
+		return null;
+	}
+
+	private static void release(Path lockFile) {
+		synchronized (IN_USE) {
+			InUseLock inUse = IN_USE.get(lockFile);
+			if (inUse != null && --inUse.count == 0) {
+				IN_USE.remove(lockFile);
+				try {
+					inUse.lock.release();
+					inUse.channel.close();
+				}
+				catch (IOException iox) {
+					LOGGER.warn("could not release {}", lockFile, iox);
+				}
+			}
+		}
+	}
+
+	private static final class InUseLock {
+		private final FileChannel channel;
+		private final FileLock lock;
+		private int count = 0;
+
+		private InUseLock(FileChannel channel, FileLock lock) {
+			this.channel = channel;
+			this.lock = lock;
+		}
+	}
+
+	private static final class Entry {
+		private final Path path;
+		private final Map<Object, Long> files;
+		private final long lastUsed;
+
+		private Entry(Path path, Map<Object, Long> files, long lastUsed) {
+			this.path = path;
+			this.files = files;
+			this.lastUsed = lastUsed;
+		}
+	}
+}
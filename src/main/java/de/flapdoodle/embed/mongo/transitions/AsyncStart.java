@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.reverse.TransitionWalker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * runs a blocking start on an executor.
+ * if nobody can get the result anymore (future cancelled before start finished), the reached state is closed.
+ */
+final class AsyncStart {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncStart.class);
+
+	private AsyncStart() {
+		// no instance
+	}
+
+	static <T> CompletableFuture<TransitionWalker.ReachedState<T>> start(Supplier<TransitionWalker.ReachedState<T>> start, Executor executor) {
+		CompletableFuture<TransitionWalker.ReachedState<T>> ret = new CompletableFuture<>();
+		executor.execute(() -> {
+			if (ret.isDone()) {
+				return;
+			}
+			try {
+				TransitionWalker.ReachedState<T> reachedState = start.get();
+				if (!ret.complete(reachedState)) {
+					close(reachedState);
+				}
+			}
+			catch (Throwable ex) {
+				ret.completeExceptionally(ex);
+			}
+		});
+		return ret;
+	}
+
+	private static void close(TransitionWalker.ReachedState<?> reachedState) {
+		try {
+			reachedState.close();
+		}
+		catch (RuntimeException rx) {
+			LOGGER.warn("could not close unused reached state", rx);
+		}
+	}
+}
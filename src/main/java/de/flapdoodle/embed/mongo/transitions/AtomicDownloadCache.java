@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import de.flapdoodle.embed.process.store.LocalDownloadCache;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * copies a downloaded archive next to its destination and renames it,
+ * so that nobody sees a partial archive, even if the copy is interrupted
+ */
+class AtomicDownloadCache extends LocalDownloadCache {
+
+	AtomicDownloadCache(Path baseDir) {
+		super(createdDirectories(baseDir));
+	}
+
+	/**
+	 * LocalDownloadCache fails if another thread creates the directory between its check and its creation
+	 */
+	private static Path createdDirectories(Path baseDir) {
+		try {
+			return Files.createDirectories(baseDir);
+		}
+		catch (IOException iox) {
+			throw new RuntimeException("could not create " + baseDir, iox);
+		}
+	}
+
+	@Override
+	public Path store(URL url, ArchiveType archiveType, Path archive) throws IOException {
+		Path arcFile = archivePath(url, archiveType);
+		Path arcDirectory = arcFile.getParent();
+		if (arcDirectory == null) {
+			throw new IOException("no parent directory for " + arcFile);
+		}
+		Files.createDirectories(arcDirectory);
+
+		Path partial = Files.createTempFile(arcDirectory, "archive", ".part");
+		try {
+			Files.copy(archive, partial, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+			try {
+				Files.move(partial, arcFile, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException ax) {
+				Files.move(partial, arcFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+			return arcFile;
+		}
+		finally {
+			Files.deleteIfExists(partial);
+		}
+	}
+}
@@ -0,0 +1,355 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.runtime.ThroughputProgressListener;
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
+import de.flapdoodle.embed.process.archives.ImmutableExtractedFileSet;
+import de.flapdoodle.embed.process.config.store.FileSet;
+import de.flapdoodle.embed.process.hash.Hasher;
+import de.flapdoodle.embed.process.io.progress.ProgressListener;
+import de.flapdoodle.embed.process.store.ExtractedFileSetStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * same layout as ContentHashExtractedFileSetStore (one directory per content hash), but the content hash
+ * of an archive is stored in a sidecar file keyed by archive path, size, modification time and file key (inode).
+ * the archive is only read (memory mapped) if one of these has changed.
+ * files of a file set are hard links into a blob store keyed by the file content, so that binaries
+ * shared by different archives are stored once. a blob without other links is not used anymore.
+ */
+class CachedHashExtractedFileSetStore implements ExtractedFileSetStore {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CachedHashExtractedFileSetStore.class);
+
+	private static final long MAX_MAPPED_REGION = 256L * 1024 * 1024;
+
+	private final Path basePath;
+	private final Path hashesPath;
+	private final Path blobsPath;
+	private final Optional<ProgressListener> progressListener;
+
+	CachedHashExtractedFileSetStore(Path basePath) {
+		this(basePath, Optional.empty());
+	}
+
+	/**
+	 * hashing of an archive is reported as phase "hash" to the progress listener
+	 */
+	CachedHashExtractedFileSetStore(Path basePath, Optional<ProgressListener> progressListener) {
+		this.basePath = basePath;
+		this.progressListener = progressListener;
+		this.hashesPath = basePath.resolve("contentHashes");
+		this.blobsPath = blobsPath(basePath);
+		try {
+			Files.createDirectories(hashesPath);
+		}
+		catch (IOException iox) {
+			throw new IllegalStateException("could not create " + hashesPath, iox);
+		}
+	}
+
+	@Override
+	public Optional<ExtractedFileSet> extractedFileSet(Path archive, FileSet fileSet) {
+		Path fileSetBasePath = basePath.resolve(hash(archive, fileSet));
+		if (Files.isDirectory(fileSetBasePath)) {
+			try {
+				return Optional.of(readFileSet(fileSetBasePath, fileSet));
+			}
+			catch (IOException iox) {
+				LOGGER.warn("incomplete file set in {}", fileSetBasePath, iox);
+			}
+		}
+		return Optional.empty();
+	}
+
+	@Override
+	public ExtractedFileSet store(Path archive, FileSet fileSet, ExtractedFileSet src) throws IOException {
+		String hash = hash(archive, fileSet);
+		Path fileSetBasePath = basePath.resolve(hash);
+		if (Files.exists(fileSetBasePath)) {
+			return existing(archive, fileSetBasePath, fileSet);
+		}
+		// different archives with the same content can be stored at the same time,
+		// so the file set is created next to its destination and renamed
+		Path partial = Files.createTempDirectory(basePath, "." + hash);
+		try {
+			copyInto(partial, fileSet, src);
+			try {
+				Files.move(partial, fileSetBasePath, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException ax) {
+				Files.move(partial, fileSetBasePath);
+			}
+			catch (FileAlreadyExistsException | DirectoryNotEmptyException ex) {
+				return existing(archive, fileSetBasePath, fileSet);
+			}
+			return readFileSet(fileSetBasePath, fileSet);
+		}
+		finally {
+			if (Files.exists(partial)) {
+				de.flapdoodle.embed.process.io.Files.deleteAll(partial);
+			}
+		}
+	}
+
+	private static ExtractedFileSet existing(Path archive, Path fileSetBasePath, FileSet fileSet) {
+		try {
+			return readFileSet(fileSetBasePath, fileSet);
+		}
+		catch (IOException iox) {
+			throw new IllegalArgumentException("hash collision for " + archive + " (" + fileSetBasePath + ")", iox);
+		}
+	}
+
+	String hash(Path archive, FileSet fileSet) {
+		try {
+			Path hashFile = hashesPath.resolve(key(archive, fileSet));
+			if (Files.exists(hashFile)) {
+				return new String(Files.readAllBytes(hashFile), StandardCharsets.UTF_8);
+			}
+			String label = "hash " + archive;
+			progressListener.ifPresent(it -> it.start(label));
+			String hash;
+			try {
+				hash = contentHash(archive, fileSet);
+			}
+			catch (IOException | RuntimeException ex) {
+				progressListener.ifPresent(it -> it.info(label, ThroughputProgressListener.FAILED));
+				throw ex;
+			}
+			progressListener.ifPresent(it -> {
+				it.info(label, "size " + archive.toFile().length() + " bytes");
+				it.done(label);
+			});
+			write(hashFile, hash);
+			return hash;
+		}
+		catch (IOException iox) {
+			throw new IllegalStateException("could not hash " + archive, iox);
+		}
+	}
+
+	private static String key(Path archive, FileSet fileSet) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(archive, BasicFileAttributes.class);
+		Hasher hasher = fileSetHasher(fileSet)
+			.update(archive.toAbsolutePath().toString())
+			.update(":" + attributes.size())
+			.update(":" + attributes.lastModifiedTime().toMillis())
+			.update(":" + attributes.fileKey());
+		return hasher.hashAsString();
+	}
+
+	/**
+	 * same hash as ContentHashExtractedFileSetStore, so both use the same directories
+	 */
+	static String contentHash(Path archive, FileSet fileSet) throws IOException {
+		return update(fileSetHasher(fileSet), archive).hashAsString();
+	}
+
+	private static Hasher update(Hasher hasher, Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			for (long position = 0; position < size; position += MAX_MAPPED_REGION) {
+				MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_MAPPED_REGION, size - position));
+				hasher.update(region);
+			}
+		}
+		return hasher;
+	}
+
+	private static Hasher fileSetHasher(FileSet fileSet) {
+		Hasher hasher = Hasher.instance();
+		fileSet.entries().forEach(entry -> hasher
+			.update(entry.type().name().getBytes(StandardCharsets.UTF_8))
+			.update(entry.destination().getBytes(StandardCharsets.UTF_8))
+			.update(entry.matchingPattern().toString().getBytes(StandardCharsets.UTF_8)));
+		return hasher.update("--".getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void write(Path hashFile, String hash) throws IOException {
+		Path partial = Files.createTempFile(hashFile.getParent(), "hash", ".part");
+		try {
+			Files.write(partial, hash.getBytes(StandardCharsets.UTF_8));
+			try {
+				Files.move(partial, hashFile, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException ax) {
+				Files.move(partial, hashFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(partial);
+		}
+	}
+
+	private void copyInto(Path fileSetBasePath, FileSet fileSet, ExtractedFileSet src) throws IOException {
+		Map<String, Path> libraryFiles = src.libraryFiles().stream()
+			.collect(Collectors.toMap(it -> src.baseDir().relativize(it).toString(), Function.identity()));
+		for (FileSet.Entry entry : fileSet.entries()) {
+			Path dest = fileSetBasePath.resolve(entry.destination());
+			Path source;
+			switch (entry.type()) {
+				case Executable:
+					source = src.executable();
+					break;
+				case Library:
+					source = libraryFiles.get(entry.destination());
+					if (source == null) {
+						throw new IOException("could not find entry for " + entry.destination() + " in " + libraryFiles);
+					}
+					break;
+				default:
+					throw new IllegalArgumentException("unknown type: " + entry.type());
+			}
+			if (dest.getParent() != null) {
+				Files.createDirectories(dest.getParent());
+			}
+			linkOrCopy(source, dest);
+		}
+	}
+
+	/**
+	 * hard links are only used if the link count can be read, because unused blobs are found by their link count
+	 */
+	private void linkOrCopy(Path source, Path dest) throws IOException {
+		if (!hasLinkCount(source)) {
+			Files.copy(source, dest, StandardCopyOption.COPY_ATTRIBUTES);
+			return;
+		}
+		String hash = update(Hasher.instance(), source).hashAsString();
+		// all links share the permissions of the blob
+		Path blob = blobsPath.resolve(hash.substring(0, 2)).resolve(Files.isExecutable(source) ? hash + ".x" : hash);
+		try {
+			link(source, blob, dest);
+		}
+		catch (NoSuchFileException nx) {
+			// blob was removed as unused in the meantime
+			link(source, blob, dest);
+		}
+		catch (IOException | UnsupportedOperationException ex) {
+			LOGGER.debug("could not link {} to {}, copy it", dest, blob, ex);
+			Files.deleteIfExists(dest);
+			Files.copy(source, dest, StandardCopyOption.COPY_ATTRIBUTES);
+		}
+	}
+
+	private static void link(Path source, Path blob, Path dest) throws IOException {
+		if (!Files.exists(blob)) {
+			Files.createDirectories(blob.getParent());
+			Path partial = Files.createTempFile(blob.getParent(), "blob", ".part");
+			try {
+				Files.copy(source, partial, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+				try {
+					Files.move(partial, blob, StandardCopyOption.ATOMIC_MOVE);
+				}
+				catch (AtomicMoveNotSupportedException ax) {
+					Files.move(partial, blob, StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			finally {
+				Files.deleteIfExists(partial);
+			}
+		}
+		Files.createLink(dest, blob);
+	}
+
+	/**
+	 * removes blobs which are not linked from any file set
+	 *
+	 * @return number of removed blobs
+	 */
+	static int removeUnusedBlobs(Path basePath) {
+		Path blobsPath = blobsPath(basePath);
+		if (!Files.isDirectory(blobsPath)) {
+			return 0;
+		}
+		int removed = 0;
+		try (Stream<Path> files = Files.walk(blobsPath)) {
+			for (Path blob : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+				if (!blob.getFileName().toString().endsWith(".part") && linkCount(blob) == 1 && Files.deleteIfExists(blob)) {
+					removed++;
+				}
+			}
+		}
+		catch (IOException iox) {
+			LOGGER.warn("could not remove unused blobs in {}", blobsPath, iox);
+		}
+		return removed;
+	}
+
+	static Path blobsPath(Path basePath) {
+		return basePath.resolve("blobs");
+	}
+
+	private static boolean hasLinkCount(Path file) {
+		try {
+			linkCount(file);
+			return true;
+		}
+		catch (IOException | UnsupportedOperationException | IllegalArgumentException ex) {
+			return false;
+		}
+	}
+
+	static int linkCount(Path file) throws IOException {
+		return (Integer) Files.getAttribute(file, "unix:nlink");
+	}
+
+	private static ExtractedFileSet readFileSet(Path fileSetBasePath, FileSet fileSet) throws IOException {
+		ImmutableExtractedFileSet.Builder builder = ExtractedFileSet.builder(fileSetBasePath);
+		for (FileSet.Entry entry : fileSet.entries()) {
+			Path entryPath = fileSetBasePath.resolve(entry.destination());
+			if (!Files.exists(entryPath)) {
+				throw new IOException("could not find matching file: " + entryPath);
+			}
+			switch (entry.type()) {
+				case Executable:
+					builder.executable(entryPath);
+					break;
+				case Library:
+					builder.addLibraryFiles(entryPath);
+					break;
+			}
+		}
+		return builder.build();
+	}
+}
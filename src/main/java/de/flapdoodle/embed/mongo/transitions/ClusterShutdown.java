@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import org.immutables.value.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * stops all processes of a cluster: all mongos in parallel, then all shards in parallel
+ * and then all config servers in parallel.
+ * each process is stopped only once, so it is safe to close the ReachedState afterwards.
+ */
+@Value.Immutable
+public abstract class ClusterShutdown {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ClusterShutdown.class);
+
+	public abstract List<RunningMongosProcess> routers();
+
+	public abstract List<RunningMongodProcess> shards();
+
+	public abstract List<RunningMongodProcess> configServers();
+
+	public void stopAll() {
+		int maxStageSize = Math.max(routers().size(), Math.max(shards().size(), configServers().size()));
+		if (maxStageSize == 0) {
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(maxStageSize, runnable -> {
+			Thread thread = new Thread(runnable, "cluster-shutdown");
+			thread.setDaemon(true);
+			return thread;
+		});
+		List<RuntimeException> failures = new ArrayList<>();
+		try {
+			stopInParallel(routers(), executor, failures);
+			stopInParallel(shards(), executor, failures);
+			stopInParallel(configServers(), executor, failures);
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		if (!failures.isEmpty()) {
+			RuntimeException exception = new RuntimeException("could not stop " + failures.size() + " process(es)");
+			failures.forEach(exception::addSuppressed);
+			throw exception;
+		}
+	}
+
+	private static void stopInParallel(List<? extends RunningMongoProcess> processes, ExecutorService executor, List<RuntimeException> failures) {
+		List<CompletableFuture<Integer>> stopped = new ArrayList<>();
+		for (RunningMongoProcess process : processes) {
+			stopped.add(CompletableFuture.supplyAsync(process::stop, executor));
+		}
+		for (CompletableFuture<Integer> future : stopped) {
+			try {
+				LOGGER.debug("stopped with exit value {}", future.join());
+			}
+			catch (CompletionException cx) {
+				failures.add(cx.getCause() instanceof RuntimeException
+					? (RuntimeException) cx.getCause()
+					: new RuntimeException(cx.getCause()));
+			}
+		}
+	}
+
+	public static ImmutableClusterShutdown.Builder builder() {
+		return ImmutableClusterShutdown.builder();
+	}
+}
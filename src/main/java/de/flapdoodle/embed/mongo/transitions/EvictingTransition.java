@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.config.EvictionConfig;
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
+import de.flapdoodle.embed.process.config.store.Package;
+import de.flapdoodle.embed.process.io.directories.PersistentDir;
+import de.flapdoodle.embed.process.store.DownloadCache;
+import de.flapdoodle.reverse.State;
+import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.StateLookup;
+import de.flapdoodle.reverse.TearDown;
+import de.flapdoodle.reverse.Transition;
+import de.flapdoodle.reverse.naming.HasLabel;
+import de.flapdoodle.types.Try;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * marks archive and file set of an extraction as used as long as the state is reached,
+ * and starts an eviction of the persistent dir in the background.
+ * another JVM may evict the file set between lookup and mark, so it is looked up again if it is gone.
+ */
+final class EvictingTransition implements Transition<ExtractedFileSet>, HasLabel {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EvictingTransition.class);
+
+	private static final StateID<PersistentDir> PERSISTENT_DIR = StateID.of(PersistentDir.class);
+	private static final StateID<Package> PACKAGE = StateID.of(Package.class);
+	private static final StateID<DownloadCache> DOWNLOAD_CACHE = StateID.of(DownloadCache.class);
+	private static final StateID<EvictionConfig> EVICTION_CONFIG = StateID.of(EvictionConfig.class);
+	private static final int MAX_ATTEMPTS = 3;
+
+	private final Transition<ExtractedFileSet> delegate;
+
+	private EvictingTransition(Transition<ExtractedFileSet> delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public String transitionLabel() {
+		return delegate instanceof HasLabel
+			? ((HasLabel) delegate).transitionLabel()
+			: "extract";
+	}
+
+	@Override
+	public StateID<ExtractedFileSet> destination() {
+		return delegate.destination();
+	}
+
+	@Override
+	public Set<StateID<?>> sources() {
+		Set<StateID<?>> ret = new LinkedHashSet<>(delegate.sources());
+		ret.add(PERSISTENT_DIR);
+		ret.add(PACKAGE);
+		ret.add(DOWNLOAD_CACHE);
+		ret.add(EVICTION_CONFIG);
+		return ret;
+	}
+
+	@Override
+	public State<ExtractedFileSet> result(StateLookup lookup) {
+		EvictionConfig config = lookup.of(EVICTION_CONFIG);
+		if (!config.enabled()) {
+			return delegate.result(lookup);
+		}
+
+		ArtifactStoreEviction eviction = new ArtifactStoreEviction(lookup.of(PERSISTENT_DIR).value(), config);
+		for (int attempt = 1; ; attempt++) {
+			State<ExtractedFileSet> result = delegate.result(lookup);
+			AutoCloseable inUse = markUsed(eviction, lookup, result.value());
+			if (exists(result.value()) || attempt == MAX_ATTEMPTS) {
+				eviction.evictInBackground();
+
+				TearDown<ExtractedFileSet> release = current -> Try.run(inUse::close);
+				return State.of(result.value(), result.onTearDown()
+					.map(tearDown -> tearDown.andThen(release))
+					.orElse(release));
+			}
+			LOGGER.info("{} was evicted before it was marked as used, extract again", result.value().baseDir());
+			Try.run(inUse::close);
+			result.onTearDown().ifPresent(tearDown -> tearDown.onTearDown(result.value()));
+		}
+	}
+
+	private static AutoCloseable markUsed(ArtifactStoreEviction eviction, StateLookup lookup, ExtractedFileSet fileSet) {
+		Package distPackage = lookup.of(PACKAGE);
+		List<Path> used = new ArrayList<>();
+		used.add(eviction.entryOf(fileSet.baseDir()));
+		Try.supplier(() -> lookup.of(DOWNLOAD_CACHE).archiveFor(new URL(distPackage.url()), distPackage.archiveType()))
+			.fallbackTo(ex -> {
+				LOGGER.warn("could not find archive of {}", distPackage.url(), ex);
+				return Optional.empty();
+			})
+			.get()
+			.ifPresent(archive -> used.add(eviction.entryOf(archive)));
+		used.removeIf(Objects::isNull);
+		return eviction.markUsed(used);
+	}
+
+	private static boolean exists(ExtractedFileSet fileSet) {
+		return Files.isRegularFile(fileSet.executable())
+			&& fileSet.libraryFiles().stream().allMatch(Files::isRegularFile);
+	}
+
+	static EvictingTransition of(Transition<ExtractedFileSet> delegate) {
+		return new EvictingTransition(delegate);
+	}
+}
@@ -20,22 +20,22 @@
  */
 package de.flapdoodle.embed.mongo.transitions;
 
+import de.flapdoodle.embed.mongo.config.EvictionConfig;
 import de.flapdoodle.embed.mongo.types.SystemEnv;
 import de.flapdoodle.embed.process.archives.ExtractedFileSet;
 import de.flapdoodle.embed.process.config.store.Package;
 import de.flapdoodle.embed.process.io.directories.PersistentDir;
 import de.flapdoodle.embed.process.io.progress.ProgressListener;
 import de.flapdoodle.embed.process.io.progress.StandardConsoleProgressListener;
-import de.flapdoodle.embed.process.store.ContentHashExtractedFileSetStore;
 import de.flapdoodle.embed.process.store.DownloadCache;
 import de.flapdoodle.embed.process.store.ExtractedFileSetStore;
-import de.flapdoodle.embed.process.store.LocalDownloadCache;
 import de.flapdoodle.embed.process.transitions.DownloadPackage;
 import de.flapdoodle.embed.process.transitions.ExtractPackage;
 import de.flapdoodle.reverse.StateID;
 import de.flapdoodle.reverse.Transition;
 import de.flapdoodle.reverse.Transitions;
 import de.flapdoodle.reverse.transitions.Derive;
+import de.flapdoodle.reverse.transitions.Join;
 import de.flapdoodle.reverse.transitions.Start;
 import de.flapdoodle.types.Try;
 import org.immutables.value.Value;
@@ -71,15 +71,25 @@ public interface ExtractFileSet {
 	default Transition<DownloadCache> downloadCache() {
 		return Derive.given(PersistentDir.class)
 			.state(DownloadCache.class)
-			.deriveBy(storeBaseDir -> new LocalDownloadCache(storeBaseDir.value().resolve("archives")))
+			.deriveBy(storeBaseDir -> new AtomicDownloadCache(storeBaseDir.value().resolve("archives")))
 			.withTransitionLabel("downloadCache");
 	}
 
+	/**
+	 * disabled by default, with EvictionConfig.enabledWithDefaults() least recently used archives and
+	 * file sets in the persistent dir are removed after an extraction
+	 */
+	@Value.Default
+	default Transition<EvictionConfig> evictionConfig() {
+		return Start.to(EvictionConfig.class)
+			.initializedWith(EvictionConfig.defaults());
+	}
+
 	@Value.Default
 	default Transition<ExtractedFileSetStore> extractedFileSetStore() {
-		return Derive.given(PersistentDir.class)
+		return Join.given(PersistentDir.class).and(ProgressListener.class)
 			.state(ExtractedFileSetStore.class)
-			.deriveBy(baseDir -> new ContentHashExtractedFileSetStore(baseDir.value().resolve("fileSets")))
+			.deriveBy((baseDir, progressListener) -> new CachedHashExtractedFileSetStore(baseDir.value().resolve("fileSets"), Optional.of(progressListener)))
 			.withTransitionLabel("extractedFileSetStore");
 	}
 	
@@ -88,6 +98,9 @@ public interface ExtractFileSet {
 		return DownloadPackage.withDefaults();
 	}
 
+	/**
+	 * use a ThroughputProgressListener to print throughput and eta of each phase or to collect its measurements
+	 */
 	@Value.Default
 	default Transition<ProgressListener> progressListener() {
 		return Start.to(ProgressListener.class)
@@ -105,6 +118,10 @@ public interface ExtractFileSet {
 		return PackageOfCommandDistribution.withDefaults();
 	}
 
+	/**
+	 * download and extraction are locked for each package, so that parallel JVMs do it only once.
+	 * extraction takes the download lock too, because StreamingExtractPackage downloads while it extracts.
+	 */
 	@Value.Auxiliary
 	default Transitions extractFileSet() {
 		return Transitions.from(
@@ -113,9 +130,10 @@ public interface ExtractFileSet {
 			downloadCache(),
 			packageOfDistribution(),
 			progressListener(),
-			downloadPackage(),
+			LockedTransition.of(ReportingTransition.download(downloadPackage()), "download"),
 			extractedFileSetStore(),
-			extractPackage()
+			evictionConfig(),
+			EvictingTransition.of(LockedTransition.of(ReportingTransition.of(extractPackage(), "extract"), "download", "extract"))
 		);
 	}
 }
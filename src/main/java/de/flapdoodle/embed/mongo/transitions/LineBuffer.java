@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+/**
+ * keeps the last lines, limited by line count and overall length
+ */
+final class LineBuffer {
+	private final String[] lines;
+	private final int maxChars;
+
+	private int first = 0;
+	private int size = 0;
+	private int chars = 0;
+	private long dropped = 0;
+
+	LineBuffer(int maxLines, int maxChars) {
+		this.lines = new String[maxLines];
+		this.maxChars = maxChars;
+	}
+
+	void add(String line) {
+		String limited = line.length() > maxChars
+			? line.substring(line.length() - maxChars)
+			: line;
+
+		while (size == lines.length || (size > 0 && chars + limited.length() > maxChars)) {
+			dropFirst();
+		}
+		lines[(first + size) % lines.length] = limited;
+		size++;
+		chars += limited.length();
+	}
+
+	private void dropFirst() {
+		chars -= lines[first].length();
+		lines[first] = null;
+		first = (first + 1) % lines.length;
+		size--;
+		dropped++;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(chars + size + (dropped > 0 ? 32 : 0));
+		if (dropped > 0) {
+			sb.append("... (").append(dropped).append(" lines dropped)\n");
+		}
+		for (int i = 0; i < size; i++) {
+			sb.append(lines[(first + i) % lines.length]).append("\n");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.runtime.FileLocks;
+import de.flapdoodle.embed.process.config.store.Package;
+import de.flapdoodle.embed.process.io.directories.PersistentDir;
+import de.flapdoodle.reverse.State;
+import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.StateLookup;
+import de.flapdoodle.reverse.Transition;
+import de.flapdoodle.reverse.naming.HasLabel;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * runs a transition with a file lock for its package in the persistent dir,
+ * so that an archive is downloaded or extracted by one JVM while the others wait and reuse the result
+ */
+final class LockedTransition<T> implements Transition<T>, HasLabel {
+
+	private static final StateID<PersistentDir> PERSISTENT_DIR = StateID.of(PersistentDir.class);
+	private static final StateID<Package> PACKAGE = StateID.of(Package.class);
+
+	private final Transition<T> delegate;
+	private final List<String> actions;
+
+	private LockedTransition(Transition<T> delegate, List<String> actions) {
+		this.delegate = delegate;
+		this.actions = actions;
+	}
+
+	@Override
+	public String transitionLabel() {
+		return delegate instanceof HasLabel
+			? ((HasLabel) delegate).transitionLabel()
+			: String.join("+", actions);
+	}
+
+	@Override
+	public StateID<T> destination() {
+		return delegate.destination();
+	}
+
+	@Override
+	public Set<StateID<?>> sources() {
+		Set<StateID<?>> ret = new LinkedHashSet<>(delegate.sources());
+		ret.add(PERSISTENT_DIR);
+		ret.add(PACKAGE);
+		return ret;
+	}
+
+	@Override
+	public State<T> result(StateLookup lookup) {
+		PersistentDir persistentDir = lookup.of(PERSISTENT_DIR);
+		Package distPackage = lookup.of(PACKAGE);
+		Supplier<State<T>> locked = () -> delegate.result(lookup);
+		for (int i = actions.size() - 1; i >= 0; i--) {
+			Path lockFile = lockFile(persistentDir, distPackage, actions.get(i));
+			Supplier<State<T>> inner = locked;
+			locked = () -> FileLocks.withLock(lockFile, inner);
+		}
+		return locked.get();
+	}
+
+	static Path lockFile(PersistentDir persistentDir, Package distPackage, String action) {
+		String key = UUID.nameUUIDFromBytes(distPackage.url().getBytes(StandardCharsets.UTF_8)).toString();
+		return persistentDir.value().resolve("locks").resolve(action + "-" + key + ".lock");
+	}
+
+	/**
+	 * locks are taken in the given order
+	 */
+	static <T> LockedTransition<T> of(Transition<T> delegate, String... actions) {
+		return new LockedTransition<>(delegate, Arrays.asList(actions));
+	}
+}
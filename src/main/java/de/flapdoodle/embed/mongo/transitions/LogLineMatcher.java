@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.config.StartupMessages;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * matches all success and failure messages against a line in one pass:
+ * a literal every match must contain is extracted from each regex, all literals are
+ * searched at once and only regexes whose literal was found are evaluated
+ */
+final class LogLineMatcher {
+
+	private final List<Entry> entries;
+	private final AhoCorasick literals;
+	private final String errorGroup;
+
+	private LogLineMatcher(List<Entry> entries, AhoCorasick literals, String errorGroup) {
+		this.entries = entries;
+		this.literals = literals;
+		this.errorGroup = errorGroup;
+	}
+
+	/**
+	 * @return null if nothing matched
+	 */
+	Result match(String line) {
+		long found = literals.matches(line);
+		for (Entry entry : entries) {
+			if (entry.literalIndex >= 0 && (found & (1L << entry.literalIndex)) == 0) {
+				continue;
+			}
+			if (entry.success) {
+				if (entry.pattern == null || entry.pattern.matcher(line).find()) {
+					return Result.SUCCESS;
+				}
+			} else {
+				Matcher matcher = entry.pattern.matcher(line);
+				if (matcher.find()) {
+					return Result.failure(matcher.group(errorGroup));
+				}
+			}
+		}
+		return null;
+	}
+
+	static LogLineMatcher of(StartupMessages messages) {
+		List<Entry> entries = new ArrayList<>();
+		List<String> literalList = new ArrayList<>();
+		for (String message : messages.successMessages()) {
+			entries.add(entry(true, message, literalList));
+		}
+		for (String message : messages.failureMessages()) {
+			entries.add(entry(false, message, literalList));
+		}
+		return new LogLineMatcher(entries, new AhoCorasick(literalList), StartupMessages.ERROR_GROUP);
+	}
+
+	private static Entry entry(boolean success, String regex, List<String> literalList) {
+		Pattern pattern = Pattern.compile(regex);
+		Optional<String> literal = requiredLiteral(regex);
+		int literalIndex = -1;
+		if (literal.isPresent() && literalList.size() < 64) {
+			literalIndex = literalList.size();
+			literalList.add(literal.get());
+		}
+		boolean pureLiteral = literalIndex >= 0 && literal.get().equals(regex);
+		return new Entry(success, success && pureLiteral ? null : pattern, literalIndex);
+	}
+
+	/**
+	 * the longest literal every match of this regex must contain, empty if this is not sure
+	 */
+	// VisibleForTesting
+	static Optional<String> requiredLiteral(String regex) {
+		if (regex.contains("|") || regex.contains("\\Q")) {
+			return Optional.empty();
+		}
+		// an optional group may contain literals which are not part of every match
+		boolean onlyTopLevel = Pattern.compile("\\)[?*{]").matcher(regex).find();
+
+		String best = "";
+		StringBuilder current = new StringBuilder();
+		int depth = 0;
+		int i = 0;
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			switch (c) {
+				case '\\': {
+					if (i + 1 >= regex.length()) {
+						return Optional.empty();
+					}
+					char escaped = regex.charAt(i + 1);
+					if (Character.isLetterOrDigit(escaped)) {
+						best = longer(best, current);
+					} else {
+						if (depth == 0 || !onlyTopLevel) {
+							current.append(escaped);
+						} else {
+							best = longer(best, current);
+						}
+					}
+					i += 2;
+					continue;
+				}
+				case '(': {
+					best = longer(best, current);
+					depth++;
+					if (regex.startsWith("?:", i + 1)) {
+						i += 3;
+						continue;
+					}
+					if (regex.startsWith("?<", i + 1) && !regex.startsWith("?<=", i + 1) && !regex.startsWith("?<!", i + 1)) {
+						int end = regex.indexOf('>', i);
+						if (end < 0) {
+							return Optional.empty();
+						}
+						i = end + 1;
+						continue;
+					}
+					if (regex.startsWith("?", i + 1)) {
+						// flags or look around
+						return Optional.empty();
+					}
+					break;
+				}
+				case ')':
+					best = longer(best, current);
+					depth--;
+					break;
+				case '[': {
+					best = longer(best, current);
+					int end = i + 1;
+					if (end < regex.length() && regex.charAt(end) == '^') {
+						end++;
+					}
+					if (end < regex.length() && regex.charAt(end) == ']') {
+						end++;
+					}
+					while (end < regex.length() && regex.charAt(end) != ']') {
+						if (regex.charAt(end) == '\\') {
+							end++;
+						}
+						end++;
+					}
+					i = end + 1;
+					continue;
+				}
+				case '?':
+				case '*':
+					removeLast(current);
+					best = longer(best, current);
+					break;
+				case '{': {
+					removeLast(current);
+					best = longer(best, current);
+					int end = regex.indexOf('}', i);
+					if (end < 0) {
+						return Optional.empty();
+					}
+					i = end + 1;
+					continue;
+				}
+				case '+':
+				case '.':
+				case '^':
+				case '$':
+					best = longer(best, current);
+					break;
+				default:
+					if (depth == 0 || !onlyTopLevel) {
+						current.append(c);
+					} else {
+						best = longer(best, current);
+					}
+			}
+			i++;
+		}
+		best = longer(best, current);
+		return best.isEmpty() ? Optional.empty() : Optional.of(best);
+	}
+
+	private static String longer(String best, StringBuilder current) {
+		String ret = current.length() > best.length() ? current.toString() : best;
+		current.setLength(0);
+		return ret;
+	}
+
+	private static void removeLast(StringBuilder current) {
+		if (current.length() > 0) {
+			current.setLength(current.length() - 1);
+		}
+	}
+
+	static final class Result {
+		static final Result SUCCESS = new Result(null);
+
+		private final String errorMessage;
+
+		private Result(String errorMessage) {
+			this.errorMessage = errorMessage;
+		}
+
+		static Result failure(String errorMessage) {
+			return new Result(errorMessage);
+		}
+
+		boolean isSuccess() {
+			return this == SUCCESS;
+		}
+
+		String errorMessage() {
+			return errorMessage;
+		}
+	}
+
+	private static final class Entry {
+		private final boolean success;
+		private final Pattern pattern;
+		private final int literalIndex;
+
+		private Entry(boolean success, Pattern pattern, int literalIndex) {
+			this.success = success;
+			this.pattern = pattern;
+			this.literalIndex = literalIndex;
+		}
+	}
+}
@@ -29,6 +29,9 @@ import de.flapdoodle.reverse.Transitions;
 import de.flapdoodle.reverse.transitions.Start;
 import org.immutables.value.Value;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 @Value.Immutable
 public class MongoDump implements WorkspaceDefaults, VersionAndPlatform, ProcessDefaults, CommandName, ExtractFileSet {
 	public Transitions transitions(de.flapdoodle.embed.process.distribution.Version version) {
@@ -52,6 +55,10 @@ public class MongoDump implements WorkspaceDefaults, VersionAndPlatform, Process
 			.initState(StateID.of(ExecutedMongoDumpProcess.class));
 	}
 
+	public CompletableFuture<TransitionWalker.ReachedState<ExecutedMongoDumpProcess>> startAsync(Version version, Executor executor) {
+		return AsyncStart.start(() -> start(version), executor);
+	}
+
 	public static ImmutableMongoDump instance() {
 		return builder().build();
 	}
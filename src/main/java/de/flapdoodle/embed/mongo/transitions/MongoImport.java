@@ -29,6 +29,9 @@ import de.flapdoodle.reverse.Transitions;
 import de.flapdoodle.reverse.transitions.Start;
 import org.immutables.value.Value;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 @Value.Immutable
 public class MongoImport implements WorkspaceDefaults, VersionAndPlatform, ProcessDefaults, CommandName, ExtractFileSet {
 	public Transitions transitions(de.flapdoodle.embed.process.distribution.Version version) {
@@ -51,6 +54,10 @@ public class MongoImport implements WorkspaceDefaults, VersionAndPlatform, Proce
 			.initState(StateID.of(ExecutedMongoImportProcess.class));
 	}
 
+	public CompletableFuture<TransitionWalker.ReachedState<ExecutedMongoImportProcess>> startAsync(Version version, Executor executor) {
+		return AsyncStart.start(() -> start(version), executor);
+	}
+
 	public static ImmutableMongoImport instance() {
 		return builder().build();
 	}
@@ -20,9 +20,20 @@
  */
 package de.flapdoodle.embed.mongo.transitions;
 
+import de.flapdoodle.embed.mongo.config.ImmutableStopConfig;
 import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.config.ReadinessCheck;
+import de.flapdoodle.embed.mongo.config.StartupLogCapture;
+import de.flapdoodle.embed.mongo.config.StartupMessages;
+import de.flapdoodle.embed.mongo.config.StartupOptions;
+import de.flapdoodle.embed.mongo.config.StopConfig;
+import de.flapdoodle.embed.mongo.runtime.LogEventListener;
+import de.flapdoodle.embed.mongo.runtime.ShutdownCommand;
+import de.flapdoodle.embed.mongo.runtime.StructuredLog;
+import de.flapdoodle.embed.mongo.types.StartupTimeout;
 import de.flapdoodle.embed.process.archives.ExtractedFileSet;
 import de.flapdoodle.embed.process.config.SupportConfig;
+import de.flapdoodle.embed.process.distribution.Version;
 import de.flapdoodle.embed.process.io.ProcessOutput;
 import de.flapdoodle.embed.process.types.*;
 import de.flapdoodle.os.Platform;
@@ -83,6 +94,56 @@ public abstract class MongoServerStarter<T extends RunningProcess> implements Tr
 		return StateID.of(Net.class);
 	}
 
+	@Value.Default
+	public StateID<StartupTimeout> startupTimeout() {
+		return StateID.of(StartupTimeout.class);
+	}
+
+	/**
+	 * LOG_MESSAGE_OR_WIRE_PROTOCOL does not depend on the log format and
+	 * may return earlier than LOG_MESSAGE
+	 */
+	@Value.Default
+	public ReadinessCheck readinessCheck() {
+		return ReadinessCheck.LOG_MESSAGE;
+	}
+
+	@Value.Default
+	public StartupLogCapture startupLogCapture() {
+		return StartupLogCapture.defaults();
+	}
+
+	@Value.Default
+	public StartupMessages startupMessages() {
+		return StartupMessages.defaults();
+	}
+
+	@Value.Default
+	public StateID<Version> version() {
+		return StateID.of(Version.class);
+	}
+
+	/**
+	 * gets every structured log line (since 4.4)
+	 */
+	@Value.Default
+	@Value.Auxiliary
+	public LogEventListener logEventListener() {
+		return LogEventListener.noop();
+	}
+
+	@Value.Default
+	public StopConfig stopConfig() {
+		return StopConfig.defaults();
+	}
+
+	private StopConfig stopConfig(Version version) {
+		StopConfig stopConfig = stopConfig();
+		return stopConfig.shutdownCommand().isPresent()
+			? stopConfig
+			: ImmutableStopConfig.copyOf(stopConfig).withShutdownCommand(ShutdownCommand.of(version));
+	}
+
 	@Override
 	public Set<StateID<?>> sources() {
 		return StateID.setOf(
@@ -94,12 +155,14 @@ public abstract class MongoServerStarter<T extends RunningProcess> implements Tr
 			processOutput(),
 			supportConfig(),
 			platform(),
-			net()
+			net(),
+			startupTimeout(),
+			version()
 		);
 	}
 
 	@Value.Auxiliary
-	protected abstract RunningProcessFactory<T> factory(long startupTimeout, SupportConfig supportConfig, Platform platform, Net net);
+	protected abstract RunningProcessFactory<T> factory(StartupOptions startupOptions, SupportConfig supportConfig, Platform platform, Net net);
 
 	@Override
 	public State<T> result(StateLookup lookup) {
@@ -112,9 +175,19 @@ public abstract class MongoServerStarter<T extends RunningProcess> implements Tr
 		SupportConfig supportConfig = lookup.of(supportConfig());
 		Platform platform = lookup.of(platform());
 		Net net = lookup.of(net());
+		long startupTimeout = lookup.of(startupTimeout()).value();
+		Version version = lookup.of(version());
 
 		try {
-			RunningProcessFactory<T> factory = factory(20000, supportConfig, platform, net);
+			StartupOptions startupOptions = StartupOptions.builder()
+				.startupTimeout(startupTimeout)
+				.readinessCheck(readinessCheck())
+				.logCapture(startupLogCapture())
+				.startupMessages(startupMessages())
+				.structuredLog(StructuredLog.of(version, logEventListener()))
+				.stopConfig(stopConfig(version))
+				.build();
+			RunningProcessFactory<T> factory = factory(startupOptions, supportConfig, platform, net);
 
 			T running = RunningProcess.start(factory, processWorkingDir, fileSet.executable(), arguments, environment, processConfig,
 				processOutput, supportConfig);
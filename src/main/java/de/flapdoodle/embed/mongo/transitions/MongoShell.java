@@ -29,6 +29,9 @@ import de.flapdoodle.reverse.Transitions;
 import de.flapdoodle.reverse.transitions.Start;
 import org.immutables.value.Value;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 @Value.Immutable
 public class MongoShell implements WorkspaceDefaults, VersionAndPlatform, ProcessDefaults, CommandName, ExtractFileSet {
 
@@ -53,6 +56,10 @@ public class MongoShell implements WorkspaceDefaults, VersionAndPlatform, Proces
 			.initState(StateID.of(ExecutedMongoShellProcess.class));
 	}
 
+	public CompletableFuture<TransitionWalker.ReachedState<ExecutedMongoShellProcess>> startAsync(Version version, Executor executor) {
+		return AsyncStart.start(() -> start(version), executor);
+	}
+
 	public static ImmutableMongoShell instance() {
 		return builder().build();
 	}
@@ -24,6 +24,8 @@ import de.flapdoodle.embed.mongo.commands.MongodArguments;
 import de.flapdoodle.embed.mongo.config.Net;
 import de.flapdoodle.embed.mongo.packageresolver.Command;
 import de.flapdoodle.embed.mongo.types.DatabaseDir;
+import de.flapdoodle.embed.mongo.types.StartupTimeout;
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
 import de.flapdoodle.embed.process.distribution.Version;
 import de.flapdoodle.embed.process.io.directories.TempDir;
 import de.flapdoodle.embed.process.transitions.Directories;
@@ -32,6 +34,9 @@ import de.flapdoodle.reverse.transitions.Derive;
 import de.flapdoodle.reverse.transitions.Start;
 import org.immutables.value.Value;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 @Value.Immutable
 public class Mongod implements WorkspaceDefaults, VersionAndPlatform, ProcessDefaults, CommandName, ExtractFileSet {
 
@@ -45,6 +50,11 @@ public class Mongod implements WorkspaceDefaults, VersionAndPlatform, ProcessDef
 		return Start.to(Net.class).providedBy(Net::defaults);
 	}
 
+	@Value.Default
+	public Transition<StartupTimeout> startupTimeout() {
+		return Start.to(StartupTimeout.class).initializedWith(StartupTimeout.of(StartupTimeout.DEFAULT));
+	}
+
 	@Value.Default
 	public Transition<DatabaseDir> databaseDir() {
 		return Derive.given(TempDir.class).state(DatabaseDir.class)
@@ -75,6 +85,7 @@ public class Mongod implements WorkspaceDefaults, VersionAndPlatform, ProcessDef
 				Start.to(Command.class).initializedWith(Command.MongoD).withTransitionLabel("provide Command"),
 				Start.to(de.flapdoodle.embed.process.distribution.Version.class).initializedWith(version),
 				net(),
+				startupTimeout(),
 
 				databaseDir(),
 				mongodArguments(),
@@ -90,6 +101,31 @@ public class Mongod implements WorkspaceDefaults, VersionAndPlatform, ProcessDef
 			.initState(StateID.of(RunningMongodProcess.class), listener);
 	}
 
+	/**
+	 * start on the given executor, so that download, extraction and startup does not block the caller
+	 */
+	@Value.Auxiliary
+	public CompletableFuture<TransitionWalker.ReachedState<RunningMongodProcess>> startAsync(Version version, Executor executor, Listener... listener) {
+		return AsyncStart.start(() -> start(version, listener), executor);
+	}
+
+	/**
+	 * extracted files, database dir and port are resolved in parallel on the given executor
+	 */
+	@Value.Auxiliary
+	public TransitionWalker.ReachedState<RunningMongodProcess> startParallel(Version version, Executor executor, Listener... listener) {
+		return ParallelWalk.initState(transitions(version), StateID.of(RunningMongodProcess.class), executor,
+			ParallelWalk.states(StateID.of(ExtractedFileSet.class), StateID.of(DatabaseDir.class), StateID.of(Net.class)), listener);
+	}
+
+	/**
+	 * reusable plan for many starts of the same version, platform, package and extracted files are resolved only once
+	 */
+	@Value.Auxiliary
+	public StartPlan<RunningMongodProcess> plan(Version version) {
+		return StartPlan.of(transitions(version), StateID.of(RunningMongodProcess.class));
+	}
+
 	public static ImmutableMongod instance() {
 		return builder().build();
 	}
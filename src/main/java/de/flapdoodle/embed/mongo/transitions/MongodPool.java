@@ -0,0 +1,340 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.commands.ServerAddress;
+import de.flapdoodle.embed.mongo.config.PoolConfig;
+import de.flapdoodle.embed.mongo.runtime.MongoWire;
+import de.flapdoodle.embed.process.distribution.Version;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * keeps mongod instances running, so that a test must not wait for startup.
+ * released instances are cleaned up (all non system databases are dropped) and reused.
+ */
+public class MongodPool implements AutoCloseable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MongodPool.class);
+
+	private static final List<String> SYSTEM_DATABASES = Arrays.asList("admin", "config", "local");
+	private static final int RESET_TIMEOUT = 10000;
+
+	private final Supplier<TransitionWalker.ReachedState<RunningMongodProcess>> starter;
+	private final PoolConfig config;
+	private final ScheduledExecutorService housekeeping;
+
+	private final Object lock = new Object();
+	private final Deque<Instance> idle = new ArrayDeque<>();
+	private final Set<Instance> leased = new HashSet<>();
+	private int pending = 0;
+	private boolean closed = false;
+
+	private MongodPool(Supplier<TransitionWalker.ReachedState<RunningMongodProcess>> starter, PoolConfig config) {
+		this.starter = starter;
+		this.config = config;
+		this.housekeeping = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "mongod-pool");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public static MongodPool start(Mongod mongod, Version version) {
+		return start(mongod, version, PoolConfig.defaults());
+	}
+
+	public static MongodPool start(Mongod mongod, Version version, PoolConfig config) {
+		return start(() -> mongod.start(version), config);
+	}
+
+	static MongodPool start(Supplier<TransitionWalker.ReachedState<RunningMongodProcess>> starter, PoolConfig config) {
+		MongodPool pool = new MongodPool(starter, config);
+		try {
+			for (int i = 0; i < config.minSize(); i++) {
+				pool.addIdle(starter.get());
+			}
+		}
+		catch (RuntimeException rx) {
+			pool.close();
+			throw rx;
+		}
+		long period = Math.max(100, config.idleTimeoutInMillis() / 2);
+		pool.housekeeping.scheduleWithFixedDelay(pool::housekeeping, period, period, TimeUnit.MILLISECONDS);
+		return pool;
+	}
+
+	public Lease lease() {
+		long deadline = System.currentTimeMillis() + config.leaseTimeoutInMillis();
+		List<Instance> dead = new ArrayList<>();
+		try {
+			synchronized (lock) {
+				while (true) {
+					if (closed) {
+						throw new IllegalStateException("pool is closed");
+					}
+					Instance instance = idle.pollFirst();
+					if (instance != null) {
+						if (!instance.current().isAlive()) {
+							dead.add(instance);
+							continue;
+						}
+						leased.add(instance);
+						return new Lease(instance);
+					}
+					if (size() < config.maxSize()) {
+						pending++;
+						break;
+					}
+					long waitFor = deadline - System.currentTimeMillis();
+					if (waitFor <= 0) {
+						throw new RuntimeException("could not lease mongod within " + config.leaseTimeoutInMillis() + "ms (maxSize=" + config.maxSize() + ")");
+					}
+					try {
+						lock.wait(waitFor);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new RuntimeException(e);
+					}
+				}
+			}
+		}
+		finally {
+			dead.forEach(Instance::stop);
+		}
+
+		Instance instance = null;
+		boolean registered = false;
+		try {
+			instance = new Instance(starter.get());
+		}
+		finally {
+			synchronized (lock) {
+				pending--;
+				if (instance != null && !closed) {
+					leased.add(instance);
+					registered = true;
+				}
+				lock.notifyAll();
+			}
+		}
+		if (!registered) {
+			instance.stop();
+			throw new IllegalStateException("pool is closed");
+		}
+		return new Lease(instance);
+	}
+
+	public void release(Lease lease) {
+		Instance instance = lease.instance;
+		synchronized (lock) {
+			// the instance may be leased again, so a second close must not touch it
+			if (lease.released) {
+				return;
+			}
+			lease.released = true;
+			if (!leased.remove(instance)) {
+				return;
+			}
+			pending++;
+		}
+
+		boolean reusable = !isClosed() && reset(instance.current());
+		synchronized (lock) {
+			pending--;
+			if (reusable && !closed) {
+				instance.lastUsed = System.currentTimeMillis();
+				idle.addFirst(instance);
+				instance = null;
+			}
+			lock.notifyAll();
+		}
+		if (instance != null) {
+			instance.stop();
+		}
+	}
+
+	public int size() {
+		synchronized (lock) {
+			return idle.size() + leased.size() + pending;
+		}
+	}
+
+	public int idleSize() {
+		synchronized (lock) {
+			return idle.size();
+		}
+	}
+
+	@Override
+	public void close() {
+		List<Instance> toStop = new ArrayList<>();
+		synchronized (lock) {
+			if (!leased.isEmpty()) {
+				LOGGER.warn("close pool with {} leased instance(s)", leased.size());
+			}
+			closed = true;
+			toStop.addAll(idle);
+			toStop.addAll(leased);
+			idle.clear();
+			leased.clear();
+			lock.notifyAll();
+		}
+		housekeeping.shutdownNow();
+		toStop.forEach(Instance::stop);
+	}
+
+	private boolean isClosed() {
+		synchronized (lock) {
+			return closed;
+		}
+	}
+
+	private void addIdle(TransitionWalker.ReachedState<RunningMongodProcess> running) {
+		Instance instance = new Instance(running);
+		synchronized (lock) {
+			if (!closed) {
+				idle.addLast(instance);
+				lock.notifyAll();
+				return;
+			}
+		}
+		instance.stop();
+	}
+
+	private void housekeeping() {
+		List<Instance> toStop = new ArrayList<>();
+		int missing;
+		synchronized (lock) {
+			long now = System.currentTimeMillis();
+			Iterator<Instance> iterator = idle.descendingIterator();
+			while (iterator.hasNext() && size() > config.minSize()) {
+				Instance instance = iterator.next();
+				if (now - instance.lastUsed > config.idleTimeoutInMillis()) {
+					iterator.remove();
+					toStop.add(instance);
+				}
+			}
+			idle.removeIf(instance -> {
+				boolean dead = !instance.current().isAlive();
+				if (dead) {
+					toStop.add(instance);
+				}
+				return dead;
+			});
+			missing = closed ? 0 : config.minSize() - size();
+			pending += Math.max(0, missing);
+		}
+
+		toStop.forEach(Instance::stop);
+
+		for (int i = 0; i < missing; i++) {
+			try {
+				addIdle(starter.get());
+			}
+			catch (RuntimeException rx) {
+				LOGGER.warn("could not start pooled mongod", rx);
+			}
+			finally {
+				synchronized (lock) {
+					pending--;
+				}
+			}
+		}
+	}
+
+	private static boolean reset(RunningMongodProcess running) {
+		ServerAddress serverAddress = running.getServerAddress();
+		try (MongoWire.Connection connection = MongoWire.connect(InetAddress.getByName(serverAddress.getHost()), serverAddress.getPort(), RESET_TIMEOUT)) {
+			for (String database : connection.databaseNames()) {
+				if (!SYSTEM_DATABASES.contains(database)) {
+					connection.dropDatabase(database);
+				}
+			}
+			return true;
+		}
+		catch (IOException iox) {
+			LOGGER.warn("could not reset {}, instance is discarded", serverAddress, iox);
+			return false;
+		}
+	}
+
+	private static class Instance {
+		private final TransitionWalker.ReachedState<RunningMongodProcess> running;
+		private long lastUsed = System.currentTimeMillis();
+
+		private Instance(TransitionWalker.ReachedState<RunningMongodProcess> running) {
+			this.running = running;
+		}
+
+		private RunningMongodProcess current() {
+			return running.current();
+		}
+
+		private void stop() {
+			try {
+				running.close();
+			}
+			catch (RuntimeException rx) {
+				LOGGER.warn("could not stop pooled mongod", rx);
+			}
+		}
+	}
+
+	public class Lease implements AutoCloseable {
+		private final Instance instance;
+		private boolean released = false;
+
+		private Lease(Instance instance) {
+			this.instance = instance;
+		}
+
+		public RunningMongodProcess current() {
+			return instance.current();
+		}
+
+		public ServerAddress getServerAddress() {
+			return instance.current().getServerAddress();
+		}
+
+		@Override
+		public void close() {
+			release(this);
+		}
+	}
+}
@@ -21,6 +21,7 @@
 package de.flapdoodle.embed.mongo.transitions;
 
 import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.config.StartupOptions;
 import de.flapdoodle.embed.process.config.SupportConfig;
 import de.flapdoodle.embed.process.types.RunningProcessFactory;
 import de.flapdoodle.os.Platform;
@@ -44,8 +45,8 @@ public abstract class MongodStarter extends MongoServerStarter<RunningMongodProc
 	}
 
 	@Override
-	protected RunningProcessFactory<RunningMongodProcess> factory(long startupTimeout, SupportConfig supportConfig, Platform platform, Net net) {
-		return RunningMongodProcess.factory(startupTimeout, supportConfig, platform, net);
+	protected RunningProcessFactory<RunningMongodProcess> factory(StartupOptions startupOptions, SupportConfig supportConfig, Platform platform, Net net) {
+		return RunningMongodProcess.factory(startupOptions, supportConfig, platform, net);
 	}
 	
 	public static ImmutableMongodStarter.Builder builder() {
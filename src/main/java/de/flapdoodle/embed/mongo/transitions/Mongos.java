@@ -23,13 +23,19 @@ package de.flapdoodle.embed.mongo.transitions;
 import de.flapdoodle.embed.mongo.commands.MongosArguments;
 import de.flapdoodle.embed.mongo.config.Net;
 import de.flapdoodle.embed.mongo.packageresolver.Command;
+import de.flapdoodle.embed.mongo.types.StartupTimeout;
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
 import de.flapdoodle.embed.process.distribution.Version;
 import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.Transition;
 import de.flapdoodle.reverse.TransitionWalker;
 import de.flapdoodle.reverse.Transitions;
 import de.flapdoodle.reverse.transitions.Start;
 import org.immutables.value.Value;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 @Value.Immutable
 public class Mongos implements WorkspaceDefaults, VersionAndPlatform, ProcessDefaults, CommandName, ExtractFileSet {
 	public Transitions transitions(de.flapdoodle.embed.process.distribution.Version version) {
@@ -42,6 +48,7 @@ public class Mongos implements WorkspaceDefaults, VersionAndPlatform, ProcessDef
 				Start.to(Command.class).initializedWith(Command.MongoS).withTransitionLabel("provide Command"),
 				Start.to(de.flapdoodle.embed.process.distribution.Version.class).initializedWith(version),
 				Start.to(Net.class).providedBy(Net::defaults),
+				startupTimeout(),
 
 				mongosArguments(),
 				MongosProcessArguments.withDefaults(),
@@ -49,6 +56,11 @@ public class Mongos implements WorkspaceDefaults, VersionAndPlatform, ProcessDef
 			);
 	}
 
+	@Value.Default
+	public Transition<StartupTimeout> startupTimeout() {
+		return Start.to(StartupTimeout.class).initializedWith(StartupTimeout.of(StartupTimeout.DEFAULT));
+	}
+
 	public Start<MongosArguments> mongosArguments() {
 		return Start.to(MongosArguments.class).initializedWith(MongosArguments.defaults());
 	}
@@ -59,6 +71,25 @@ public class Mongos implements WorkspaceDefaults, VersionAndPlatform, ProcessDef
 			.initState(StateID.of(RunningMongosProcess.class));
 	}
 
+	public CompletableFuture<TransitionWalker.ReachedState<RunningMongosProcess>> startAsync(Version version, Executor executor) {
+		return AsyncStart.start(() -> start(version), executor);
+	}
+
+	/**
+	 * extracted files and port are resolved in parallel on the given executor
+	 */
+	public TransitionWalker.ReachedState<RunningMongosProcess> startParallel(Version version, Executor executor) {
+		return ParallelWalk.initState(transitions(version), StateID.of(RunningMongosProcess.class), executor,
+			ParallelWalk.states(StateID.of(ExtractedFileSet.class), StateID.of(Net.class)));
+	}
+
+	/**
+	 * reusable plan for many starts of the same version, platform, package and extracted files are resolved only once
+	 */
+	public StartPlan<RunningMongosProcess> plan(Version version) {
+		return StartPlan.of(transitions(version), StateID.of(RunningMongosProcess.class));
+	}
+
 	public static ImmutableMongos instance() {
 		return builder().build();
 	}
@@ -23,6 +23,7 @@ package de.flapdoodle.embed.mongo.transitions;
 import de.flapdoodle.embed.mongo.packageresolver.Command;
 import de.flapdoodle.embed.mongo.packageresolver.PlatformPackageResolver;
 import de.flapdoodle.embed.mongo.types.DistributionBaseUrl;
+import de.flapdoodle.embed.mongo.util.LruCache;
 import de.flapdoodle.embed.process.config.store.Package;
 import de.flapdoodle.embed.process.distribution.Distribution;
 import de.flapdoodle.embed.process.distribution.PackageResolver;
@@ -33,24 +34,43 @@ import de.flapdoodle.reverse.Transition;
 import de.flapdoodle.reverse.naming.HasLabel;
 import org.immutables.value.Value;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Function;
 
 @Value.Immutable
 public abstract class PackageOfCommandDistribution implements Transition<Package>, HasLabel {
 
+	private static final Function<Command, PackageResolver> DEFAULT_PACKAGE_RESOLVER_FACTORY = PlatformPackageResolver::new;
+
+	private static final int MAX_CACHED_PACKAGES = 64;
+
+	/**
+	 * package resolution is a pure function of resolver factory, command, distribution and base url,
+	 * so all instances with the same factory (e.g. each Mongod.instance()) resolve a package only once.
+	 * the cache is bounded, so it keeps only a few custom factories alive.
+	 */
+	private static final LruCache<List<Object>, Package> PACKAGES = new LruCache<>(MAX_CACHED_PACKAGES);
+
 	@Override public String transitionLabel() {
 		return "Package of Command-Distribution";
 	}
 
 	@Value.Default
 	protected Function<Command, PackageResolver> legacyPackageResolverFactory() {
-		return PlatformPackageResolver::new;
+		return DEFAULT_PACKAGE_RESOLVER_FACTORY;
 	}
 
 	@Value.Auxiliary
 	protected Package packageOf(Command command, Distribution distribution, DistributionBaseUrl baseUrl) {
-		Package relativePackage = legacyPackageResolverFactory().apply(command).packageFor(distribution);
+		Function<Command, PackageResolver> legacyPackageResolverFactory = legacyPackageResolverFactory();
+		return PACKAGES.get(Arrays.asList(legacyPackageResolverFactory, command, distribution, baseUrl),
+			key -> resolve(legacyPackageResolverFactory, command, distribution, baseUrl));
+	}
+
+	private static Package resolve(Function<Command, PackageResolver> legacyPackageResolverFactory, Command command, Distribution distribution, DistributionBaseUrl baseUrl) {
+		Package relativePackage = legacyPackageResolverFactory.apply(command).packageFor(distribution);
 		return Package.builder()
 			.archiveType(relativePackage.archiveType())
 			.fileSet(relativePackage.fileSet())
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.reverse.Listener;
+import de.flapdoodle.reverse.State;
+import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.TransitionWalker;
+import de.flapdoodle.reverse.Transitions;
+import de.flapdoodle.reverse.transitions.Start;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * the TransitionWalker resolves one state after another.
+ * independent states (e.g. extracted files, database dir, port) are resolved in their own walk
+ * on the executor and then put into the final walk as start states.
+ * each of these walks is closed if the state is torn down.
+ */
+final class ParallelWalk {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParallelWalk.class);
+
+	private ParallelWalk() {
+		// no instance
+	}
+
+	static <T> TransitionWalker.ReachedState<T> initState(Transitions transitions, StateID<T> destination, Executor executor, List<StateID<?>> independent, Listener... listener) {
+		List<CompletableFuture<TransitionWalker.ReachedState<?>>> walks = new ArrayList<>();
+		for (StateID<?> stateID : independent) {
+			walks.add(CompletableFuture.supplyAsync(() -> (TransitionWalker.ReachedState<?>) transitions.walker().initState(stateID), executor));
+		}
+
+		Transitions withResolvedStates = transitions;
+		List<ClosedOnce> reached = new ArrayList<>();
+		RuntimeException failed = null;
+		for (int i = 0; i < walks.size(); i++) {
+			try {
+				ClosedOnce reachedState = new ClosedOnce(walks.get(i).join());
+				reached.add(reachedState);
+				withResolvedStates = withResolvedStates.replace(resolved(independent.get(i), reachedState));
+			}
+			catch (CompletionException cx) {
+				RuntimeException cause = cx.getCause() instanceof RuntimeException
+					? (RuntimeException) cx.getCause()
+					: new RuntimeException(cx.getCause());
+				if (failed == null) {
+					failed = cause;
+				} else {
+					failed.addSuppressed(cause);
+				}
+			}
+		}
+
+		if (failed == null) {
+			try {
+				return withResolvedStates.walker().initState(destination, listener);
+			}
+			catch (RuntimeException rx) {
+				failed = rx;
+			}
+		}
+
+		reached.forEach(ParallelWalk::close);
+		throw failed;
+	}
+
+	static List<StateID<?>> states(StateID<?>... stateIDs) {
+		return Arrays.asList(stateIDs);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <S> Start<S> resolved(StateID<S> stateID, ClosedOnce reachedState) {
+		S current = (S) reachedState.reachedState.current();
+		return Start.to(stateID).with(() -> State.of(current, ignore -> reachedState.close()));
+	}
+
+	private static void close(ClosedOnce reachedState) {
+		try {
+			reachedState.close();
+		}
+		catch (RuntimeException rx) {
+			LOGGER.warn("could not close {}", reachedState.reachedState.current(), rx);
+		}
+	}
+
+	/**
+	 * the final walk tears down only states it has reached, all others are closed on failure
+	 */
+	private static class ClosedOnce {
+		private final TransitionWalker.ReachedState<?> reachedState;
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		private ClosedOnce(TransitionWalker.ReachedState<?> reachedState) {
+			this.reachedState = reachedState;
+		}
+
+		private void close() {
+			if (closed.compareAndSet(false, true)) {
+				reachedState.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.packageresolver.Command;
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
+import de.flapdoodle.embed.process.io.directories.PersistentDir;
+import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.TransitionWalker;
+import de.flapdoodle.reverse.Transitions;
+import de.flapdoodle.reverse.transitions.Start;
+import org.immutables.value.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * download and extract packages into the persistent dir without starting anything,
+ * so that a build can run offline. the persistent dir can be exported and imported as one bundle file.
+ */
+@Value.Immutable
+public class Prefetch implements WorkspaceDefaults, VersionAndPlatform, CommandName, ExtractFileSet {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(Prefetch.class);
+
+	/**
+	 * number of packages downloaded and extracted at the same time
+	 */
+	@Value.Default
+	public int parallel() {
+		return 4;
+	}
+
+	@Value.Auxiliary
+	public Transitions transitions(PrefetchTarget target) {
+		Transitions ret = workspaceDefaults()
+			.addAll(versionAndPlatform())
+			.addAll(commandNames())
+			.addAll(extractFileSet())
+			.addAll(
+				Start.to(Command.class).initializedWith(target.command()).withTransitionLabel("provide Command"),
+				Start.to(de.flapdoodle.embed.process.distribution.Version.class).initializedWith(target.version())
+			);
+		return target.platform()
+			.map(platform -> ret.replace(Start.to(de.flapdoodle.os.Platform.class).initializedWith(platform)))
+			.orElse(ret);
+	}
+
+	/**
+	 * @return the targets, all of them are in the persistent dir
+	 */
+	@Value.Auxiliary
+	public List<PrefetchTarget> prefetch(List<PrefetchTarget> targets) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallel(), targets.size())), runnable -> {
+			Thread thread = new Thread(runnable, "prefetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<CompletableFuture<PrefetchTarget>> fetched = new ArrayList<>();
+			for (PrefetchTarget target : targets) {
+				fetched.add(CompletableFuture.supplyAsync(() -> prefetch(target), executor));
+			}
+
+			List<PrefetchTarget> ret = new ArrayList<>();
+			List<RuntimeException> failures = new ArrayList<>();
+			for (CompletableFuture<PrefetchTarget> future : fetched) {
+				try {
+					ret.add(future.join());
+				}
+				catch (CompletionException cx) {
+					failures.add(cx.getCause() instanceof RuntimeException ? (RuntimeException) cx.getCause() : cx);
+				}
+			}
+			if (!failures.isEmpty()) {
+				RuntimeException exception = new RuntimeException("could not prefetch " + failures.size() + " of " + targets.size() + " package(s)");
+				failures.forEach(exception::addSuppressed);
+				throw exception;
+			}
+			return ret;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Value.Auxiliary
+	public PrefetchTarget prefetch(PrefetchTarget target) {
+		try (TransitionWalker.ReachedState<ExtractedFileSet> fileSet = transitions(target).walker()
+			.initState(StateID.of(ExtractedFileSet.class))) {
+			LOGGER.info("prefetched {} {}: {}", target.command(), target.version().asInDownloadPath(), fileSet.current().executable());
+			return target;
+		}
+		catch (RuntimeException rx) {
+			throw new RuntimeException("could not prefetch " + target.command() + " " + target.version().asInDownloadPath(), rx);
+		}
+	}
+
+	/**
+	 * @return number of files in the bundle
+	 */
+	@Value.Auxiliary
+	public int exportBundle(Path bundle) throws IOException {
+		return StoreBundle.export(persistentDir(), bundle);
+	}
+
+	/**
+	 * @return number of archives and file sets added to the persistent dir
+	 */
+	@Value.Auxiliary
+	public int importBundle(Path bundle) throws IOException {
+		return StoreBundle.importInto(bundle, persistentDir());
+	}
+
+	private Path persistentDir() {
+		try (TransitionWalker.ReachedState<PersistentDir> persistentDir = Transitions.from(systemEnv(), persistentBaseDir())
+			.walker()
+			.initState(StateID.of(PersistentDir.class))) {
+			return persistentDir.current().value();
+		}
+	}
+
+	public static ImmutablePrefetch instance() {
+		return builder().build();
+	}
+
+	public static ImmutablePrefetch.Builder builder() {
+		return ImmutablePrefetch.builder();
+	}
+
+	/**
+	 * usage: [--parallel N] [--commands MongoD,MongoS,..] [--export bundle.tgz | --import bundle.tgz] [all | V6_0 V5_0 ..]
+	 * <p>
+	 * versions are Version.Main names, all is every Version.Main
+	 */
+	public static void main(String[] args) throws IOException {
+		ImmutablePrefetch.Builder builder = builder();
+		List<Command> commands = new ArrayList<>(Arrays.asList(Command.MongoD));
+		List<Version.Main> versions = new ArrayList<>();
+		Path exportTo = null;
+		Path importFrom = null;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--parallel":
+					builder.parallel(Integer.parseInt(args[++i]));
+					break;
+				case "--commands":
+					commands.clear();
+					for (String command : args[++i].split(",")) {
+						commands.add(Command.valueOf(command.trim()));
+					}
+					break;
+				case "--export":
+					exportTo = Paths.get(args[++i]);
+					break;
+				case "--import":
+					importFrom = Paths.get(args[++i]);
+					break;
+				case "all":
+					versions.addAll(Arrays.asList(Version.Main.values()));
+					break;
+				default:
+					versions.add(Version.Main.valueOf(args[i]));
+			}
+		}
+
+		ImmutablePrefetch prefetch = builder.build();
+		if (importFrom != null) {
+			LOGGER.info("imported {} entries from {}", prefetch.importBundle(importFrom), importFrom);
+		}
+		List<PrefetchTarget> targets = new ArrayList<>();
+		for (Version.Main version : versions) {
+			for (Command command : commands) {
+				targets.add(PrefetchTarget.of(command, version));
+			}
+		}
+		if (!targets.isEmpty()) {
+			prefetch.prefetch(targets);
+		}
+		if (exportTo != null) {
+			LOGGER.info("exported {} files to {}", prefetch.exportBundle(exportTo), exportTo);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.packageresolver.Command;
+import de.flapdoodle.embed.process.distribution.Version;
+import de.flapdoodle.os.Platform;
+import org.immutables.value.Value;
+
+import java.util.Optional;
+
+/**
+ * command and version to prefetch, for the host platform if no platform is given
+ */
+@Value.Immutable
+public abstract class PrefetchTarget {
+
+	@Value.Parameter
+	public abstract Command command();
+
+	@Value.Parameter
+	public abstract Version version();
+
+	public abstract Optional<Platform> platform();
+
+	public static ImmutablePrefetchTarget of(Command command, Version version) {
+		return ImmutablePrefetchTarget.of(command, version);
+	}
+
+	public static ImmutablePrefetchTarget of(Command command, Version version, Platform platform) {
+		return ImmutablePrefetchTarget.of(command, version).withPlatform(platform);
+	}
+}
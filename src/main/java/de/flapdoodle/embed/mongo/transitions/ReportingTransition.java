@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.config.RangedDownloadConfig;
+import de.flapdoodle.embed.mongo.runtime.RangedDownloadToPath;
+import de.flapdoodle.embed.mongo.runtime.ThroughputProgressListener;
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
+import de.flapdoodle.embed.process.config.store.FileSet;
+import de.flapdoodle.embed.process.config.store.Package;
+import de.flapdoodle.embed.process.io.directories.PersistentDir;
+import de.flapdoodle.embed.process.io.progress.ProgressListener;
+import de.flapdoodle.embed.process.net.DownloadToPath;
+import de.flapdoodle.embed.process.store.ExtractedFileSetStore;
+import de.flapdoodle.embed.process.transitions.DownloadPackage;
+import de.flapdoodle.embed.process.types.Archive;
+import de.flapdoodle.reverse.State;
+import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.StateLookup;
+import de.flapdoodle.reverse.Transition;
+import de.flapdoodle.reverse.naming.HasLabel;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * reports start and end of a transition as phase of its package to the progress listener,
+ * so that a ThroughputProgressListener can measure how long it takes.
+ * if the transition uses an ExtractedFileSetStore, the phase is reported only if the store has no matching file set.
+ * a failing phase is reported as failed, not as done.
+ */
+final class ReportingTransition<T> implements Transition<T>, HasLabel {
+
+	private static final StateID<Package> PACKAGE = StateID.of(Package.class);
+	private static final StateID<ProgressListener> PROGRESS_LISTENER = StateID.of(ProgressListener.class);
+	private static final StateID<PersistentDir> PERSISTENT_DIR = StateID.of(PersistentDir.class);
+	private static final StateID<ExtractedFileSetStore> STORE = StateID.of(ExtractedFileSetStore.class);
+
+	private final Transition<T> delegate;
+	private final String phase;
+
+	private ReportingTransition(Transition<T> delegate, String phase) {
+		this.delegate = delegate;
+		this.phase = phase;
+	}
+
+	@Override
+	public String transitionLabel() {
+		return delegate instanceof HasLabel
+			? ((HasLabel) delegate).transitionLabel()
+			: phase;
+	}
+
+	@Override
+	public StateID<T> destination() {
+		return delegate.destination();
+	}
+
+	@Override
+	public Set<StateID<?>> sources() {
+		Set<StateID<?>> ret = new LinkedHashSet<>(delegate.sources());
+		ret.add(PACKAGE);
+		ret.add(PROGRESS_LISTENER);
+		return ret;
+	}
+
+	@Override
+	public State<T> result(StateLookup lookup) {
+		ProgressListener progressListener = lookup.of(PROGRESS_LISTENER);
+		String label = phase + " " + lookup.of(PACKAGE).url();
+		AtomicBoolean started = new AtomicBoolean();
+		Runnable start = () -> {
+			if (started.compareAndSet(false, true)) {
+				progressListener.start(label);
+			}
+		};
+
+		StateLookup delegateLookup = lookup;
+		if (delegate.sources().contains(STORE)) {
+			delegateLookup = startOnMiss(lookup, start);
+		} else {
+			start.run();
+		}
+
+		try {
+			State<T> ret = delegate.result(delegateLookup);
+			if (started.get()) {
+				progressListener.done(label);
+			}
+			return ret;
+		}
+		catch (RuntimeException rx) {
+			if (started.get()) {
+				progressListener.info(label, ThroughputProgressListener.FAILED);
+			}
+			throw rx;
+		}
+	}
+
+	private static StateLookup startOnMiss(StateLookup lookup, Runnable start) {
+		return new StateLookup() {
+			@Override
+			public <D> D of(StateID<D> type) {
+				D ret = lookup.of(type);
+				if (type.equals(STORE)) {
+					ExtractedFileSetStore store = (ExtractedFileSetStore) ret;
+					return type.type().cast(new ExtractedFileSetStore() {
+						@Override
+						public Optional<ExtractedFileSet> extractedFileSet(Path archive, FileSet fileSet) {
+							Optional<ExtractedFileSet> cached = store.extractedFileSet(archive, fileSet);
+							if (!cached.isPresent()) {
+								start.run();
+							}
+							return cached;
+						}
+
+						@Override
+						public ExtractedFileSet store(Path archive, FileSet fileSet, ExtractedFileSet src) throws IOException {
+							return store.store(archive, fileSet, src);
+						}
+					});
+				}
+				return ret;
+			}
+		};
+	}
+
+	static <T> ReportingTransition<T> of(Transition<T> delegate, String phase) {
+		return new ReportingTransition<>(delegate, phase);
+	}
+
+	static Transition<Archive> download(DownloadPackage downloadPackage) {
+		return new Download(downloadPackage);
+	}
+
+	/**
+	 * DownloadPackage only passes percent values to the progress listener, this passes the size too
+	 * and reports done for downloads of unknown length.
+	 * a RangedDownloadToPath without resume dir keeps its parts in the persistent dir, where the download is locked.
+	 */
+	private static final class Download implements Transition<Archive>, HasLabel {
+		private final DownloadPackage delegate;
+
+		private Download(DownloadPackage delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public String transitionLabel() {
+			return delegate.transitionLabel();
+		}
+
+		@Override
+		public StateID<Archive> destination() {
+			return delegate.destination();
+		}
+
+		@Override
+		public Set<StateID<?>> sources() {
+			Set<StateID<?>> ret = new LinkedHashSet<>(delegate.sources());
+			ret.add(PROGRESS_LISTENER);
+			ret.add(PERSISTENT_DIR);
+			return ret;
+		}
+
+		@Override
+		public State<Archive> result(StateLookup lookup) {
+			DownloadToPath downloadToPath = delegate.downloadToPath();
+			if (downloadToPath instanceof RangedDownloadToPath) {
+				downloadToPath = ((RangedDownloadToPath) downloadToPath)
+					.withDefaultResumeDir(RangedDownloadConfig.resumeDirOf(lookup.of(PERSISTENT_DIR)));
+			}
+			return DownloadPackage.builder()
+				.from(delegate)
+				.downloadToPath(ThroughputProgressListener.reporting(downloadToPath, lookup.of(PROGRESS_LISTENER)))
+				.build()
+				.result(lookup);
+		}
+	}
+}
@@ -22,7 +22,16 @@ package de.flapdoodle.embed.mongo.transitions;
 
 import de.flapdoodle.embed.mongo.commands.ServerAddress;
 import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.config.ReadinessCheck;
+import de.flapdoodle.embed.mongo.config.StartupLogCapture;
+import de.flapdoodle.embed.mongo.config.StartupMessages;
+import de.flapdoodle.embed.mongo.config.StartupOptions;
+import de.flapdoodle.embed.mongo.config.StopConfig;
+import de.flapdoodle.embed.mongo.runtime.MongoWire;
 import de.flapdoodle.embed.mongo.runtime.Mongod;
+import de.flapdoodle.embed.mongo.runtime.ProcessHandles;
+import de.flapdoodle.embed.mongo.runtime.ShutdownCommand;
+import de.flapdoodle.embed.mongo.runtime.StructuredLog;
 import de.flapdoodle.embed.process.config.SupportConfig;
 import de.flapdoodle.embed.process.io.*;
 import de.flapdoodle.embed.process.runtime.ProcessControl;
@@ -36,13 +45,23 @@ import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 public abstract class RunningMongoProcess extends RunningProcessImpl {
 
 	private static Logger LOGGER= LoggerFactory.getLogger(RunningMongodProcess.class);
 
+	private static final long READINESS_POLL_INTERVAL = 50;
+	private static final int READINESS_PROBE_TIMEOUT = 250;
+	private static final long EXITED_OUTPUT_TIMEOUT = 1000;
+	private static final long EXIT_POLL_INTERVAL = 10;
+
+	private static final Map<StartupMessages, LogLineMatcher> MATCHER = new ConcurrentHashMap<>();
+
 	private final String commandName;
 	private final SupportConfig supportConfig;
 	private final Platform platform;
@@ -50,8 +69,11 @@ public abstract class RunningMongoProcess extends RunningProcessImpl {
 	private final int mongoProcessId;
 	private final InetAddress serverAddress;
 	private final int port;
+	private final StopConfig stopConfig;
+	private final long stopTimeout;
 
 	private boolean shutDownCommandAlreadyExecuted=false;
+	private Integer exitValue=null;
 
 	protected RunningMongoProcess(
 		String commandName,
@@ -64,6 +86,22 @@ public abstract class RunningMongoProcess extends RunningProcessImpl {
 		Net net,
 		StreamProcessor commandOutput,
 		int mongoProcessId
+	) {
+		this(commandName, process, pidFile, timeout, onStop, supportConfig, platform, net, commandOutput, mongoProcessId, StopConfig.defaults());
+	}
+
+	protected RunningMongoProcess(
+		String commandName,
+		ProcessControl process,
+		Path pidFile,
+		long timeout,
+		Runnable onStop,
+		SupportConfig supportConfig,
+		Platform platform,
+		Net net,
+		StreamProcessor commandOutput,
+		int mongoProcessId,
+		StopConfig stopConfig
 	) {
 		super(process, pidFile, timeout, onStop);
 		this.commandName = commandName;
@@ -73,28 +111,42 @@ public abstract class RunningMongoProcess extends RunningProcessImpl {
 		this.mongoProcessId = mongoProcessId;
 		this.serverAddress = Try.get(net::getServerAddress);
 		this.port = net.getPort();
+		this.stopConfig = stopConfig;
+		this.stopTimeout = timeout;
 	}
 
 	public ServerAddress getServerAddress() {
 		return ServerAddress.of(serverAddress, port);
 	}
 
+	/**
+	 * can be called more than once, e.g. by ClusterShutdown and later by closing the ReachedState
+	 */
 	@Override
-	public int stop() {
-		try {
-			stopInternal();
-		} finally {
-			return super.stop();
+	public synchronized int stop() {
+		if (exitValue == null) {
+			try {
+				stopInternal();
+			} catch (RuntimeException rx) {
+				LOGGER.warn("could not stop "+commandName, rx);
+			}
+			exitValue = super.stop();
 		}
+		return exitValue;
 	}
 
 	//	@Override
 	private void stopInternal() {
 		if (isAlive()) {
 			LOGGER.debug("try to stop "+commandName);
-			if (!shutDownCommandAlreadyExecuted && !sendStopToMongoInstance()) {
+			boolean stopped = shutDownCommandAlreadyExecuted || sendStopToMongoInstance();
+			if (stopped && !waitForExit(stopTimeout)) {
+				LOGGER.warn(commandName+" did not stop within "+stopTimeout+"ms, try next");
+				stopped = false;
+			}
+			if (!stopped) {
 				LOGGER.warn("could not stop "+commandName+" with db command, try next");
-				if (!sendKillToProcess()) {
+				if (!destroyProcess() && !sendKillToProcess()) {
 					LOGGER.warn("could not stop "+commandName+", try next");
 					if (!sendTermToProcess()) {
 						LOGGER.warn("could not stop "+commandName+", try next");
@@ -107,10 +159,44 @@ public abstract class RunningMongoProcess extends RunningProcessImpl {
 		}
 	}
 
+	private boolean waitForExit(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (isAlive()) {
+			if (System.currentTimeMillis() >= deadline) {
+				return false;
+			}
+			try {
+				Thread.sleep(EXIT_POLL_INTERVAL);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return !isAlive();
+			}
+		}
+		return true;
+	}
+
 	private long getProcessId() {
 		return mongoProcessId;
 	}
 
+	protected boolean destroyProcess() {
+		if (!stopConfig.useProcessHandle() || getProcessId() <= 0) {
+			return false;
+		}
+		Optional<ProcessHandles.Handle> handle = ProcessHandles.of(getProcessId());
+		if (!handle.isPresent()) {
+			// not running anymore, or no ProcessHandle support
+			return ProcessHandles.isAvailable();
+		}
+		ProcessHandles.Handle process = handle.get();
+		if (process.destroy() && process.waitForExit(stopConfig.destroyTimeoutInMillis())) {
+			return true;
+		}
+		LOGGER.warn("could not stop "+commandName+" within "+stopConfig.destroyTimeoutInMillis()+"ms, destroy forcibly");
+		return process.destroyForcibly() && process.waitForExit(stopConfig.destroyForciblyTimeoutInMillis());
+	}
+
 	protected boolean sendKillToProcess() {
 		return getProcessId() > 0 && Processes.killProcess(supportConfig, platform,
 			StreamToLineProcessor.wrap(commandOutput), getProcessId());
@@ -127,8 +213,7 @@ public abstract class RunningMongoProcess extends RunningProcessImpl {
 	}
 
 	protected final boolean sendStopToMongoInstance() {
-		return Mongod.sendShutdownLegacy(serverAddress, port)
-			|| Mongod.sendShutdown(serverAddress, port);
+		return Mongod.sendShutdown(serverAddress, port, stopConfig.shutdownCommand().orElse(ShutdownCommand.ANY));
 	}
 
 	public void shutDownCommandAlreadyExecuted() {
@@ -136,16 +221,17 @@ public abstract class RunningMongoProcess extends RunningProcessImpl {
 	}
 
 	interface InstanceFactory<T extends RunningMongoProcess> {
-		T create(ProcessControl process, Path pidFile, long timeout, Runnable closeAllOutputs, SupportConfig supportConfig, Platform platform, Net net, StreamProcessor commands, int pid);
+		T create(ProcessControl process, Path pidFile, long timeout, Runnable closeAllOutputs, SupportConfig supportConfig, Platform platform, Net net, StreamProcessor commands, int pid, StopConfig stopConfig);
 	}
 
-	static <T extends RunningMongoProcess> RunningProcessFactory<T> factory(InstanceFactory<T> instanceFactory, long startupTimeout, SupportConfig supportConfig, Platform platform, Net net) {
+	static <T extends RunningMongoProcess> RunningProcessFactory<T> factory(InstanceFactory<T> instanceFactory, StartupOptions startupOptions, SupportConfig supportConfig, Platform platform, Net net) {
+		long startupTimeout = startupOptions.startupTimeout();
+		StopConfig stopConfig = startupOptions.stopConfig();
 		return (process, processOutput, pidFile, timeout) -> {
 
-//			LogWatchStreamProcessor logWatch = new LogWatchStreamProcessor(successMessage(), knownFailureMessages(),
-//				StreamToLineProcessor.wrap(processOutput.output()));
 			LOGGER.trace("setup logWatch");
-			SuccessMessageLineListener logWatch = errorMessageAwareLogWatch();
+			long deadline = System.currentTimeMillis() + startupTimeout;
+			StartupLogWatch logWatch = errorMessageAwareLogWatch(startupOptions.startupMessages(), startupOptions.logCapture(), startupOptions.structuredLog());
 
 			LOGGER.trace("connect io");
 			ReaderProcessor output = Processors.connect(process.getReader(), new ListeningStreamProcessor(StreamToLineProcessor.wrap(processOutput.output()), logWatch::inspect));
@@ -156,21 +242,37 @@ public abstract class RunningMongoProcess extends RunningProcessImpl {
 				LOGGER.trace("ReaderProcessor.abortAll done");
 			};
 
+			BooleanSupplier acceptsCommands = startupOptions.readinessCheck() == ReadinessCheck.LOG_MESSAGE_OR_WIRE_PROTOCOL
+				? wireProtocolProbe(process, net)
+				: () -> false;
+
 			LOGGER.trace("waitForResult");
-			logWatch.waitForResult(startupTimeout);
-			LOGGER.trace("check if successMessageFound");
-			if (logWatch.successMessageFound()) {
+			boolean ready = waitUntilReady(logWatch, process::isAlive, acceptsCommands, startupTimeout);
+			LOGGER.trace("check if ready");
+			if (ready) {
 				LOGGER.trace("get processId");
-				int pid = Mongod.getMongodProcessId(logWatch.allLines(), -1);
+				int pid = processId(logWatch, process::getPid, deadline - System.currentTimeMillis());
+				logWatch.warnings().forEach(warning -> LOGGER.debug("startup warning: {}", warning));
 				LOGGER.trace("return RunningMongodProcess");
-				return instanceFactory.create(process, pidFile, timeout, closeAllOutputs, supportConfig, platform, net, processOutput.commands(), pid);
+				return instanceFactory.create(process, pidFile, timeout, closeAllOutputs, supportConfig, platform, net, processOutput.commands(), pid, stopConfig);
 
 			} else {
+				boolean exited = !process.isAlive();
+				if (exited) {
+					LOGGER.trace("process exited, wait for remaining output");
+					Try.run(() -> {
+						output.join(EXITED_OUTPUT_TIMEOUT);
+						error.join(EXITED_OUTPUT_TIMEOUT);
+					});
+				}
+
 				String failureFound = logWatch.errorMessage().isPresent()
 					? logWatch.errorMessage().get()
 					: "\n" +
 					"----------------------\n" +
-					"Hmm.. no failure message.. \n" +
+					(exited
+						? "Process exited with code " + Try.get(process::waitFor) + " before it was ready.. \n"
+						: "Hmm.. no failure message.. \n") +
 					"...the cause must be somewhere in the process output\n" +
 					"----------------------\n" +
 					""+logWatch.allLines();
@@ -188,28 +290,57 @@ public abstract class RunningMongoProcess extends RunningProcessImpl {
 	}
 
 	// VisibleForTesting
-	static SuccessMessageLineListener errorMessageAwareLogWatch() {
-		return SuccessMessageLineListener.of(successMessage(), knownFailureMessages(), "error");
+	static boolean waitUntilReady(StartupLogWatch logWatch, BooleanSupplier isAlive, BooleanSupplier acceptsCommands, long startupTimeout) {
+		long deadline = System.currentTimeMillis() + startupTimeout;
+		while (true) {
+			if (logWatch.successMessageFound()) {
+				return true;
+			}
+			if (logWatch.errorMessage().isPresent()) {
+				return false;
+			}
+			if (!isAlive.getAsBoolean()) {
+				LOGGER.trace("process exited before it was ready");
+				return false;
+			}
+			if (acceptsCommands.getAsBoolean()) {
+				LOGGER.trace("wire protocol probe was faster than log message");
+				return true;
+			}
+			long waitFor = deadline - System.currentTimeMillis();
+			if (waitFor <= 0) {
+				return false;
+			}
+			logWatch.waitForResult(Math.min(waitFor, READINESS_POLL_INTERVAL));
+		}
 	}
 
-	private static List<String> successMessage() {
-		// old: waiting for connections on port
-		// since 4.4.5: Waiting for connections
-		return Arrays.asList("aiting for connections");
+	/**
+	 * the wire protocol probe may be faster than the log line with the pid
+	 */
+	// VisibleForTesting
+	static int processId(StartupLogWatch logWatch, Supplier<Long> processPid, long timeout) {
+		int pid = logWatch.processId();
+		if (pid > 0) {
+			return pid;
+		}
+		Long pidOfProcess = processPid.get();
+		if (pidOfProcess != null && pidOfProcess > 0) {
+			return pidOfProcess.intValue();
+		}
+		return logWatch.waitForProcessId(Math.max(0, timeout));
 	}
 
-	private static List<String> knownFailureMessages() {
-		return Arrays.asList(
-			"(?<error>failed errno)",
-			"ERROR:(?<error>.*)",
-			"(?<error>error command line)",
-			"(?<error>Error parsing command line:.*)",
-			"(?<error>Address already in use)",
-			"(?<error>error while loading shared libraries:.*)",
-			"(?<error>SSLEAY32.dll was not found)",
-			"(?<error>LIBEAY32.dll was not found)",
-			"(?<error>the code execution cannot proceed because.*)"
-		);
+	private static BooleanSupplier wireProtocolProbe(ProcessControl process, Net net) {
+		InetAddress address = Try.get(net::getServerAddress);
+		int port = net.getPort();
+		// an answer from a foreign server on the same port does not count if our process is gone
+		return () -> process.isAlive() && MongoWire.isAcceptingCommands(address, port, READINESS_PROBE_TIMEOUT);
 	}
 
+	// VisibleForTesting
+	static StartupLogWatch errorMessageAwareLogWatch(StartupMessages startupMessages, StartupLogCapture logCapture, StructuredLog structuredLog) {
+		LogLineMatcher matcher = MATCHER.computeIfAbsent(startupMessages, LogLineMatcher::of);
+		return new StartupLogWatch(matcher, new LineBuffer(logCapture.maxLines(), logCapture.maxChars()), structuredLog);
+	}
 }
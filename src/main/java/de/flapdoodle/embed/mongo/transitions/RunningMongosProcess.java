@@ -21,6 +21,8 @@
 package de.flapdoodle.embed.mongo.transitions;
 
 import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.config.StartupOptions;
+import de.flapdoodle.embed.mongo.config.StopConfig;
 import de.flapdoodle.embed.process.config.SupportConfig;
 import de.flapdoodle.embed.process.io.StreamProcessor;
 import de.flapdoodle.embed.process.runtime.ProcessControl;
@@ -43,10 +45,29 @@ public class RunningMongosProcess extends RunningMongoProcess {
 		int mongodProcessId
 //		boolean withAuthEnabled
 	) {
-		super("mongos", process, pidFile, timeout, onStop, supportConfig, platform, net, commandOutput, mongodProcessId);
+		this(process, pidFile, timeout, onStop, supportConfig, platform, net, commandOutput, mongodProcessId, StopConfig.defaults());
+	}
+
+	public RunningMongosProcess(
+		ProcessControl process,
+		Path pidFile,
+		long timeout,
+		Runnable onStop,
+		SupportConfig supportConfig,
+		Platform platform,
+		Net net,
+		StreamProcessor commandOutput,
+		int mongodProcessId,
+		StopConfig stopConfig
+	) {
+		super("mongos", process, pidFile, timeout, onStop, supportConfig, platform, net, commandOutput, mongodProcessId, stopConfig);
 	}
 
 	public static RunningProcessFactory<RunningMongosProcess> factory(long startupTimeout, SupportConfig supportConfig, Platform platform, Net net) {
-		return RunningMongoProcess.factory(RunningMongosProcess::new, startupTimeout, supportConfig, platform, net);
+		return factory(StartupOptions.builder().startupTimeout(startupTimeout).build(), supportConfig, platform, net);
+	}
+
+	public static RunningProcessFactory<RunningMongosProcess> factory(StartupOptions startupOptions, SupportConfig supportConfig, Platform platform, Net net) {
+		return RunningMongoProcess.factory(RunningMongosProcess::new, startupOptions, supportConfig, platform, net);
 	}
 }
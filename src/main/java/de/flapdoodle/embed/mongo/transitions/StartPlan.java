@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
+import de.flapdoodle.embed.process.config.store.Package;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.os.Platform;
+import de.flapdoodle.reverse.Listener;
+import de.flapdoodle.reverse.State;
+import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.StateLookup;
+import de.flapdoodle.reverse.Transition;
+import de.flapdoodle.reverse.TransitionWalker;
+import de.flapdoodle.reverse.Transitions;
+import de.flapdoodle.reverse.transitions.Start;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * transitions of one version, where all states which do not depend on the instance
+ * (platform, distribution, package, extracted files) are resolved once on first start and
+ * reused for every following start. net, dirs and the process are created for each start.
+ * extracted files are kept until the plan is closed.
+ */
+public final class StartPlan<T> implements AutoCloseable {
+
+	static final List<StateID<?>> INSTANCE_INDEPENDENT = Collections.unmodifiableList(Arrays.asList(
+		StateID.of(Platform.class),
+		StateID.of(Distribution.class),
+		StateID.of(Package.class),
+		StateID.of(ExtractedFileSet.class)
+	));
+
+	private static final StateID<Resolved> RESOLVED = StateID.of("startPlan", Resolved.class);
+
+	private final Transitions transitions;
+	private final StateID<T> destination;
+	private final List<StateID<?>> shared;
+
+	private TransitionWalker.ReachedState<Resolved> resolved;
+	private Transitions planned;
+	private boolean closed = false;
+
+	private StartPlan(Transitions transitions, StateID<T> destination, List<StateID<?>> shared) {
+		this.transitions = transitions;
+		this.destination = destination;
+		this.shared = shared;
+	}
+
+	public TransitionWalker.ReachedState<T> start(Listener... listener) {
+		return planned().walker().initState(destination, listener);
+	}
+
+	@Override
+	public synchronized void close() {
+		closed = true;
+		planned = null;
+		if (resolved != null) {
+			try {
+				resolved.close();
+			}
+			finally {
+				resolved = null;
+			}
+		}
+	}
+
+	private synchronized Transitions planned() {
+		if (closed) {
+			throw new IllegalStateException("plan is closed");
+		}
+		if (planned == null) {
+			resolved = transitions.addAll(new ResolveAll(shared)).walker().initState(RESOLVED);
+			Transitions withResolvedStates = transitions;
+			for (StateID<?> stateID : shared) {
+				withResolvedStates = withResolvedStates.replace(resolved(stateID, resolved.current()));
+			}
+			planned = withResolvedStates;
+		}
+		return planned;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <S> Transition<S> resolved(StateID<S> stateID, Resolved resolved) {
+		return Start.to(stateID).initializedWith((S) resolved.values.get(stateID));
+	}
+
+	static <T> StartPlan<T> of(Transitions transitions, StateID<T> destination) {
+		return of(transitions, destination, INSTANCE_INDEPENDENT);
+	}
+
+	static <T> StartPlan<T> of(Transitions transitions, StateID<T> destination, List<StateID<?>> shared) {
+		return new StartPlan<>(transitions, destination, shared);
+	}
+
+	private static final class Resolved {
+		private final Map<StateID<?>, Object> values;
+
+		private Resolved(Map<StateID<?>, Object> values) {
+			this.values = values;
+		}
+	}
+
+	/**
+	 * collects all shared states in one walk
+	 */
+	private static final class ResolveAll implements Transition<Resolved> {
+		private final List<StateID<?>> shared;
+
+		private ResolveAll(List<StateID<?>> shared) {
+			this.shared = shared;
+		}
+
+		@Override
+		public StateID<Resolved> destination() {
+			return RESOLVED;
+		}
+
+		@Override
+		public Set<StateID<?>> sources() {
+			return new LinkedHashSet<>(shared);
+		}
+
+		@Override
+		public State<Resolved> result(StateLookup lookup) {
+			Map<StateID<?>, Object> values = new LinkedHashMap<>();
+			for (StateID<?> stateID : shared) {
+				values.put(stateID, lookup.of(stateID));
+			}
+			return State.of(new Resolved(values));
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.runtime.LogEvent;
+import de.flapdoodle.embed.mongo.runtime.Mongod;
+import de.flapdoodle.embed.mongo.runtime.StructuredLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * like SuccessMessageLineListener, but only the last lines are kept,
+ * all messages are matched in one pass and the process id is extracted while lines are passing by.
+ * structured log lines (4.4+) are parsed, so that readiness, pid and fatal errors come from typed fields.
+ * once startup is inspected, lines are only parsed if there is a log event listener.
+ */
+final class StartupLogWatch {
+	private static final int MAX_WARNINGS = 100;
+
+	private final LogLineMatcher matcher;
+	private final LineBuffer lines;
+	private final Function<String, Optional<LogEvent>> events;
+	private final boolean eventsAfterStartup;
+	private volatile boolean startupInspected = false;
+
+	private boolean successMessageFound = false;
+	private String errorMessage = null;
+	private String lastError = null;
+	private int processId = -1;
+	private final List<String> warnings = new ArrayList<>();
+
+	StartupLogWatch(LogLineMatcher matcher, LineBuffer lines, StructuredLog structuredLog) {
+		this(matcher, lines, structuredLog::inspect, structuredLog.hasListener());
+	}
+
+	StartupLogWatch(LogLineMatcher matcher, LineBuffer lines, Function<String, Optional<LogEvent>> events, boolean eventsAfterStartup) {
+		this.matcher = matcher;
+		this.lines = lines;
+		this.events = events;
+		this.eventsAfterStartup = eventsAfterStartup;
+	}
+
+	public void inspect(String line) {
+		if (startupInspected && !eventsAfterStartup) {
+			return;
+		}
+		// listener is called outside of the lock
+		Optional<LogEvent> event = events.apply(line);
+		inspect(line, event.orElse(null));
+	}
+
+	private synchronized void inspect(String line, LogEvent event) {
+		if (processId == -1) {
+			processId = event != null
+				? processIdOf(event)
+				: Mongod.getMongodProcessId(line, -1);
+			if (processId != -1) {
+				notifyAll();
+			}
+		}
+		if (!successMessageFound && errorMessage == null) {
+			lines.add(line);
+			if (event != null) {
+				inspect(event);
+			}
+			if (!successMessageFound && errorMessage == null) {
+				LogLineMatcher.Result result = matcher.match(line);
+				if (result != null) {
+					if (result.isSuccess()) {
+						successMessageFound = true;
+					} else {
+						errorMessage = result.errorMessage();
+					}
+				}
+			}
+			if (successMessageFound || errorMessage != null) {
+				notifyAll();
+			}
+		}
+		startupInspected = (successMessageFound || errorMessage != null) && processId != -1;
+	}
+
+	private void inspect(LogEvent event) {
+		if (event.id() == LogEvent.WAITING_FOR_CONNECTIONS) {
+			successMessageFound = true;
+		} else if (event.isFatal()) {
+			errorMessage = lastError != null ? lastError : describe(event);
+		} else if (event.isError()) {
+			lastError = describe(event);
+		} else if (event.isWarning() && warnings.size() < MAX_WARNINGS) {
+			warnings.add(describe(event));
+		}
+	}
+
+	private static int processIdOf(LogEvent event) {
+		return event.id() == LogEvent.MONGODB_STARTING
+			? event.intAttribute("pid").orElse(-1)
+			: -1;
+	}
+
+	private static String describe(LogEvent event) {
+		return event.attribute("error")
+			.map(error -> event.message() + ": " + error)
+			.orElseGet(event::message);
+	}
+
+	public synchronized void waitForResult(long timeout) {
+		if (!successMessageFound && errorMessage == null) {
+			try {
+				wait(timeout);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public synchronized int waitForProcessId(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (processId == -1) {
+			long waitFor = deadline - System.currentTimeMillis();
+			if (waitFor <= 0) {
+				break;
+			}
+			try {
+				wait(waitFor);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return processId;
+	}
+
+	public synchronized boolean successMessageFound() {
+		return successMessageFound;
+	}
+
+	public synchronized Optional<String> errorMessage() {
+		return Optional.ofNullable(errorMessage);
+	}
+
+	public synchronized int processId() {
+		return processId;
+	}
+
+	public synchronized List<String> warnings() {
+		return new ArrayList<>(warnings);
+	}
+
+	public synchronized String allLines() {
+		return lines.toString();
+	}
+}
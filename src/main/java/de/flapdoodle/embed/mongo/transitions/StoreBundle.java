@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * archives and extracted file sets of a persistent dir as one tar.gz file.
+ * hashes, blobs, locks and the usage index are local to a host and are not part of a bundle.
+ */
+final class StoreBundle {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(StoreBundle.class);
+
+	private static final List<String> NOT_BUNDLED = Arrays.asList("contentHashes", "hashes", "blobs");
+	private static final int EXECUTABLE = 0100;
+
+	private StoreBundle() {
+		// no instance
+	}
+
+	/**
+	 * @return number of files in the bundle
+	 */
+	static int export(Path persistentDir, Path bundle) throws IOException {
+		List<Path> files = new ArrayList<>();
+		files.addAll(files(persistentDir.resolve("archives")));
+		files.addAll(files(persistentDir.resolve("fileSets")).stream()
+			.filter(it -> {
+				String fileSet = persistentDir.resolve("fileSets").relativize(it).getName(0).toString();
+				return !NOT_BUNDLED.contains(fileSet) && !fileSet.startsWith(".");
+			})
+			.collect(Collectors.toList()));
+
+		Path partial = Files.createTempFile(bundle.toAbsolutePath().getParent(), "bundle", ".part");
+		try {
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial));
+				TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(out))) {
+				tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+				tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+				for (Path file : files) {
+					TarArchiveEntry entry = new TarArchiveEntry(file, persistentDir.relativize(file).toString().replace('\\', '/'));
+					entry.setMode(Files.isExecutable(file) ? 0755 : 0644);
+					tar.putArchiveEntry(entry);
+					Files.copy(file, tar);
+					tar.closeArchiveEntry();
+				}
+			}
+			Files.move(partial, bundle, StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			Files.deleteIfExists(partial);
+		}
+		return files.size();
+	}
+
+	/**
+	 * entries already in the persistent dir are kept, file sets are moved in place as a whole
+	 *
+	 * @return number of imported entries
+	 */
+	static int importInto(Path bundle, Path persistentDir) throws IOException {
+		Files.createDirectories(persistentDir);
+		Path unpacked = Files.createTempDirectory(persistentDir, "import");
+		try {
+			unpack(bundle, unpacked);
+
+			int imported = 0;
+			Path archives = unpacked.resolve("archives");
+			for (Path archive : files(archives)) {
+				imported += moveIfAbsent(archive, persistentDir.resolve("archives").resolve(archives.relativize(archive).toString())) ? 1 : 0;
+			}
+			Path fileSets = unpacked.resolve("fileSets");
+			if (Files.isDirectory(fileSets)) {
+				List<Path> fileSetDirs;
+				try (Stream<Path> list = Files.list(fileSets)) {
+					fileSetDirs = list.filter(Files::isDirectory).collect(Collectors.toList());
+				}
+				for (Path fileSetDir : fileSetDirs) {
+					imported += moveIfAbsent(fileSetDir, persistentDir.resolve("fileSets").resolve(fileSetDir.getFileName().toString())) ? 1 : 0;
+				}
+			}
+			return imported;
+		}
+		finally {
+			de.flapdoodle.embed.process.io.Files.deleteAll(unpacked);
+		}
+	}
+
+	private static void unpack(Path bundle, Path destination) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(bundle));
+			TarArchiveInputStream tar = new TarArchiveInputStream(new GzipCompressorInputStream(in))) {
+			TarArchiveEntry entry;
+			while ((entry = tar.getNextTarEntry()) != null) {
+				Path file = destination.resolve(entry.getName()).normalize();
+				if (!file.startsWith(destination)) {
+					throw new IOException("entry outside of bundle: " + entry.getName());
+				}
+				if (entry.isDirectory()) {
+					Files.createDirectories(file);
+					continue;
+				}
+				Files.createDirectories(file.getParent());
+				Files.copy(tar, file);
+				Files.setLastModifiedTime(file, FileTime.fromMillis(entry.getModTime().getTime()));
+				if ((entry.getMode() & EXECUTABLE) != 0 && !file.toFile().setExecutable(true)) {
+					LOGGER.warn("could not make {} executable", file);
+				}
+			}
+		}
+	}
+
+	private static boolean moveIfAbsent(Path source, Path destination) throws IOException {
+		if (Files.exists(destination)) {
+			return false;
+		}
+		Files.createDirectories(destination.getParent());
+		try {
+			Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException ax) {
+			Files.move(source, destination);
+		}
+		catch (FileAlreadyExistsException fx) {
+			return false;
+		}
+		return true;
+	}
+
+	private static List<Path> files(Path dir) throws IOException {
+		if (!Files.isDirectory(dir)) {
+			return new ArrayList<>();
+		}
+		try (Stream<Path> files = Files.walk(dir)) {
+			return files.filter(Files::isRegularFile)
+				.filter(it -> !it.getFileName().toString().endsWith(".part"))
+				.sorted()
+				.collect(Collectors.toList());
+		}
+	}
+}
@@ -0,0 +1,408 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.runtime.ThroughputProgressListener;
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
+import de.flapdoodle.embed.process.archives.ImmutableExtractedFileSet;
+import de.flapdoodle.embed.process.config.DownloadConfig;
+import de.flapdoodle.embed.process.config.store.FileSet;
+import de.flapdoodle.embed.process.config.store.FileType;
+import de.flapdoodle.embed.process.config.store.Package;
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import de.flapdoodle.embed.process.io.directories.TempDir;
+import de.flapdoodle.embed.process.io.progress.ProgressListener;
+import de.flapdoodle.embed.process.net.DownloadToPath;
+import de.flapdoodle.embed.process.net.ProxyFactory;
+import de.flapdoodle.embed.process.net.UrlStreams;
+import de.flapdoodle.embed.process.store.DownloadCache;
+import de.flapdoodle.embed.process.store.ExtractedFileSetStore;
+import de.flapdoodle.embed.process.types.Name;
+import de.flapdoodle.reverse.State;
+import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.StateLookup;
+import de.flapdoodle.reverse.Transition;
+import de.flapdoodle.reverse.naming.HasLabel;
+import de.flapdoodle.types.Try;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.immutables.value.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * downloads and extracts in one pass: the archive stream is decompressed while bytes arrive and
+ * only the entries of the file set are written. the archive is written to the download cache at the same time.
+ * archive types which can not be read as stream are downloaded first.
+ * cached archives are extracted with an ArchiveIndex, so other file sets of the same archive are found without a scan.
+ * can replace ExtractFileSet.extractPackage(), the download transition is not used then.
+ */
+@Value.Immutable
+public abstract class StreamingExtractPackage implements Transition<ExtractedFileSet>, HasLabel {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(StreamingExtractPackage.class);
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	@Override
+	@Value.Default
+	public String transitionLabel() {
+		return "StreamingExtractPackage";
+	}
+
+	@Value.Default
+	protected StateID<Name> name() {
+		return StateID.of(Name.class);
+	}
+
+	@Value.Default
+	protected StateID<Package> distPackage() {
+		return StateID.of(Package.class);
+	}
+
+	@Value.Default
+	protected StateID<TempDir> tempDir() {
+		return StateID.of(TempDir.class);
+	}
+
+	@Value.Default
+	protected StateID<DownloadCache> downloadCache() {
+		return StateID.of(DownloadCache.class);
+	}
+
+	@Value.Default
+	protected StateID<ExtractedFileSetStore> extractedFileSetStore() {
+		return StateID.of(ExtractedFileSetStore.class);
+	}
+
+	@Value.Default
+	protected StateID<ProgressListener> progressListener() {
+		return StateID.of(ProgressListener.class);
+	}
+
+	@Value.Default
+	protected DownloadConfig downloadConfig() {
+		return DownloadConfig.defaults();
+	}
+
+	/**
+	 * used for archive types which can not be extracted from a stream
+	 */
+	@Value.Default
+	protected DownloadToPath downloadToPath() {
+		return UrlStreams.asDownloadToPath();
+	}
+
+	@Override
+	@Value.Default
+	public StateID<ExtractedFileSet> destination() {
+		return StateID.of(ExtractedFileSet.class);
+	}
+
+	@Override
+	@Value.Auxiliary
+	public Set<StateID<?>> sources() {
+		return StateID.setOf(name(), distPackage(), tempDir(), downloadCache(), extractedFileSetStore(), progressListener());
+	}
+
+	@Override
+	@Value.Auxiliary
+	public State<ExtractedFileSet> result(StateLookup lookup) {
+		Name name = lookup.of(name());
+		Package dist = lookup.of(distPackage());
+		TempDir tempDir = lookup.of(tempDir());
+		DownloadCache downloadCache = lookup.of(downloadCache());
+		ExtractedFileSetStore store = lookup.of(extractedFileSetStore());
+		ProgressListener progressListener = lookup.of(progressListener());
+
+		try {
+			URL url = new URL(dist.url());
+			Optional<Path> cachedArchive = downloadCache.archiveFor(url, dist.archiveType());
+			if (cachedArchive.isPresent()) {
+				Optional<ExtractedFileSet> cachedFileSet = store.extractedFileSet(cachedArchive.get(), dist.fileSet());
+				if (cachedFileSet.isPresent()) {
+					return State.of(cachedFileSet.get());
+				}
+				Path destination = tempDir.createDirectory(name.value());
+				ExtractedFileSet extracted;
+				try {
+					extracted = ArchiveIndex.isSupported(dist.archiveType())
+						? ArchiveIndex.extractWithIndex(cachedArchive.get(), dist.archiveType(), destination, dist.fileSet())
+						: dist.archiveType().extractor().extract(destination, cachedArchive.get(), dist.fileSet());
+				}
+				catch (IOException | RuntimeException ex) {
+					deleteQuietly(destination);
+					throw ex;
+				}
+				return stored(store, cachedArchive.get(), dist.fileSet(), extracted);
+			}
+
+			Path downloadDir = tempDir.createDirectory(name.value() + "-download");
+			Path downloadedArchive = downloadDir.resolve(UUID.randomUUID().toString());
+			Path destination = tempDir.createDirectory(name.value());
+			try {
+				ExtractedFileSet extracted;
+				if (isStreamable(dist.archiveType())) {
+					try {
+						extracted = downloadAndExtract(url, downloadedArchive, destination, dist, ThroughputProgressListener.copyListenerOf(progressListener));
+					}
+					catch (IOException | RuntimeException ex) {
+						progressListener.info(ThroughputProgressListener.downloadLabel(url), ThroughputProgressListener.FAILED);
+						throw ex;
+					}
+					progressListener.done(ThroughputProgressListener.downloadLabel(url));
+				} else {
+					ThroughputProgressListener.reporting(downloadToPath(), progressListener)
+						.download(url, downloadedArchive, proxy(), downloadConfig().getUserAgent(), downloadConfig().getTimeoutConfig(), (ignore, bytesCopied, contentLength) -> {});
+					extracted = dist.archiveType().extractor().extract(destination, downloadedArchive, dist.fileSet());
+				}
+				Path storedArchive = downloadCache.store(url, dist.archiveType(), downloadedArchive);
+				return stored(store, storedArchive, dist.fileSet(), extracted);
+			}
+			catch (IOException | RuntimeException ex) {
+				// partially extracted
+				deleteQuietly(destination);
+				throw ex;
+			}
+			finally {
+				de.flapdoodle.embed.process.io.Files.deleteAll(downloadDir);
+			}
+		}
+		catch (IOException iox) {
+			throw new IllegalStateException("could not download and extract " + dist.url(), iox);
+		}
+	}
+
+	private Optional<Proxy> proxy() {
+		return downloadConfig().proxyFactory().map(ProxyFactory::createProxy);
+	}
+
+	private ExtractedFileSet downloadAndExtract(URL url, Path archive, Path destination, Package dist, DownloadToPath.DownloadCopyListener copyListener) throws IOException {
+		URLConnection connection = UrlStreams.urlConnectionOf(url, downloadConfig().getUserAgent(), downloadConfig().getTimeoutConfig(), proxy());
+		long contentLength = connection.getContentLengthLong();
+		copyListener.downloaded(url, 0, contentLength);
+		try (InputStream in = connection.getInputStream();
+			 OutputStream out = Files.newOutputStream(archive);
+			 CopyingInputStream copying = new CopyingInputStream(in, out, copied -> copyListener.downloaded(url, copied, contentLength))) {
+
+			ExtractedFileSet ret = extract(archiveStream(dist.archiveType(), copying), destination, dist.fileSet());
+			// rest of the archive is needed for the download cache
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (copying.read(buffer) != -1) {
+				// only copied
+			}
+			if (contentLength != -1 && copying.copied != contentLength) {
+				throw new IOException("downloaded " + copying.copied + " bytes of " + url + ", expected " + contentLength);
+			}
+			return ret;
+		}
+	}
+
+	private static State<ExtractedFileSet> stored(ExtractedFileSetStore store, Path archive, FileSet fileSet, ExtractedFileSet extracted) {
+		try {
+			ExtractedFileSet ret = store.store(archive, fileSet, extracted);
+			de.flapdoodle.embed.process.io.Files.deleteAll(extracted.baseDir());
+			return State.of(ret);
+		}
+		catch (IOException | RuntimeException ex) {
+			LOGGER.warn("could not store extracted files of {}, use temporary copy", archive, ex);
+			return State.of(extracted, temporary -> Try.run(() -> de.flapdoodle.embed.process.io.Files.deleteAll(temporary.baseDir())));
+		}
+	}
+
+	private static void deleteQuietly(Path directory) {
+		try {
+			de.flapdoodle.embed.process.io.Files.deleteAll(directory);
+		}
+		catch (IOException iox) {
+			LOGGER.warn("could not delete {}", directory, iox);
+		}
+	}
+
+	static boolean isStreamable(ArchiveType archiveType) {
+		switch (archiveType) {
+			case TGZ:
+			case TBZ2:
+			case ZIP:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static ArchiveInputStream archiveStream(ArchiveType archiveType, InputStream in) throws IOException {
+		InputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+		switch (archiveType) {
+			case TGZ:
+				return new TarArchiveInputStream(new GzipCompressorInputStream(buffered));
+			case TBZ2:
+				return new TarArchiveInputStream(new BZip2CompressorInputStream(buffered));
+			case ZIP:
+				return new ZipArchiveInputStream(buffered, "UTF8", true, true);
+			default:
+				throw new IllegalArgumentException("not streamable: " + archiveType);
+		}
+	}
+
+	/**
+	 * same matching as the extractors of the library: first matching entry of the file set, each entry only once,
+	 * fails if an entry of the file set is not part of the archive
+	 */
+	static ExtractedFileSet extract(ArchiveInputStream archive, Path destination, FileSet fileSet) throws IOException {
+		ImmutableExtractedFileSet.Builder builder = ExtractedFileSet.builder(destination);
+		List<FileSet.Entry> missing = new ArrayList<>(fileSet.entries());
+		ArchiveEntry archiveEntry;
+		while (!missing.isEmpty() && (archiveEntry = archive.getNextEntry()) != null) {
+			if (archiveEntry.isDirectory()) {
+				continue;
+			}
+			Optional<FileSet.Entry> match = matching(missing, archiveEntry.getName());
+			if (match.isPresent()) {
+				if (!archive.canReadEntryData(archiveEntry)) {
+					throw new IOException("could not read " + archiveEntry.getName());
+				}
+				missing.remove(match.get());
+				Path dest = destination.resolve(match.get().destination());
+				if (dest.getParent() != null) {
+					Files.createDirectories(dest.getParent());
+				}
+				Files.copy(archive, dest, StandardCopyOption.REPLACE_EXISTING);
+				if (match.get().type() == FileType.Executable) {
+					if (!dest.toFile().setExecutable(true)) {
+						throw new IOException("could not set executable flag on " + dest);
+					}
+					builder.executable(dest);
+				} else {
+					builder.addLibraryFiles(dest);
+				}
+			}
+		}
+		failOnMissing(missing);
+		return builder.build();
+	}
+
+	static void failOnMissing(List<FileSet.Entry> missing) throws IOException {
+		if (!missing.isEmpty()) {
+			throw new IOException("could not find matching file for " + missing.stream()
+				.map(entry -> entry.destination() + " (" + entry.matchingPattern() + ")")
+				.collect(Collectors.joining(", ")));
+		}
+	}
+
+	private static Optional<FileSet.Entry> matching(List<FileSet.Entry> entries, String name) {
+		return entries.stream()
+			.filter(entry -> entry.matchingPattern().matcher(name).matches())
+			.findFirst();
+	}
+
+	private interface Copied {
+		void copied(long bytes);
+	}
+
+	/**
+	 * writes everything which is read into a second stream
+	 */
+	private static final class CopyingInputStream extends FilterInputStream {
+		private final OutputStream copy;
+		private final Copied listener;
+		private long copied = 0;
+
+		private CopyingInputStream(InputStream in, OutputStream copy, Copied listener) {
+			super(in);
+			this.copy = copy;
+			this.listener = listener;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int ret = super.read();
+			if (ret != -1) {
+				copy.write(ret);
+				copied(1);
+			}
+			return ret;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int ret = super.read(b, off, len);
+			if (ret > 0) {
+				copy.write(b, off, ret);
+				copied(ret);
+			}
+			return ret;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(n, 0))];
+			long skipped = 0;
+			while (skipped < n) {
+				int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+				if (read == -1) {
+					break;
+				}
+				skipped += read;
+			}
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		private void copied(long bytes) {
+			copied += bytes;
+			listener.copied(copied);
+		}
+	}
+
+	public static ImmutableStreamingExtractPackage.Builder builder() {
+		return ImmutableStreamingExtractPackage.builder();
+	}
+
+	public static ImmutableStreamingExtractPackage withDefaults() {
+		return builder().build();
+	}
+}
@@ -20,8 +20,8 @@
  */
 package de.flapdoodle.embed.mongo.transitions;
 
+import de.flapdoodle.embed.mongo.runtime.HostPlatform;
 import de.flapdoodle.embed.process.distribution.Distribution;
-import de.flapdoodle.os.CommonOS;
 import de.flapdoodle.os.Platform;
 import de.flapdoodle.reverse.Transition;
 import de.flapdoodle.reverse.Transitions;
@@ -32,7 +32,7 @@ import org.immutables.value.Value;
 public interface VersionAndPlatform {
 	@Value.Default
 	default Transition<Platform> platform() {
-		return Start.to(Platform.class).providedBy(() -> Platform.detect(CommonOS.list()));
+		return Start.to(Platform.class).providedBy(HostPlatform::detect);
 	}
 
 	@Value.Default
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * bounded cache, the least recently used entry is removed if it gets too big.
+ * values are computed outside of the lock, so two threads may compute the same value.
+ */
+public class LruCache<K, V> {
+
+	private final Map<K, V> entries;
+
+	public LruCache(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize <= 0: " + maxSize);
+		}
+		this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	public V get(K key, Function<? super K, ? extends V> valueOf) {
+		synchronized (entries) {
+			V ret = entries.get(key);
+			if (ret != null) {
+				return ret;
+			}
+		}
+		V ret = valueOf.apply(key);
+		synchronized (entries) {
+			V existing = entries.putIfAbsent(key, ret);
+			return existing != null ? existing : ret;
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+}
@@ -38,4 +38,13 @@ public class VersionsTest {
       assertThat(iFeatureAwareVersion.toString()).contains(version);
       assertThat(iFeatureAwareVersion.asInDownloadPath()).isEqualTo(version);
     }
+
+	@Test
+	public void sameGenericVersionIsReused() {
+		IFeatureAwareVersion first = Versions.withFeatures(genericVersion("4.4.1"));
+		IFeatureAwareVersion second = Versions.withFeatures(genericVersion("4.4.1"));
+
+		assertThat(second).isSameAs(first);
+		assertThat(second.features()).isEqualTo(Version.V4_4_1.features());
+	}
 }
@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BsonTest {
+
+	@Test
+	void encodeDecodeRoundTrip() throws IOException {
+		Map<String, Object> nested = new LinkedHashMap<>();
+		nested.put("name", "test");
+		nested.put("empty", false);
+
+		Map<String, Object> document = new LinkedHashMap<>();
+		document.put("listDatabases", 1);
+		document.put("nameOnly", true);
+		document.put("long", 12345678901L);
+		document.put("double", 1.5);
+		document.put("nothing", null);
+		document.put("nested", nested);
+		document.put("list", Arrays.asList("a", 2, nested));
+
+		Map<String, Object> decoded = Bson.decode(Bson.encode(document));
+
+		assertThat(decoded).isEqualTo(document);
+	}
+
+	@Test
+	void encodeMatchesSpecExample() {
+		Map<String, Object> document = new LinkedHashMap<>();
+		document.put("hello", "world");
+
+		// see https://bsonspec.org/faq.html
+		assertThat(Bson.encode(document)).containsExactly(
+			0x16, 0x00, 0x00, 0x00, 0x02, 'h', 'e', 'l', 'l', 'o', 0x00,
+			0x06, 0x00, 0x00, 0x00, 'w', 'o', 'r', 'l', 'd', 0x00, 0x00);
+	}
+
+	@Test
+	void opMsgReplyCanBeParsed() throws IOException {
+		Map<String, Object> command = new LinkedHashMap<>();
+		command.put("ok", 1.0);
+
+		byte[] message = MongoWire.opMsg(1, "admin", command);
+		byte[] body = Arrays.copyOfRange(message, 16, message.length);
+
+		Map<String, Object> parsed = MongoWire.parseBody(2013, body);
+		assertThat(parsed).containsEntry("$db", "admin");
+		assertThat(MongoWire.isOk(parsed)).isTrue();
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileLocksTest {
+
+	@Test
+	public void actionsWithSameLockFileDoNotOverlap(@TempDir Path tempDir) throws Exception {
+		Path lockFile = tempDir.resolve("locks").resolve("sample.lock");
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				int value = i;
+				results.add(executor.submit(() -> FileLocks.withLock(lockFile, () -> {
+					maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					try {
+						Thread.sleep(10);
+					}
+					catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+					running.decrementAndGet();
+					return value;
+				})));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertThat(results.get(i).get()).isEqualTo(i);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(maxRunning).hasValue(1);
+		assertThat(FileLocks.localLocks()).isEqualTo(0);
+	}
+
+	@Test
+	@EnabledOnOs({ OS.LINUX, OS.MAC })
+	public void lockFileIsDeletedByLastHolder(@TempDir Path tempDir) {
+		Path lockFile = tempDir.resolve("sample.lock");
+
+		FileLocks.withLock(lockFile, () -> {
+			assertThat(lockFile).exists();
+			return null;
+		});
+
+		assertThat(lockFile).doesNotExist();
+		assertThat(FileLocks.localLocks()).isEqualTo(0);
+	}
+
+	@Test
+	public void nestedLockInSameThreadDoesNotBlock(@TempDir Path tempDir) {
+		Path lockFile = tempDir.resolve("sample.lock");
+
+		String result = FileLocks.withLock(lockFile, () -> FileLocks.withLock(lockFile, () -> "nested"));
+
+		assertThat(result).isEqualTo("nested");
+	}
+}
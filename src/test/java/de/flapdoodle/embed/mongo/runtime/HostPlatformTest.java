@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import de.flapdoodle.embed.process.config.SupportConfig;
+import de.flapdoodle.os.CommonOS;
+import de.flapdoodle.os.Platform;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HostPlatformTest {
+
+	private static final Platform PLATFORM = Platform.detect(CommonOS.list());
+
+	@AfterEach
+	public void resetDetection() {
+		HostPlatform.detectWith(() -> Platform.detect(CommonOS.list()));
+		HostPlatform.reset();
+	}
+
+	@Test
+	public void platformIsDetectedOnlyOnce() {
+		AtomicInteger detections = new AtomicInteger();
+		HostPlatform.detectWith(() -> {
+			detections.incrementAndGet();
+			return PLATFORM;
+		});
+
+		assertThat(HostPlatform.detect()).isSameAs(PLATFORM);
+		assertThat(HostPlatform.detect()).isSameAs(PLATFORM);
+		assertThat(detections).hasValue(1);
+
+		HostPlatform.reset();
+		assertThat(HostPlatform.detect()).isSameAs(PLATFORM);
+		assertThat(detections).hasValue(2);
+	}
+
+	@Test
+	public void overrideReplacesDetection() {
+		AtomicInteger detections = new AtomicInteger();
+		HostPlatform.detectWith(() -> {
+			detections.incrementAndGet();
+			return PLATFORM;
+		});
+		Platform other = Platform.detect(CommonOS.list());
+
+		HostPlatform.override(other);
+
+		assertThat(HostPlatform.detect()).isSameAs(other);
+		assertThat(detections).hasValue(0);
+	}
+
+	@Test
+	public void overrideNUMA() {
+		SupportConfig supportConfig = SupportConfig.generic();
+
+		HostPlatform.overrideNUMA(true);
+		assertThat(HostPlatform.isNUMA(supportConfig, PLATFORM)).isTrue();
+
+		HostPlatform.overrideNUMA(false);
+		assertThat(HostPlatform.isNUMA(supportConfig, PLATFORM)).isFalse();
+	}
+}
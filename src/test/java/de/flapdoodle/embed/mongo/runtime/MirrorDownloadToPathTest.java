@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import de.flapdoodle.embed.mongo.config.DownloadMirrors;
+import de.flapdoodle.embed.process.config.TimeoutConfig;
+import de.flapdoodle.embed.process.net.UrlStreams;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MirrorDownloadToPathTest {
+
+	private static final String PRIMARY = "https://fastdl.mongodb.org";
+
+	private final byte[] content = new byte[64 * 1024];
+	private final List<HttpServer> servers = new ArrayList<>();
+
+	@TempDir
+	Path tempDir;
+
+	@AfterEach
+	public void stopServers() {
+		servers.forEach(server -> server.stop(0));
+	}
+
+	@Test
+	public void failingMirrorIsSkippedAndTriedLastAfterRepeatedFailures() throws IOException {
+		new Random(1).nextBytes(content);
+		AtomicInteger brokenRequests = new AtomicInteger();
+		String broken = serve(exchange -> {
+			brokenRequests.incrementAndGet();
+			exchange.sendResponseHeaders(500, -1);
+			exchange.close();
+		});
+		String working = serve(this::content);
+
+		MirrorDownloadToPath testee = new MirrorDownloadToPath(mirrors(broken, working).build());
+
+		download(testee, "first");
+		download(testee, "second");
+		assertThat(brokenRequests).hasValue(2);
+
+		assertThat(testee.ordered().stream().map(DownloadMirrors.Mirror::baseUrl).collect(Collectors.toList()))
+			.containsExactly(working, broken);
+		download(testee, "third");
+		assertThat(brokenRequests).hasValue(2);
+	}
+
+	@Test
+	public void mirrorWithoutAnswerIsHedgedWithNextOne() throws IOException {
+		new Random(2).nextBytes(content);
+		String hanging = serve(exchange -> {
+			sleep(3000);
+			content(exchange);
+		});
+		String working = serve(this::content);
+
+		MirrorDownloadToPath testee = new MirrorDownloadToPath(mirrors(hanging, working)
+			.hedgeAfterMillis(200)
+			.build());
+
+		long start = System.currentTimeMillis();
+		download(testee, "hedged");
+		assertThat(System.currentTimeMillis() - start).isLessThan(2500);
+
+		assertThat(testee.ordered().get(0).baseUrl()).isEqualTo(working);
+	}
+
+	@Test
+	public void slowDownloadContinuesWithNextMirror() throws IOException {
+		new Random(3).nextBytes(content);
+		String slow = serve(exchange -> {
+			exchange.sendResponseHeaders(200, content.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				for (int i = 0; i < content.length; i += 1024) {
+					out.write(content, i, 1024);
+					out.flush();
+					sleep(50);
+				}
+			}
+			catch (IOException ignore) {
+				// client gave up
+			}
+		});
+		String working = serve(this::content);
+
+		MirrorDownloadToPath testee = new MirrorDownloadToPath(mirrors(slow, working)
+			.minBytesPerSecond(1024 * 1024)
+			.throughputGraceMillis(200)
+			.build());
+
+		download(testee, "slow");
+	}
+
+	@Test
+	public void hedgedMirrorIsTriedAgainIfLeaderFails() throws IOException {
+		new Random(5).nextBytes(content);
+		AtomicInteger delayedRequests = new AtomicInteger();
+		String breaking = serve(exchange -> {
+			sleep(300);
+			// connection is closed after half of the content
+			exchange.sendResponseHeaders(200, content.length);
+			exchange.getResponseBody().write(content, 0, content.length / 2);
+			exchange.getResponseBody().flush();
+			exchange.close();
+		});
+		String delayed = serve(exchange -> {
+			delayedRequests.incrementAndGet();
+			sleep(600);
+			content(exchange);
+		});
+
+		MirrorDownloadToPath testee = new MirrorDownloadToPath(mirrors(breaking, delayed)
+			.hedgeAfterMillis(100)
+			.build());
+
+		download(testee, "failover");
+		assertThat(delayedRequests).hasValue(2);
+	}
+
+	@Test
+	public void allMirrorsFailing() throws IOException {
+		String broken = serve(exchange -> {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+		});
+
+		MirrorDownloadToPath testee = new MirrorDownloadToPath(mirrors(broken).build());
+
+		assertThatThrownBy(() -> download(testee, "missing"))
+			.isInstanceOf(IOException.class)
+			.hasMessageContaining("from any mirror");
+		assertThat(tempDir.resolve("missing")).doesNotExist();
+	}
+
+	@Test
+	public void urlOfOtherServerIsNotMirrored() throws IOException {
+		new Random(4).nextBytes(content);
+		String other = serve(this::content);
+
+		MirrorDownloadToPath testee = new MirrorDownloadToPath(mirrors("http://localhost:1").build());
+		Path destination = tempDir.resolve("other");
+		testee.download(new URL(other + "/archive.tgz"), destination, Optional.empty(), "test", TimeoutConfig.defaults(), (url, bytes, length) -> {});
+
+		assertThat(destination).hasBinaryContent(content);
+	}
+
+	private void download(MirrorDownloadToPath testee, String name) throws IOException {
+		Path destination = tempDir.resolve(name);
+		testee.download(new URL(PRIMARY + "/linux/archive.tgz"), destination, Optional.empty(), "test", TimeoutConfig.defaults(), (url, bytes, length) -> {});
+		assertThat(destination).hasBinaryContent(content);
+	}
+
+	private static de.flapdoodle.embed.mongo.config.ImmutableDownloadMirrors.Builder mirrors(String... baseUrls) {
+		de.flapdoodle.embed.mongo.config.ImmutableDownloadMirrors.Builder ret = DownloadMirrors.builder()
+			.primaryBaseUrl(PRIMARY);
+		for (String baseUrl : baseUrls) {
+			ret.addMirrors(DownloadMirrors.Mirror.of(baseUrl));
+		}
+		return ret;
+	}
+
+	private String serve(HttpHandler handler) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/linux/archive.tgz", handler);
+		server.createContext("/archive.tgz", handler);
+		server.start();
+		servers.add(server);
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+	}
+
+	private void content(HttpExchange exchange) throws IOException {
+		exchange.sendResponseHeaders(200, content.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(content);
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MongoWireTest {
+
+	@Test
+	void closedPortIsNotAcceptingCommands() throws IOException {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		assertThat(MongoWire.isAcceptingCommands(InetAddress.getLoopbackAddress(), port, 250)).isFalse();
+	}
+
+	@Test
+	void handshakeWithIsMaster() throws IOException, InterruptedException {
+		Map<String, Object> reply = new LinkedHashMap<>();
+		reply.put("ismaster", true);
+		reply.put("maxWireVersion", 17);
+		reply.put("ok", 1.0);
+
+		try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			Thread fakeServer = new Thread(() -> answerOnce(server, reply));
+			fakeServer.start();
+
+			assertThat(MongoWire.isAcceptingCommands(InetAddress.getLoopbackAddress(), server.getLocalPort(), 1000)).isTrue();
+			fakeServer.join(1000);
+		}
+	}
+
+	private static void answerOnce(ServerSocket server, Map<String, Object> reply) {
+		try (Socket socket = server.accept()) {
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			byte[] header = new byte[16];
+			in.readFully(header);
+			ByteBuffer headerBuffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+			int length = headerBuffer.getInt();
+			int requestId = headerBuffer.getInt();
+			in.readFully(new byte[length - 16]);
+
+			byte[] document = Bson.encode(reply);
+			ByteBuffer message = ByteBuffer.allocate(16 + 20 + document.length).order(ByteOrder.LITTLE_ENDIAN);
+			message.putInt(16 + 20 + document.length);
+			message.putInt(1);
+			message.putInt(requestId);
+			// OP_REPLY
+			message.putInt(1);
+			// responseFlags, cursorID, startingFrom, numberReturned
+			message.putInt(0);
+			message.putLong(0);
+			message.putInt(0);
+			message.putInt(1);
+			message.put(document);
+
+			OutputStream out = socket.getOutputStream();
+			out.write(message.array());
+			out.flush();
+		}
+		catch (IOException iox) {
+			throw new RuntimeException(iox);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import de.flapdoodle.embed.process.runtime.Processes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProcessHandlesTest {
+
+	@Test
+	@DisabledOnOs(OS.WINDOWS)
+	void destroyRunningProcess() throws IOException, InterruptedException {
+		Process process = new ProcessBuilder("sleep", "60").start();
+		try {
+			Long pid = Processes.processId(process);
+			assertThat(pid).isNotNull();
+
+			Optional<ProcessHandles.Handle> handle = ProcessHandles.of(pid);
+			assertThat(handle).isPresent();
+			assertThat(handle.get().isAlive()).isTrue();
+			assertThat(handle.get().waitForExit(10)).isFalse();
+
+			assertThat(handle.get().destroy()).isTrue();
+			assertThat(handle.get().waitForExit(5000)).isTrue();
+			assertThat(handle.get().isAlive()).isFalse();
+		}
+		finally {
+			process.destroyForcibly().waitFor();
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.flapdoodle.embed.mongo.config.RangedDownloadConfig;
+import de.flapdoodle.embed.process.config.TimeoutConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RangedDownloadToPathTest {
+
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+	private static final int PART_SIZE = 1024;
+
+	private final byte[] content = new byte[10 * PART_SIZE + 123];
+	private final AtomicLong bytesServed = new AtomicLong();
+	private final AtomicInteger rangeRequests = new AtomicInteger();
+	private volatile boolean supportRanges = true;
+	private volatile String checksum = null;
+
+	private HttpServer server;
+	private URL url;
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		new Random(42).nextBytes(content);
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/archive.tgz", this::archive);
+		server.createContext("/archive.tgz.sha256", this::checksum);
+		server.start();
+		url = new URL("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/archive.tgz");
+	}
+
+	@AfterEach
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void downloadInParallelParts(@TempDir Path tempDir) throws IOException {
+		checksum = RangedDownloadToPath.sha256(Files.write(tempDir.resolve("expected"), content));
+		Path destination = tempDir.resolve("archive");
+
+		downloader(tempDir).download(url, destination, Optional.empty(), "test", TimeoutConfig.defaults(), (u, copied, length) -> {});
+
+		assertThat(destination).hasBinaryContent(content);
+		assertThat(rangeRequests).hasValue(11);
+		assertThat(bytesServed).hasValue(content.length);
+		assertThat(tempDir.resolve("resume")).isEmptyDirectory();
+	}
+
+	@Test
+	public void resumeInterruptedDownload(@TempDir Path tempDir) throws IOException {
+		RangedDownloadToPath downloader = downloader(tempDir);
+		Path resumeDir = tempDir.resolve("resume").resolve(UUID.nameUUIDFromBytes(url.toString().getBytes(StandardCharsets.UTF_8)).toString());
+		Files.createDirectories(resumeDir);
+		Files.write(resumeDir.resolve("meta"), (content.length + "\n\"v1\"\n" + PART_SIZE).getBytes(StandardCharsets.UTF_8));
+		for (int i = 0; i < 9; i++) {
+			Files.write(resumeDir.resolve("part-" + i), slice(i * PART_SIZE, (i + 1) * PART_SIZE));
+		}
+		Files.write(resumeDir.resolve("part-9"), slice(9 * PART_SIZE, 9 * PART_SIZE + 100));
+
+		Path destination = tempDir.resolve("archive");
+		downloader.download(url, destination, Optional.empty(), "test", TimeoutConfig.defaults(), (u, copied, length) -> {});
+
+		assertThat(destination).hasBinaryContent(content);
+		assertThat(rangeRequests).hasValue(2);
+		assertThat(bytesServed).hasValue(PART_SIZE - 100 + 123);
+	}
+
+	@Test
+	public void singleStreamIfServerDoesNotSupportRanges(@TempDir Path tempDir) throws IOException {
+		supportRanges = false;
+		Path destination = tempDir.resolve("archive");
+
+		downloader(tempDir).download(url, destination, Optional.empty(), "test", TimeoutConfig.defaults(), (u, copied, length) -> {});
+
+		assertThat(destination).hasBinaryContent(content);
+		assertThat(rangeRequests).hasValue(0);
+	}
+
+	@Test
+	public void checksumMismatchFailsDownload(@TempDir Path tempDir) {
+		checksum = "0000000000000000000000000000000000000000000000000000000000000000";
+		Path destination = tempDir.resolve("archive");
+
+		assertThatThrownBy(() -> downloader(tempDir).download(url, destination, Optional.empty(), "test", TimeoutConfig.defaults(), (u, copied, length) -> {}))
+			.isInstanceOf(IOException.class)
+			.hasMessageContaining("checksum");
+		assertThat(destination).doesNotExist();
+	}
+
+	@Test
+	public void defaultResumeDirIsUsedIfNotConfigured(@TempDir Path tempDir) throws IOException {
+		checksum = RangedDownloadToPath.sha256(Files.write(tempDir.resolve("expected"), content));
+		RangedDownloadConfig config = RangedDownloadConfig.builder()
+			.partSizeInBytes(PART_SIZE)
+			.build();
+		Path resumeDir = tempDir.resolve("resume").resolve(UUID.nameUUIDFromBytes(url.toString().getBytes(StandardCharsets.UTF_8)).toString());
+		Files.createDirectories(resumeDir);
+		Files.write(resumeDir.resolve("meta"), (content.length + "\n\"v1\"\n" + PART_SIZE).getBytes(StandardCharsets.UTF_8));
+		for (int i = 0; i < 10; i++) {
+			Files.write(resumeDir.resolve("part-" + i), slice(i * PART_SIZE, (i + 1) * PART_SIZE));
+		}
+
+		Path destination = tempDir.resolve("archive");
+		new RangedDownloadToPath(config)
+			.withDefaultResumeDir(tempDir.resolve("resume"))
+			.download(url, destination, Optional.empty(), "test", TimeoutConfig.defaults(), (u, copied, length) -> {});
+
+		assertThat(destination).hasBinaryContent(content);
+		assertThat(rangeRequests).hasValue(1);
+
+		RangedDownloadToPath configured = downloader(tempDir);
+		assertThat(configured.withDefaultResumeDir(tempDir.resolve("other"))).isSameAs(configured);
+	}
+
+	private RangedDownloadToPath downloader(Path tempDir) {
+		return new RangedDownloadToPath(RangedDownloadConfig.builder()
+			.partSizeInBytes(PART_SIZE)
+			.parallel(3)
+			.resumeDir(tempDir.resolve("resume"))
+			.build());
+	}
+
+	private byte[] slice(int start, int end) {
+		byte[] ret = new byte[end - start];
+		System.arraycopy(content, start, ret, 0, ret.length);
+		return ret;
+	}
+
+	private void archive(HttpExchange exchange) throws IOException {
+		if (supportRanges) {
+			exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+		}
+		exchange.getResponseHeaders().add("ETag", "\"v1\"");
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		Matcher matcher = range != null && supportRanges ? RANGE.matcher(range) : null;
+		if (matcher != null && matcher.matches()) {
+			rangeRequests.incrementAndGet();
+			int start = Integer.parseInt(matcher.group(1));
+			int end = Integer.parseInt(matcher.group(2)) + 1;
+			exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + content.length);
+			send(exchange, 206, slice(start, end));
+		} else {
+			send(exchange, 200, content);
+		}
+	}
+
+	private void checksum(HttpExchange exchange) throws IOException {
+		if (checksum == null) {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+		} else {
+			send(exchange, 200, (checksum + "  archive.tgz\n").getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+
+	private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+		if (status == 206) {
+			bytesServed.addAndGet(body.length);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import de.flapdoodle.embed.process.distribution.Version;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShutdownCommandTest {
+
+	@Test
+	void shutdownCommandMatchingVersion() {
+		assertThat(ShutdownCommand.of(Version.of("3.4.24"))).isEqualTo(ShutdownCommand.LEGACY);
+		assertThat(ShutdownCommand.of(Version.of("3.6.0"))).isEqualTo(ShutdownCommand.OP_MSG);
+		assertThat(ShutdownCommand.of(de.flapdoodle.embed.mongo.distribution.Version.Main.V6_0)).isEqualTo(ShutdownCommand.OP_MSG);
+		assertThat(ShutdownCommand.of(Version.of("something"))).isEqualTo(ShutdownCommand.ANY);
+	}
+
+	@Test
+	void opMsgShutdownIsForced() throws Exception {
+		try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			CompletableFuture<Map<String, Object>> received = CompletableFuture.supplyAsync(() -> receiveOnce(server));
+
+			assertThat(Mongod.sendShutdown(InetAddress.getLoopbackAddress(), server.getLocalPort(), ShutdownCommand.OP_MSG)).isTrue();
+
+			Map<String, Object> command = received.get(5, TimeUnit.SECONDS);
+			assertThat(command)
+				.containsEntry("shutdown", 1)
+				.containsEntry("force", true)
+				.containsEntry("$db", "admin");
+		}
+	}
+
+	private static Map<String, Object> receiveOnce(ServerSocket server) {
+		try (Socket socket = server.accept()) {
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			byte[] header = new byte[16];
+			in.readFully(header);
+			ByteBuffer headerBuffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+			int length = headerBuffer.getInt();
+			headerBuffer.getInt();
+			headerBuffer.getInt();
+			int opCode = headerBuffer.getInt();
+			byte[] body = new byte[length - 16];
+			in.readFully(body);
+			return MongoWire.parseBody(opCode, body);
+		}
+		catch (IOException iox) {
+			throw new RuntimeException(iox);
+		}
+	}
+}
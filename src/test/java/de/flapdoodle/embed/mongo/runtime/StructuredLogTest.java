@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import de.flapdoodle.embed.process.distribution.Version;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StructuredLogTest {
+
+	@Test
+	void parseStartingMessage() {
+		Optional<LogEvent> event = StructuredLog.parse("{\"t\":{\"$date\":\"2022-11-02T10:00:00.000+01:00\"},\"s\":\"I\",  \"c\":\"CONTROL\",  \"id\":4615611, \"ctx\":\"initandlisten\",\"msg\":\"MongoDB starting\",\"attr\":{\"pid\":4711,\"port\":27017,\"dbPath\":\"/tmp/db\",\"architecture\":\"64-bit\",\"host\":\"localhost\"}}");
+
+		assertThat(event).isPresent();
+		LogEvent logEvent = event.get();
+		assertThat(logEvent.timestamp()).isEqualTo("2022-11-02T10:00:00.000+01:00");
+		assertThat(logEvent.severity()).isEqualTo("I");
+		assertThat(logEvent.component()).isEqualTo("CONTROL");
+		assertThat(logEvent.id()).isEqualTo(LogEvent.MONGODB_STARTING);
+		assertThat(logEvent.context()).isEqualTo("initandlisten");
+		assertThat(logEvent.message()).isEqualTo("MongoDB starting");
+		assertThat(logEvent.intAttribute("pid")).contains(4711);
+		assertThat(logEvent.attribute("dbPath")).contains("/tmp/db");
+	}
+
+	@Test
+	void parseNestedAttributes() {
+		Optional<LogEvent> event = StructuredLog.parse("{\"t\":{\"$date\":\"2022-11-02T10:00:00.000+01:00\"},\"s\":\"E\",  \"c\":\"NETWORK\",  \"id\":23024,   \"ctx\":\"initandlisten\",\"msg\":\"Failed to set up listener\",\"attr\":{\"error\":{\"code\":9001,\"codeName\":\"SocketException\",\"errmsg\":\"Address already in use\"},\"list\":[1,2.5,true,null],\"none\":null}}");
+
+		assertThat(event).isPresent();
+		assertThat(event.get().isError()).isTrue();
+		assertThat(event.get().isFatal()).isFalse();
+		assertThat(event.get().attribute("error").get().toString()).contains("Address already in use");
+		assertThat(event.get().attribute("none")).isEmpty();
+	}
+
+	@Test
+	void textLinesAreNoEvents() {
+		assertThat(StructuredLog.parse("Fri Apr 27 08:08:55 [initandlisten] MongoDB starting : pid=11026 port=12345")).isEmpty();
+		assertThat(StructuredLog.parse("{ broken")).isEmpty();
+		assertThat(StructuredLog.parse("{\"no\":\"log line\"}")).isEmpty();
+	}
+
+	@Test
+	void onlyEnabledForVersionsWithStructuredLog() {
+		List<LogEvent> events = new ArrayList<>();
+		String line = "{\"t\":{\"$date\":\"2022-11-02T10:00:00.000+01:00\"},\"s\":\"W\",\"c\":\"CONTROL\",\"id\":22120,\"ctx\":\"initandlisten\",\"msg\":\"Access control is not enabled for the database\"}";
+
+		StructuredLog.of(Version.of("4.2.23"), events::add).inspect(line);
+		assertThat(events).isEmpty();
+
+		StructuredLog.of(Version.of("6.0.1"), events::add).inspect(line);
+		assertThat(events).hasSize(1);
+		assertThat(events.get(0).isWarning()).isTrue();
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.runtime;
+
+import de.flapdoodle.embed.process.config.TimeoutConfig;
+import de.flapdoodle.embed.process.io.progress.ProgressListener;
+import de.flapdoodle.embed.process.net.DownloadToPath;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ThroughputProgressListenerTest {
+
+	private final AtomicLong now = new AtomicLong(10000);
+	private final List<ProgressMetrics> metrics = new ArrayList<>();
+	private final List<String> console = new ArrayList<>();
+
+	private final ThroughputProgressListener testee = new ThroughputProgressListener(metrics::add, console::add, 1000, now::get);
+
+	@Test
+	void printsAtMostOncePerInterval() {
+		testee.start("download foo");
+		for (int i = 0; i <= 10; i++) {
+			now.addAndGet(100);
+			testee.progress("download foo", i * 10);
+		}
+		testee.done("download foo");
+
+		assertThat(console).containsExactly(
+			"download foo START",
+			"download foo 0%",
+			"download foo 100% eta 0.0s",
+			"download foo DONE in 1.1s"
+		);
+		assertThat(metrics).hasSize(3);
+	}
+
+	@Test
+	void throughputAndEtaFromSize() {
+		testee.start("download foo");
+		testee.info("download foo", "size " + 10 * 1024 * 1024 + " bytes");
+		now.addAndGet(2000);
+		testee.progress("download foo", 20);
+
+		ProgressMetrics measurement = metrics.get(0);
+		assertThat(measurement.phase()).isEqualTo("download");
+		assertThat(measurement.done()).isFalse();
+		assertThat(measurement.percent()).hasValue(20);
+		assertThat(measurement.bytesPerSecond()).hasValue(1024 * 1024);
+		assertThat(measurement.etaMillis()).hasValue(8000);
+		assertThat(console).contains("download foo 20% 2.0MB 1.0MB/s eta 8.0s");
+	}
+
+	@Test
+	void etaFromPercent() {
+		testee.start("extract foo");
+		now.addAndGet(3000);
+		testee.progress("extract foo", 25);
+
+		assertThat(metrics.get(0).etaMillis()).hasValue(9000);
+		assertThat(metrics.get(0).bytes()).isEmpty();
+	}
+
+	@Test
+	void doneReportsDurationOfPhase() {
+		testee.start("hash foo");
+		now.addAndGet(1500);
+		now.addAndGet(500);
+		testee.info("hash foo", "size 3000 bytes");
+		testee.done("hash foo");
+
+		ProgressMetrics last = metrics.get(metrics.size() - 1);
+		assertThat(last.phase()).isEqualTo("hash");
+		assertThat(last.done()).isTrue();
+		assertThat(last.elapsedMillis()).isEqualTo(2000);
+		assertThat(last.bytesPerSecond()).hasValue(1500.0);
+		assertThat(last.etaMillis()).isEmpty();
+		assertThat(console.get(console.size() - 1)).isEqualTo("hash foo DONE 2.9KB 1.5KB/s in 2.0s");
+	}
+
+	@Test
+	void unknownLengthIsReportedAsBytes() {
+		testee.start("download foo");
+		now.addAndGet(1000);
+		testee.info("download foo", "4096 bytes");
+		testee.info("download foo", "something else");
+
+		assertThat(metrics.get(0).bytes()).hasValue(4096);
+		assertThat(metrics.get(0).totalBytes()).isEmpty();
+		assertThat(metrics.get(0).percent()).isEmpty();
+		assertThat(console).containsExactly("download foo START", "download foo 4.0KB 4.0KB/s", "download foo something else");
+	}
+
+	@Test
+	void failedPhaseIsNotDone() {
+		testee.start("extract foo");
+		now.addAndGet(1500);
+		testee.info("extract foo", ThroughputProgressListener.FAILED);
+
+		ProgressMetrics last = metrics.get(metrics.size() - 1);
+		assertThat(last.done()).isFalse();
+		assertThat(last.failed()).isTrue();
+		assertThat(last.elapsedMillis()).isEqualTo(1500);
+		assertThat(console).containsExactly("extract foo START", "extract foo FAILED after 1.5s");
+	}
+
+	@Test
+	void failedDownloadIsNotDone() throws Exception {
+		DownloadToPath failing = (url, destination, proxy, userAgent, timeoutConfig, copyListener) -> {
+			copyListener.downloaded(url, 0, 2048);
+			copyListener.downloaded(url, 1024, 2048);
+			throw new IOException("connection reset");
+		};
+
+		assertThatThrownBy(() -> ThroughputProgressListener.reporting(failing, testee)
+			.download(new URL("http://foo/bar.tgz"), Paths.get("bar.tgz"), Optional.empty(), "test", TimeoutConfig.defaults(), (url, bytes, length) -> {}))
+			.isInstanceOf(IOException.class);
+
+		assertThat(metrics).noneMatch(ProgressMetrics::done);
+		assertThat(metrics.get(metrics.size() - 1).failed()).isTrue();
+	}
+
+	@Test
+	void downloadOfUnknownLengthIsDoneWhenComplete() throws Exception {
+		List<String> events = new ArrayList<>();
+		ProgressListener listener = new ProgressListener() {
+			@Override
+			public void progress(String label, int percent) {
+				events.add(label + " " + percent + "%");
+			}
+
+			@Override
+			public void done(String label) {
+				events.add(label + " done");
+			}
+
+			@Override
+			public void start(String label) {
+				events.add(label + " start");
+			}
+
+			@Override
+			public void info(String label, String message) {
+				events.add(label + " " + message);
+			}
+		};
+		DownloadToPath unknownLength = (url, destination, proxy, userAgent, timeoutConfig, copyListener) -> {
+			copyListener.downloaded(url, 0, -1);
+			copyListener.downloaded(url, 512, -1);
+			copyListener.downloaded(url, 1024, -1);
+		};
+
+		ThroughputProgressListener.reporting(unknownLength, listener)
+			.download(new URL("http://foo/bar.tgz"), Paths.get("bar.tgz"), Optional.empty(), "test", TimeoutConfig.defaults(), (url, bytes, length) -> {});
+
+		assertThat(events).containsExactly(
+			"download http://foo/bar.tgz start",
+			"download http://foo/bar.tgz 512 bytes",
+			"download http://foo/bar.tgz 1024 bytes",
+			"download http://foo/bar.tgz done"
+		);
+	}
+
+	@Test
+	void downloadOfKnownLengthPassesSizeAndPercent() throws Exception {
+		DownloadToPath knownLength = (url, destination, proxy, userAgent, timeoutConfig, copyListener) -> {
+			copyListener.downloaded(url, 0, 2048);
+			now.addAndGet(1000);
+			copyListener.downloaded(url, 1024, 2048);
+			now.addAndGet(1000);
+			copyListener.downloaded(url, 2048, 2048);
+		};
+
+		ThroughputProgressListener.reporting(knownLength, testee)
+			.download(new URL("http://foo/bar.tgz"), Paths.get("bar.tgz"), Optional.empty(), "test", TimeoutConfig.defaults(), (url, bytes, length) -> {});
+
+		assertThat(console).containsExactly(
+			"download http://foo/bar.tgz START",
+			"download http://foo/bar.tgz 50% 1.0KB 1.0KB/s eta 1.0s",
+			"download http://foo/bar.tgz 100% 2.0KB 1.0KB/s eta 0.0s",
+			"download http://foo/bar.tgz DONE 2.0KB 1.0KB/s in 2.0s"
+		);
+	}
+}
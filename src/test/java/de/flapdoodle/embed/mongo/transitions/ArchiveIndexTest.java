@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
+import de.flapdoodle.embed.process.config.store.FileSet;
+import de.flapdoodle.embed.process.config.store.FileType;
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArchiveIndexTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void extractOnlyMatchingEntriesOfTgz() throws IOException {
+		Path archive = tempDir.resolve("archive.tgz");
+		try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(Files.newOutputStream(archive)))) {
+			tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
+			add(tar, new TarArchiveEntry("mongodb/bin/"), null);
+			addFile(tar, "mongodb/bin/mongod", "mongod");
+			addFile(tar, "mongodb/bin/" + longName() + "/mongos", "mongos");
+			addFile(tar, "mongodb/bin/mongodump", "mongodump");
+		}
+
+		assertExtraction(archive, ArchiveType.TGZ);
+	}
+
+	@Test
+	public void extractOnlyMatchingEntriesOfZip() throws IOException {
+		Path archive = tempDir.resolve("archive.zip");
+		try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(Files.newOutputStream(archive))) {
+			add(zip, new ZipArchiveEntry("mongodb/bin/"), null);
+			addFile(zip, "mongodb/bin/mongod", "mongod");
+			addFile(zip, "mongodb/bin/" + longName() + "/mongos", "mongos");
+			addFile(zip, "mongodb/bin/mongodump", "mongodump");
+		}
+
+		assertExtraction(archive, ArchiveType.ZIP);
+	}
+
+	@Test
+	public void changedArchiveIsIndexedAgain() throws IOException {
+		Path archive = tempDir.resolve("archive.tgz");
+		writeTgz(archive, "mongodb/bin/mongod");
+		assertThat(names(ArchiveIndex.of(archive, ArchiveType.TGZ))).containsExactly("mongodb/bin/mongod");
+
+		writeTgz(archive, "mongodb/bin/mongod", "mongodb/bin/mongos");
+		Files.setLastModifiedTime(archive, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+		assertThat(names(ArchiveIndex.of(archive, ArchiveType.TGZ))).containsExactly("mongodb/bin/mongod", "mongodb/bin/mongos");
+	}
+
+	@Test
+	public void firstExtractionOfTgzIndexesAllEntries() throws IOException {
+		Path archive = tempDir.resolve("archive.tgz");
+		writeTgz(archive, "mongodb/bin/mongod", "mongodb/bin/mongos", "mongodb/bin/mongodump");
+
+		ExtractedFileSet mongod = ArchiveIndex.extractWithIndex(archive, ArchiveType.TGZ, Files.createDirectory(tempDir.resolve("mongod")), executable("mongod"));
+		assertThat(mongod.executable()).hasContent("mongodb/bin/mongod");
+
+		assertThat(ArchiveIndex.indexFile(archive)).exists();
+		assertThat(names(ArchiveIndex.of(archive, ArchiveType.TGZ)))
+			.containsExactly("mongodb/bin/mongod", "mongodb/bin/mongos", "mongodb/bin/mongodump");
+
+		ExtractedFileSet mongodump = ArchiveIndex.extractWithIndex(archive, ArchiveType.TGZ, Files.createDirectory(tempDir.resolve("mongodump")), executable("mongodump"));
+		assertThat(mongodump.executable()).hasContent("mongodb/bin/mongodump");
+	}
+
+	private void assertExtraction(Path archive, ArchiveType archiveType) throws IOException {
+		ExtractedFileSet mongod = ArchiveIndex.extractWithIndex(archive, archiveType, Files.createDirectory(tempDir.resolve("mongod")), executable("mongod"));
+		assertThat(mongod.executable()).hasContent("mongod");
+		assertThat(mongod.executable().toFile().canExecute()).isTrue();
+		assertThat(ArchiveIndex.indexFile(archive)).exists();
+		try (Stream<Path> files = Files.list(tempDir.resolve("mongod"))) {
+			assertThat(files).containsExactly(mongod.executable());
+		}
+
+		ExtractedFileSet tools = ArchiveIndex.extractWithIndex(archive, archiveType, Files.createDirectory(tempDir.resolve("tools")), FileSet.builder()
+			.addEntry(FileType.Executable, "mongodump")
+			.addEntry(FileType.Library, "mongos")
+			.build());
+		assertThat(tools.executable()).hasContent("mongodump");
+		assertThat(tools.libraryFiles()).hasSize(1);
+		assertThat(tools.libraryFiles().iterator().next()).hasContent("mongos");
+	}
+
+	private static FileSet executable(String name) {
+		return FileSet.builder().addEntry(FileType.Executable, name).build();
+	}
+
+	private static List<String> names(ArchiveIndex index) {
+		return index.entries().stream().map(ArchiveIndex.Entry::name).collect(Collectors.toList());
+	}
+
+	private static void writeTgz(Path archive, String... names) throws IOException {
+		try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(Files.newOutputStream(archive)))) {
+			for (String name : names) {
+				addFile(tar, name, name);
+			}
+		}
+	}
+
+	private static String longName() {
+		StringBuilder ret = new StringBuilder();
+		for (int i = 0; i < 120; i++) {
+			ret.append('x');
+		}
+		return ret.toString();
+	}
+
+	private static void addFile(ArchiveOutputStream out, String name, String content) throws IOException {
+		byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		if (out instanceof TarArchiveOutputStream) {
+			TarArchiveEntry entry = new TarArchiveEntry(name);
+			entry.setSize(bytes.length);
+			add(out, entry, bytes);
+		} else {
+			add(out, new ZipArchiveEntry(name), bytes);
+		}
+	}
+
+	private static void add(ArchiveOutputStream out, ArchiveEntry entry, byte[] content) throws IOException {
+		out.putArchiveEntry(entry);
+		if (content != null) {
+			out.write(content);
+		}
+		out.closeArchiveEntry();
+	}
+}
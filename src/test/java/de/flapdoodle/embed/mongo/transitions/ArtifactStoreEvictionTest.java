@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.config.EvictionConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ArtifactStoreEvictionTest {
+
+	private static final long HOUR = 60L * 60 * 1000;
+
+	private final AtomicLong now = new AtomicLong(1000 * HOUR);
+
+	@Test
+	public void leastRecentlyUsedEntriesAreRemovedUntilStoreIsSmallEnough(@TempDir Path baseDir) throws Exception {
+		ArtifactStoreEviction eviction = new ArtifactStoreEviction(baseDir, EvictionConfig.builder()
+			.enabled(true)
+			.maxSizeInBytes(250)
+			.build(), now::get);
+
+		Path archive = entry(baseDir.resolve("archives").resolve("host").resolve("hash").resolve("archive.tgz"), 100);
+		Path oldFileSet = entry(baseDir.resolve("fileSets").resolve("old").resolve("mongod"), 100);
+		Path newFileSet = entry(baseDir.resolve("fileSets").resolve("new").resolve("mongod"), 100);
+
+		markUsed(eviction, archive.getParent());
+		now.addAndGet(2 * HOUR);
+		markUsed(eviction, oldFileSet.getParent());
+		now.addAndGet(2 * HOUR);
+		markUsed(eviction, newFileSet.getParent());
+		now.addAndGet(2 * HOUR);
+
+		assertThat(eviction.evict()).containsExactly(archive.getParent());
+
+		assertThat(archive).doesNotExist();
+		assertThat(oldFileSet).exists();
+		assertThat(newFileSet).exists();
+	}
+
+	@Test
+	public void entriesInUseOrRecentlyUsedAreNeverRemoved(@TempDir Path baseDir) throws Exception {
+		ArtifactStoreEviction eviction = new ArtifactStoreEviction(baseDir, EvictionConfig.builder()
+			.enabled(true)
+			.maxSizeInBytes(0)
+			.build(), now::get);
+
+		Path inUse = entry(baseDir.resolve("fileSets").resolve("inUse").resolve("mongod"), 100);
+		Path unused = entry(baseDir.resolve("fileSets").resolve("unused").resolve("mongod"), 100);
+
+		markUsed(eviction, unused.getParent());
+		try (AutoCloseable ignore = eviction.markUsed(Collections.singletonList(inUse.getParent()))) {
+			assertThat(eviction.evict()).isEmpty();
+
+			now.addAndGet(2 * HOUR);
+			assertThat(eviction.evict()).containsExactly(unused.getParent());
+			assertThat(inUse).exists();
+		}
+
+		assertThat(eviction.evict()).containsExactly(inUse.getParent());
+	}
+
+	@Test
+	public void expiredEntriesAreRemoved(@TempDir Path baseDir) throws Exception {
+		ArtifactStoreEviction eviction = new ArtifactStoreEviction(baseDir, EvictionConfig.builder()
+			.enabled(true)
+			.maxAgeInMillis(24 * HOUR)
+			.build(), now::get);
+
+		Path expired = entry(baseDir.resolve("fileSets").resolve("expired").resolve("mongod"), 10);
+		markUsed(eviction, expired.getParent());
+		now.addAndGet(12 * HOUR);
+		Path fresh = entry(baseDir.resolve("fileSets").resolve("fresh").resolve("mongod"), 10);
+		markUsed(eviction, fresh.getParent());
+		now.addAndGet(13 * HOUR);
+
+		assertThat(eviction.evict()).containsExactly(expired.getParent());
+		assertThat(fresh).exists();
+	}
+
+	@Test
+	public void entryOfPathInsideStore(@TempDir Path baseDir) {
+		ArtifactStoreEviction eviction = new ArtifactStoreEviction(baseDir, EvictionConfig.enabledWithDefaults(), now::get);
+
+		assertThat(eviction.entryOf(baseDir.resolve("fileSets").resolve("hash").resolve("bin").resolve("mongod")))
+			.isEqualTo(baseDir.resolve("fileSets").resolve("hash"));
+		assertThat(eviction.entryOf(baseDir.resolve("archives").resolve("host").resolve("hash").resolve("archive.tgz")))
+			.isEqualTo(baseDir.resolve("archives").resolve("host").resolve("hash"));
+		assertThat(eviction.entryOf(baseDir.getParent())).isNull();
+	}
+
+	@Test
+	public void disabledByDefault(@TempDir Path baseDir) throws Exception {
+		ArtifactStoreEviction eviction = new ArtifactStoreEviction(baseDir, EvictionConfig.defaults(), now::get);
+		entry(baseDir.resolve("fileSets").resolve("any").resolve("mongod"), 10);
+
+		assertThat(EvictionConfig.defaults().enabled()).isFalse();
+		assertThat(eviction.evict()).isEmpty();
+		assertThat(baseDir.resolve("usage.index")).doesNotExist();
+	}
+
+	@Test
+	public void entriesWithoutUsageRecordCountAsUsedNow(@TempDir Path baseDir) throws Exception {
+		ArtifactStoreEviction eviction = new ArtifactStoreEviction(baseDir, EvictionConfig.builder()
+			.enabled(true)
+			.maxAgeInMillis(24 * HOUR)
+			.build(), now::get);
+
+		Path existing = entry(baseDir.resolve("fileSets").resolve("existing").resolve("mongod"), 10);
+		Files.setLastModifiedTime(existing.getParent(), FileTime.fromMillis(0));
+
+		assertThat(eviction.evict()).isEmpty();
+		now.addAndGet(25 * HOUR);
+		assertThat(eviction.evict()).containsExactly(existing.getParent());
+	}
+
+	@Test
+	public void hardLinkedFilesAreCountedOnce(@TempDir Path baseDir) throws Exception {
+		ArtifactStoreEviction eviction = new ArtifactStoreEviction(baseDir, EvictionConfig.builder()
+			.enabled(true)
+			.maxSizeInBytes(150)
+			.build(), now::get);
+
+		Path blob = entry(CachedHashExtractedFileSetStore.blobsPath(baseDir.resolve("fileSets")).resolve("ab").resolve("abcd"), 100);
+		Path one = link(baseDir.resolve("fileSets").resolve("one").resolve("mongod"), blob);
+		Path two = link(baseDir.resolve("fileSets").resolve("two").resolve("mongod"), blob);
+		assumeTrue(CachedHashExtractedFileSetStore.linkCount(blob) == 3, "hard links not supported");
+
+		markUsed(eviction, one.getParent());
+		markUsed(eviction, two.getParent());
+		now.addAndGet(2 * HOUR);
+		assertThat(eviction.evict()).isEmpty();
+
+		Path other = entry(baseDir.resolve("fileSets").resolve("other").resolve("mongod"), 100);
+		markUsed(eviction, other.getParent());
+		now.addAndGet(2 * HOUR);
+		// both links must go to free the space of the blob
+		assertThat(eviction.evict()).containsExactly(one.getParent(), two.getParent());
+		assertThat(blob).doesNotExist();
+		assertThat(other).exists();
+	}
+
+	@Test
+	public void scanInBackgroundOnlyOncePerKeepRecentlyUsedTime(@TempDir Path baseDir) throws Exception {
+		ArtifactStoreEviction eviction = new ArtifactStoreEviction(baseDir, EvictionConfig.builder()
+			.enabled(true)
+			.maxAgeInMillis(HOUR)
+			.keepRecentlyUsedInMillis(HOUR)
+			.build(), now::get);
+
+		Path first = entry(baseDir.resolve("fileSets").resolve("first").resolve("mongod"), 10);
+		markUsed(eviction, first.getParent());
+		now.addAndGet(2 * HOUR);
+		assertThat(eviction.evictIfDue()).containsExactly(first.getParent());
+
+		Path second = entry(baseDir.resolve("fileSets").resolve("second").resolve("mongod"), 10);
+		markUsed(eviction, second.getParent());
+		now.addAndGet(HOUR / 2);
+		assertThat(eviction.evictIfDue()).isEmpty();
+		now.addAndGet(2 * HOUR);
+		assertThat(eviction.evictIfDue()).containsExactly(second.getParent());
+	}
+
+	@Test
+	public void abandonedPartialDownloadsAreRemoved(@TempDir Path baseDir) throws Exception {
+		ArtifactStoreEviction eviction = new ArtifactStoreEviction(baseDir, EvictionConfig.builder()
+			.enabled(true)
+			.maxAgeInMillis(24 * HOUR)
+			.build(), now::get);
+
+		Path part = entry(baseDir.resolve("archives").resolve(".partial").resolve("uuid").resolve("part-0"), 10);
+
+		assertThat(eviction.evict()).isEmpty();
+		now.addAndGet(25 * HOUR);
+		assertThat(eviction.evict()).containsExactly(part.getParent());
+	}
+
+	private static void markUsed(ArtifactStoreEviction eviction, Path entry) throws Exception {
+		eviction.markUsed(Collections.singletonList(entry)).close();
+	}
+
+	private static Path link(Path link, Path target) throws Exception {
+		Files.createDirectories(link.getParent());
+		return Files.createLink(link, target);
+	}
+
+	private static Path entry(Path file, int size) throws Exception {
+		Files.createDirectories(file.getParent());
+		return Files.write(file, new byte[size]);
+	}
+}
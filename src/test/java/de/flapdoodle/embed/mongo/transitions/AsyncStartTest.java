@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.reverse.State;
+import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.TransitionWalker;
+import de.flapdoodle.reverse.Transitions;
+import de.flapdoodle.reverse.transitions.Start;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncStartTest {
+
+	@Test
+	public void completesWithReachedState() throws Exception {
+		AtomicBoolean closed = new AtomicBoolean();
+		CompletableFuture<TransitionWalker.ReachedState<String>> future = AsyncStart.start(start("started", closed), Runnable::run);
+
+		try (TransitionWalker.ReachedState<String> reachedState = future.get()) {
+			assertThat(reachedState.current()).isEqualTo("started");
+		}
+		assertThat(closed).isTrue();
+	}
+
+	@Test
+	public void failureIsPassedToFuture() {
+		CompletableFuture<TransitionWalker.ReachedState<String>> future = AsyncStart.start(() -> {
+			throw new IllegalStateException("could not start");
+		}, Runnable::run);
+
+		assertThatThrownBy(future::get)
+			.isInstanceOf(ExecutionException.class)
+			.hasCauseInstanceOf(IllegalStateException.class)
+			.hasRootCauseMessage("could not start");
+	}
+
+	@Test
+	public void cancelledBeforeExecutionDoesNotStart() {
+		List<Runnable> queued = new ArrayList<>();
+		AtomicInteger started = new AtomicInteger();
+		AtomicBoolean closed = new AtomicBoolean();
+
+		CompletableFuture<TransitionWalker.ReachedState<String>> future = AsyncStart.start(() -> {
+			started.incrementAndGet();
+			return start("started", closed).get();
+		}, queued::add);
+
+		future.cancel(true);
+		queued.forEach(Runnable::run);
+
+		assertThat(started).hasValue(0);
+	}
+
+	@Test
+	public void cancelledWhileStartingClosesReachedState() {
+		List<Runnable> queued = new ArrayList<>();
+		AtomicBoolean closed = new AtomicBoolean();
+		AtomicReference<CompletableFuture<?>> result = new AtomicReference<>();
+
+		CompletableFuture<TransitionWalker.ReachedState<String>> future = AsyncStart.start(() -> {
+			result.get().cancel(true);
+			return start("started", closed).get();
+		}, queued::add);
+		result.set(future);
+		queued.forEach(Runnable::run);
+
+		assertThat(future).isCancelled();
+		assertThat(closed).isTrue();
+	}
+
+	private static Supplier<TransitionWalker.ReachedState<String>> start(String value, AtomicBoolean closed) {
+		return () -> Transitions.from(Start.to(String.class).with(() -> State.of(value, it -> closed.set(true))))
+			.walker()
+			.initState(StateID.of(String.class));
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AtomicDownloadCacheTest {
+
+	@Test
+	public void storedArchiveIsFoundAndNoPartialFileIsLeft(@TempDir Path tempDir) throws Exception {
+		AtomicDownloadCache cache = new AtomicDownloadCache(tempDir.resolve("archives"));
+		URL url = new URL("https://fastdl.mongodb.org/linux/mongodb-linux-x86_64-6.0.1.tgz");
+		Path downloaded = Files.write(tempDir.resolve("download"), "archive content".getBytes(StandardCharsets.UTF_8));
+
+		assertThat(cache.archiveFor(url, ArchiveType.TGZ)).isEmpty();
+
+		Path stored = cache.store(url, ArchiveType.TGZ, downloaded);
+
+		assertThat(cache.archiveFor(url, ArchiveType.TGZ)).isEqualTo(Optional.of(stored));
+		assertThat(stored).hasContent("archive content");
+		try (Stream<Path> files = Files.list(stored.getParent())) {
+			assertThat(files).containsExactly(stored);
+		}
+	}
+}
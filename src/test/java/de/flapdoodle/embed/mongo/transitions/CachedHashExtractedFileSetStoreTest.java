@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
+import de.flapdoodle.embed.process.config.store.FileSet;
+import de.flapdoodle.embed.process.config.store.FileType;
+import de.flapdoodle.embed.process.store.ContentHashExtractedFileSetStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CachedHashExtractedFileSetStoreTest {
+
+	private final FileSet fileSet = FileSet.builder()
+		.addEntry(FileType.Executable, "mongod")
+		.addEntry(FileType.Library, "lib.so")
+		.build();
+
+	@Test
+	public void fileSetStoredByContentHashStoreIsFound(@TempDir Path tempDir) throws Exception {
+		Path archive = Files.write(tempDir.resolve("archive.tgz"), "archive content".getBytes(StandardCharsets.UTF_8));
+		Path fileSets = tempDir.resolve("fileSets");
+
+		new ContentHashExtractedFileSetStore(fileSets).store(archive, fileSet, extracted(tempDir.resolve("extracted")));
+
+		Optional<ExtractedFileSet> found = new CachedHashExtractedFileSetStore(fileSets).extractedFileSet(archive, fileSet);
+		assertThat(found).isPresent();
+		assertThat(found.get().executable()).hasContent("executable");
+		assertThat(found.get().libraryFiles()).hasSize(1);
+	}
+
+	@Test
+	public void hashIsOnlyComputedIfArchiveChanged(@TempDir Path tempDir) throws Exception {
+		Path archive = Files.write(tempDir.resolve("archive.tgz"), "archive content".getBytes(StandardCharsets.UTF_8));
+		Path fileSets = tempDir.resolve("fileSets");
+		CachedHashExtractedFileSetStore store = new CachedHashExtractedFileSetStore(fileSets);
+
+		assertThat(store.extractedFileSet(archive, fileSet)).isEmpty();
+		ExtractedFileSet stored = store.store(archive, fileSet, extracted(tempDir.resolve("extracted")));
+
+		assertThat(store.extractedFileSet(archive, fileSet)).isEqualTo(Optional.of(stored));
+		assertThat(hashFiles(fileSets)).isEqualTo(1);
+
+		Files.write(archive, "changed archive content".getBytes(StandardCharsets.UTF_8));
+
+		assertThat(store.extractedFileSet(archive, fileSet)).isEmpty();
+		assertThat(hashFiles(fileSets)).isEqualTo(2);
+	}
+
+	@Test
+	public void sameFilesOfDifferentArchivesAreLinkedToOneBlob(@TempDir Path tempDir) throws Exception {
+		Path fileSets = tempDir.resolve("fileSets");
+		CachedHashExtractedFileSetStore store = new CachedHashExtractedFileSetStore(fileSets);
+		Path archive = Files.write(tempDir.resolve("archive.tgz"), "archive content".getBytes(StandardCharsets.UTF_8));
+		Path otherArchive = Files.write(tempDir.resolve("other.tgz"), "other archive content".getBytes(StandardCharsets.UTF_8));
+
+		ExtractedFileSet first = store.store(archive, fileSet, extracted(tempDir.resolve("extracted")));
+		assumeTrue(CachedHashExtractedFileSetStore.linkCount(first.executable()) == 2, "hard links not supported");
+		ExtractedFileSet second = store.store(otherArchive, fileSet, extracted(tempDir.resolve("otherExtracted")));
+
+		assertThat(Files.isSameFile(first.executable(), second.executable())).isTrue();
+		assertThat(CachedHashExtractedFileSetStore.linkCount(first.executable())).isEqualTo(3);
+
+		de.flapdoodle.embed.process.io.Files.deleteAll(first.baseDir());
+		assertThat(CachedHashExtractedFileSetStore.removeUnusedBlobs(fileSets)).isEqualTo(0);
+
+		de.flapdoodle.embed.process.io.Files.deleteAll(second.baseDir());
+		assertThat(CachedHashExtractedFileSetStore.removeUnusedBlobs(fileSets)).isEqualTo(2);
+	}
+
+	private static long hashFiles(Path fileSets) throws Exception {
+		try (Stream<Path> files = Files.list(fileSets.resolve("contentHashes"))) {
+			return files.count();
+		}
+	}
+
+	private static ExtractedFileSet extracted(Path dir) throws Exception {
+		Files.createDirectories(dir);
+		return ExtractedFileSet.builder(dir)
+			.executable(Files.write(dir.resolve("mongod"), "executable".getBytes(StandardCharsets.UTF_8)))
+			.addLibraryFiles(Files.write(dir.resolve("lib.so"), "library".getBytes(StandardCharsets.UTF_8)))
+			.build();
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.config.StopConfig;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClusterShutdownTest {
+
+	@Test
+	public void stopAllProcessesBeforeReachedStateIsClosed() {
+		try (TransitionWalker.ReachedState<RunningMongodProcess> one = Mongod.instance().start(Version.Main.PRODUCTION)) {
+			try (TransitionWalker.ReachedState<RunningMongodProcess> two = Mongod.instance().start(Version.Main.PRODUCTION)) {
+
+				ClusterShutdown.builder()
+					.addShards(one.current())
+					.addConfigServers(two.current())
+					.build()
+					.stopAll();
+
+				assertThat(one.current().isAlive()).isFalse();
+				assertThat(two.current().isAlive()).isFalse();
+			}
+		}
+	}
+
+	@Test
+	public void stopRoutersThenShardsThenConfigServers() {
+		List<String> events = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch bothShardsStopping = new CountDownLatch(2);
+
+		ClusterShutdown.builder()
+			.addRouters(new StubMongos("router", events))
+			.addShards(new StubMongod("shard-1", events, bothShardsStopping), new StubMongod("shard-2", events, bothShardsStopping))
+			.addConfigServers(new StubMongod("config", events, new CountDownLatch(0)))
+			.build()
+			.stopAll();
+
+		assertThat(events).hasSize(8);
+		assertThat(events.subList(0, 2)).containsExactly("start router", "stop router");
+		assertThat(events.subList(2, 6)).containsExactlyInAnyOrder("start shard-1", "start shard-2", "stop shard-1", "stop shard-2");
+		assertThat(events.subList(2, 4)).containsExactlyInAnyOrder("start shard-1", "start shard-2");
+		assertThat(events.subList(6, 8)).containsExactly("start config", "stop config");
+	}
+
+	@Test
+	public void failuresOfOneStageDoNotSkipTheNextStage() {
+		List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+		assertThatThrownBy(() -> ClusterShutdown.builder()
+			.addShards(new StubMongod("shard", events, new CountDownLatch(0)) {
+				@Override
+				public synchronized int stop() {
+					throw new IllegalStateException("failed");
+				}
+			})
+			.addConfigServers(new StubMongod("config", events, new CountDownLatch(0)))
+			.build()
+			.stopAll())
+			.hasMessage("could not stop 1 process(es)");
+
+		assertThat(events).containsExactly("start config", "stop config");
+	}
+
+	private static int stop(String name, List<String> events, CountDownLatch latch) {
+		events.add("start " + name);
+		latch.countDown();
+		try {
+			// shards of the same stage must be stopped in parallel
+			assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+			Thread.sleep(20);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		events.add("stop " + name);
+		return 0;
+	}
+
+	private static class StubMongod extends RunningMongodProcess {
+		private final String name;
+		private final List<String> events;
+		private final CountDownLatch latch;
+
+		StubMongod(String name, List<String> events, CountDownLatch latch) {
+			super(null, null, 0, () -> {}, null, null, Net.of("localhost", 27017, false), null, -1, StopConfig.defaults());
+			this.name = name;
+			this.events = events;
+			this.latch = latch;
+		}
+
+		@Override
+		public synchronized int stop() {
+			return ClusterShutdownTest.stop(name, events, latch);
+		}
+	}
+
+	private static class StubMongos extends RunningMongosProcess {
+		private final String name;
+		private final List<String> events;
+
+		StubMongos(String name, List<String> events) {
+			super(null, null, 0, () -> {}, null, null, Net.of("localhost", 27017, false), null, -1, StopConfig.defaults());
+			this.name = name;
+			this.events = events;
+		}
+
+		@Override
+		public synchronized int stop() {
+			return ClusterShutdownTest.stop(name, events, new CountDownLatch(0));
+		}
+	}
+}
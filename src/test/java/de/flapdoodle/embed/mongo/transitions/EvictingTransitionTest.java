@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.config.EvictionConfig;
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
+import de.flapdoodle.embed.process.config.store.FileSet;
+import de.flapdoodle.embed.process.config.store.FileType;
+import de.flapdoodle.embed.process.config.store.Package;
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import de.flapdoodle.embed.process.io.directories.PersistentDir;
+import de.flapdoodle.embed.process.store.DownloadCache;
+import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.TransitionWalker;
+import de.flapdoodle.reverse.Transitions;
+import de.flapdoodle.reverse.transitions.Start;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EvictingTransitionTest {
+
+	private static final long HOUR = 60 * 60 * 1000L;
+
+	@Test
+	public void fileSetEvictedBetweenLookupAndMarkIsExtractedAgain(@TempDir Path baseDir) {
+		EvictionConfig config = EvictionConfig.builder()
+			.enabled(true)
+			.maxAgeInMillis(HOUR)
+			.keepRecentlyUsedInMillis(0)
+			.build();
+		Path executable = baseDir.resolve("fileSets").resolve("abcd").resolve("mongod");
+		AtomicInteger lookups = new AtomicInteger();
+
+		Start<ExtractedFileSet> lookup = Start.to(ExtractedFileSet.class).providedBy(() -> {
+			write(executable);
+			if (lookups.incrementAndGet() == 1) {
+				// eviction of another JVM, right after the file set was found
+				AtomicLong now = new AtomicLong(System.currentTimeMillis() - 10 * HOUR);
+				ArtifactStoreEviction otherJvm = new ArtifactStoreEviction(baseDir, config, now::get);
+				otherJvm.evict();
+				now.addAndGet(2 * HOUR);
+				assertThat(otherJvm.evict()).containsExactly(executable.getParent());
+			}
+			return ExtractedFileSet.builder(executable.getParent())
+				.executable(executable)
+				.build();
+		});
+
+		try (TransitionWalker.ReachedState<ExtractedFileSet> fileSet = Transitions.from(
+				Start.to(PersistentDir.class).initializedWith(PersistentDir.of(baseDir)),
+				Start.to(Package.class).initializedWith(Package.of(ArchiveType.TGZ, FileSet.builder().addEntry(FileType.Executable, "mongod").build(), "http://localhost/archive.tgz")),
+				Start.to(DownloadCache.class).initializedWith(new AtomicDownloadCache(baseDir.resolve("archives"))),
+				Start.to(EvictionConfig.class).initializedWith(config),
+				EvictingTransition.of(lookup))
+			.walker()
+			.initState(StateID.of(ExtractedFileSet.class))) {
+
+			assertThat(lookups).hasValue(2);
+			assertThat(fileSet.current().executable()).exists();
+		}
+	}
+
+	private static void write(Path file) {
+		try {
+			Files.createDirectories(file.getParent());
+			Files.write(file, new byte[] { 1, 2, 3 });
+		}
+		catch (IOException iox) {
+			throw new UncheckedIOException(iox);
+		}
+	}
+}
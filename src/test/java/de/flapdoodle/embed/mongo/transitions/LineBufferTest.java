@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LineBufferTest {
+
+	@Test
+	void keepLastLines() {
+		LineBuffer testee = new LineBuffer(3, 1000);
+		for (int i = 0; i < 10; i++) {
+			testee.add("line " + i);
+		}
+		assertThat(testee.toString()).isEqualTo("... (7 lines dropped)\nline 7\nline 8\nline 9\n");
+	}
+
+	@Test
+	void dropLinesIfTooLong() {
+		LineBuffer testee = new LineBuffer(10, 10);
+		testee.add("12345");
+		testee.add("678");
+		testee.add("abcd");
+		assertThat(testee.toString()).isEqualTo("... (1 lines dropped)\n678\nabcd\n");
+	}
+
+	@Test
+	void truncateLineIfLongerThanLimit() {
+		LineBuffer testee = new LineBuffer(10, 4);
+		testee.add("1234567");
+		assertThat(testee.toString()).isEqualTo("4567\n");
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.config.StartupMessages;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogLineMatcherTest {
+
+	@Test
+	void requiredLiteralOfDefaultMessages() {
+		assertThat(LogLineMatcher.requiredLiteral("aiting for connections")).contains("aiting for connections");
+		assertThat(LogLineMatcher.requiredLiteral("ERROR:(?<error>.*)")).contains("ERROR:");
+		assertThat(LogLineMatcher.requiredLiteral("(?<error>Error parsing command line:.*)")).contains("Error parsing command line:");
+		assertThat(LogLineMatcher.requiredLiteral("(?<error>SSLEAY32.dll was not found)")).contains("dll was not found");
+	}
+
+	@Test
+	void requiredLiteralIsOnlyExtractedIfSafe() {
+		assertThat(LogLineMatcher.requiredLiteral("foo|bar")).isEmpty();
+		assertThat(LogLineMatcher.requiredLiteral("(?i)foo")).isEmpty();
+		assertThat(LogLineMatcher.requiredLiteral("ab(?<error>cdefgh)?")).contains("ab");
+		assertThat(LogLineMatcher.requiredLiteral("abcdef?gh")).contains("abcde");
+		assertThat(LogLineMatcher.requiredLiteral("abc{2}de[xyzuvw]")).contains("ab");
+		assertThat(LogLineMatcher.requiredLiteral("\\d+ at port \\.\\d+")).contains(" at port .");
+		assertThat(LogLineMatcher.requiredLiteral(".*")).isEmpty();
+	}
+
+	@Test
+	void customFailureMessage() {
+		LogLineMatcher testee = LogLineMatcher.of(StartupMessages.builder()
+			.from(StartupMessages.defaults())
+			.addFailureMessages("(?<error>my own (failure|problem))")
+			.build());
+
+		assertThat(testee.match("some output")).isNull();
+		assertThat(testee.match("Waiting for connections").isSuccess()).isTrue();
+		assertThat(testee.match("--> my own problem <--").errorMessage()).isEqualTo("my own problem");
+		assertThat(testee.match("ERROR: something").errorMessage()).isEqualTo(" something");
+	}
+
+	@Test
+	void ahoCorasickFindsAllLiterals() {
+		AhoCorasick testee = new AhoCorasick(Arrays.asList("he", "she", "his", "hers"));
+
+		assertThat(testee.matches("ushers")).isEqualTo(0b1011L);
+		assertThat(testee.matches("this")).isEqualTo(0b0100L);
+		assertThat(testee.matches("nothing")).isEqualTo(0L);
+	}
+}
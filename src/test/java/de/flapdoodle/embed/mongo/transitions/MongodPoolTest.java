@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoDatabase;
+import de.flapdoodle.embed.mongo.config.PoolConfig;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.flapdoodle.embed.mongo.ServerAddressMapping.serverAddress;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MongodPoolTest {
+
+	@Test
+	public void releasedInstanceIsResetAndReused() {
+		PoolConfig config = PoolConfig.builder()
+			.minSize(1)
+			.maxSize(1)
+			.build();
+
+		try (MongodPool pool = MongodPool.start(Mongod.instance(), Version.Main.PRODUCTION, config)) {
+			RunningMongodProcess first;
+			MongodPool.Lease firstLease;
+			try (MongodPool.Lease lease = pool.lease()) {
+				firstLease = lease;
+				first = lease.current();
+				try (MongoClient mongo = new MongoClient(serverAddress(lease.getServerAddress()))) {
+					mongo.getDatabase("test").getCollection("testCol").insertOne(new Document("foo", "bar"));
+				}
+			}
+
+			try (MongodPool.Lease lease = pool.lease()) {
+				assertThat(lease.current()).isSameAs(first);
+				firstLease.close();
+				assertThat(pool.idleSize()).isEqualTo(0);
+				try (MongoClient mongo = new MongoClient(serverAddress(lease.getServerAddress()))) {
+					List<String> names = mongo.listDatabaseNames().into(new ArrayList<>());
+					assertThat(names).doesNotContain("test");
+				}
+			}
+		}
+	}
+
+	@Test
+	public void poolGrowsUpToMaxSize() {
+		PoolConfig config = PoolConfig.builder()
+			.minSize(0)
+			.maxSize(2)
+			.leaseTimeoutInMillis(100)
+			.build();
+
+		try (MongodPool pool = MongodPool.start(Mongod.instance(), Version.Main.PRODUCTION, config)) {
+			assertThat(pool.size()).isEqualTo(0);
+			try (MongodPool.Lease one = pool.lease(); MongodPool.Lease two = pool.lease()) {
+				assertThat(pool.size()).isEqualTo(2);
+				assertThat(one.getServerAddress()).isNotEqualTo(two.getServerAddress());
+			}
+			assertThat(pool.idleSize()).isEqualTo(2);
+		}
+	}
+}
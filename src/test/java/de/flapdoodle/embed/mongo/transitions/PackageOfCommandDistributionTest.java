@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.mongo.packageresolver.Command;
+import de.flapdoodle.embed.mongo.types.DistributionBaseUrl;
+import de.flapdoodle.embed.process.config.store.FileSet;
+import de.flapdoodle.embed.process.config.store.FileType;
+import de.flapdoodle.embed.process.config.store.Package;
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.distribution.PackageResolver;
+import de.flapdoodle.embed.process.distribution.Version;
+import de.flapdoodle.os.CommonArchitecture;
+import de.flapdoodle.os.CommonOS;
+import de.flapdoodle.os.ImmutablePlatform;
+import de.flapdoodle.os.Platform;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PackageOfCommandDistributionTest {
+
+	private final Distribution distribution = Distribution.of(Version.of("6.0.1"), Platform.detect(CommonOS.list()));
+	private final AtomicInteger resolved = new AtomicInteger();
+	private final Function<Command, PackageResolver> resolverFactory = command -> distribution -> {
+		resolved.incrementAndGet();
+		return Package.builder()
+			.archiveType(ArchiveType.TGZ)
+			.fileSet(FileSet.builder().addEntry(FileType.Executable, command.commandName()).build())
+			.url("/" + command.commandName() + "-" + distribution.version().asInDownloadPath() + ".tgz")
+			.build();
+	};
+	private final PackageOfCommandDistribution testee = PackageOfCommandDistribution.builder()
+		.legacyPackageResolverFactory(resolverFactory)
+		.build();
+
+	@Test
+	public void samePackageIsResolvedOnlyOnce() {
+		Package first = packageOf(Command.MongoD, "https://first");
+		Package second = packageOf(Command.MongoD, "https://first");
+
+		assertThat(first.url()).isEqualTo("https://first/mongod-6.0.1.tgz");
+		assertThat(second).isEqualTo(first);
+		assertThat(resolved).hasValue(1);
+	}
+
+	@Test
+	public void commandAndBaseUrlArePartOfTheKey() {
+		assertThat(packageOf(Command.MongoD, "https://first").url()).isEqualTo("https://first/mongod-6.0.1.tgz");
+		assertThat(packageOf(Command.MongoS, "https://first").url()).isEqualTo("https://first/mongos-6.0.1.tgz");
+		assertThat(packageOf(Command.MongoD, "https://second").url()).isEqualTo("https://second/mongod-6.0.1.tgz");
+		assertThat(resolved).hasValue(3);
+	}
+
+	@Test
+	public void instancesWithSameFactoryShareResolvedPackages() {
+		packageOf(Command.MongoD, "https://first");
+		PackageOfCommandDistribution.builder()
+			.legacyPackageResolverFactory(resolverFactory)
+			.build()
+			.packageOf(Command.MongoD, distribution, DistributionBaseUrl.of("https://first"));
+
+		assertThat(resolved).hasValue(1);
+	}
+
+	@Test
+	public void instancesWithOtherFactoryDoNotShareResolvedPackages() {
+		packageOf(Command.MongoD, "https://first");
+		Function<Command, PackageResolver> otherFactory = command -> resolverFactory.apply(command)::packageFor;
+		PackageOfCommandDistribution.builder()
+			.legacyPackageResolverFactory(otherFactory)
+			.build()
+			.packageOf(Command.MongoD, distribution, DistributionBaseUrl.of("https://first"));
+
+		assertThat(resolved).hasValue(2);
+	}
+
+	@Test
+	public void defaultInstancesShareResolvedPackages() {
+		Distribution linux = Distribution.of(Version.of("6.0.1"), ImmutablePlatform.builder()
+			.operatingSystem(CommonOS.Linux)
+			.architecture(CommonArchitecture.X86_64)
+			.build());
+		DistributionBaseUrl baseUrl = DistributionBaseUrl.of("https://fastdl.mongodb.org");
+
+		Package first = PackageOfCommandDistribution.withDefaults().packageOf(Command.MongoD, linux, baseUrl);
+		Package second = PackageOfCommandDistribution.withDefaults().packageOf(Command.MongoD, linux, baseUrl);
+
+		assertThat(second).isSameAs(first);
+	}
+
+	private Package packageOf(Command command, String baseUrl) {
+		return testee.packageOf(command, distribution, DistributionBaseUrl.of(baseUrl));
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.reverse.State;
+import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.TearDown;
+import de.flapdoodle.reverse.TransitionWalker;
+import de.flapdoodle.reverse.Transitions;
+import de.flapdoodle.reverse.transitions.Join;
+import de.flapdoodle.reverse.transitions.Start;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ParallelWalkTest {
+
+	private static final StateID<String> LEFT = StateID.of("left", String.class);
+	private static final StateID<String> RIGHT = StateID.of("right", String.class);
+	private static final StateID<String> BOTH = StateID.of("both", String.class);
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+	private final List<String> tearDowns = new CopyOnWriteArrayList<>();
+
+	@AfterEach
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void independentStatesAreResolvedConcurrently() {
+		CountDownLatch bothRunning = new CountDownLatch(2);
+		Transitions transitions = Transitions.from(
+			Start.to(LEFT).with(() -> state("left", bothRunning)),
+			Start.to(RIGHT).with(() -> state("right", bothRunning)),
+			Join.given(LEFT).and(RIGHT).state(BOTH).with((l, r) -> State.of(l + "+" + r, tearDown()))
+		);
+
+		try (TransitionWalker.ReachedState<String> both = ParallelWalk.initState(transitions, BOTH, executor, ParallelWalk.states(LEFT, RIGHT))) {
+			assertThat(both.current()).isEqualTo("left+right");
+			assertThat(tearDowns).isEmpty();
+		}
+
+		assertThat(tearDowns).startsWith("left+right").containsExactlyInAnyOrder("left+right", "left", "right");
+	}
+
+	@Test
+	public void resolvedStatesAreClosedIfOtherStateFails() {
+		Transitions transitions = Transitions.from(
+			Start.to(LEFT).with(() -> State.of("left", tearDown())),
+			Start.to(RIGHT).with(() -> {
+				throw new IllegalStateException("right failed");
+			}),
+			Join.given(LEFT).and(RIGHT).state(BOTH).with((l, r) -> State.of(l + "+" + r, tearDown()))
+		);
+
+		assertThatThrownBy(() -> ParallelWalk.initState(transitions, BOTH, executor, ParallelWalk.states(LEFT, RIGHT)))
+			.hasRootCauseMessage("right failed");
+
+		assertThat(tearDowns).containsExactly("left");
+	}
+
+	@Test
+	public void resolvedStatesAreClosedIfFinalWalkFails() {
+		Transitions transitions = Transitions.from(
+			Start.to(LEFT).with(() -> State.of("left", tearDown())),
+			Start.to(RIGHT).with(() -> State.of("right", tearDown())),
+			Join.given(LEFT).and(RIGHT).state(BOTH).with((l, r) -> {
+				throw new IllegalStateException("join failed");
+			})
+		);
+
+		assertThatThrownBy(() -> ParallelWalk.initState(transitions, BOTH, executor, ParallelWalk.states(LEFT, RIGHT)))
+			.hasRootCauseMessage("join failed");
+
+		assertThat(tearDowns).containsExactlyInAnyOrder("left", "right");
+	}
+
+	private State<String> state(String value, CountDownLatch bothRunning) {
+		bothRunning.countDown();
+		try {
+			assertThat(bothRunning.await(5, TimeUnit.SECONDS)).isTrue();
+		}
+		catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		return State.of(value, tearDown());
+	}
+
+	private TearDown<String> tearDown() {
+		return tearDowns::add;
+	}
+}
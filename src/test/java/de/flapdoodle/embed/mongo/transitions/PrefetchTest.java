@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import com.sun.net.httpserver.HttpServer;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.packageresolver.Command;
+import de.flapdoodle.embed.mongo.types.DistributionBaseUrl;
+import de.flapdoodle.embed.process.io.directories.PersistentDir;
+import de.flapdoodle.os.CommonArchitecture;
+import de.flapdoodle.os.CommonOS;
+import de.flapdoodle.os.ImmutablePlatform;
+import de.flapdoodle.os.Platform;
+import de.flapdoodle.reverse.transitions.Start;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrefetchTest {
+
+	private static final Platform LINUX = ImmutablePlatform.builder()
+		.operatingSystem(CommonOS.Linux)
+		.architecture(CommonArchitecture.X86_64)
+		.build();
+
+	private final AtomicInteger downloads = new AtomicInteger();
+	private HttpServer server;
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", exchange -> {
+			downloads.incrementAndGet();
+			byte[] archive = tgz("mongodb-linux/bin/mongod", ("#!/bin/sh\necho " + exchange.getRequestURI()).getBytes(StandardCharsets.UTF_8));
+			exchange.sendResponseHeaders(200, archive.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(archive);
+			}
+		});
+		server.start();
+	}
+
+	@AfterEach
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void prefetchedPackagesAreExportedAndImportedWithoutDownload(@TempDir Path tempDir) throws IOException {
+		List<PrefetchTarget> targets = Arrays.asList(
+			PrefetchTarget.of(Command.MongoD, Version.Main.V6_0, LINUX),
+			PrefetchTarget.of(Command.MongoD, Version.Main.V5_0, LINUX)
+		);
+
+		Prefetch prefetch = prefetchInto(tempDir.resolve("store"));
+		assertThat(prefetch.prefetch(targets)).containsExactlyElementsOf(targets);
+		assertThat(downloads).hasValue(2);
+
+		prefetch.prefetch(targets);
+		assertThat(downloads).hasValue(2);
+
+		Path bundle = tempDir.resolve("bundle.tgz");
+		assertThat(prefetch.exportBundle(bundle)).isEqualTo(4);
+
+		Prefetch imported = prefetchInto(tempDir.resolve("imported"));
+		assertThat(imported.importBundle(bundle)).isEqualTo(4);
+		assertThat(imported.importBundle(bundle)).isEqualTo(0);
+
+		server.stop(0);
+		imported.prefetch(targets);
+		assertThat(downloads).hasValue(2);
+	}
+
+	private Prefetch prefetchInto(Path persistentDir) throws IOException {
+		Files.createDirectories(persistentDir);
+		return Prefetch.builder()
+			.persistentBaseDir(Start.to(PersistentDir.class).initializedWith(PersistentDir.of(persistentDir)))
+			.distributionBaseUrl(Start.to(DistributionBaseUrl.class)
+				.initializedWith(DistributionBaseUrl.of("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort())))
+			.evictionConfig(Start.to(de.flapdoodle.embed.mongo.config.EvictionConfig.class)
+				.initializedWith(de.flapdoodle.embed.mongo.config.EvictionConfig.disabled()))
+			.parallel(2)
+			.build();
+	}
+
+	private static byte[] tgz(String name, byte[] content) throws IOException {
+		ByteArrayOutputStream ret = new ByteArrayOutputStream();
+		try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(ret))) {
+			TarArchiveEntry entry = new TarArchiveEntry(name);
+			entry.setSize(content.length);
+			entry.setMode(0755);
+			tar.putArchiveEntry(entry);
+			tar.write(content);
+			tar.closeArchiveEntry();
+		}
+		return ret.toByteArray();
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
+import de.flapdoodle.embed.process.config.store.FileSet;
+import de.flapdoodle.embed.process.config.store.FileType;
+import de.flapdoodle.embed.process.config.store.Package;
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import de.flapdoodle.embed.process.io.progress.ProgressListener;
+import de.flapdoodle.embed.process.store.ExtractedFileSetStore;
+import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.TransitionWalker;
+import de.flapdoodle.reverse.Transitions;
+import de.flapdoodle.reverse.transitions.Derive;
+import de.flapdoodle.reverse.transitions.Start;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReportingTransitionTest {
+
+	private static final String URL = "http://localhost/archive.tgz";
+	private static final Path ARCHIVE = Paths.get("archive.tgz");
+	private static final FileSet FILE_SET = FileSet.builder().addEntry(FileType.Executable, "mongod").build();
+	private static final ExtractedFileSet EXTRACTED = ExtractedFileSet.builder(Paths.get("extracted"))
+		.executable(Paths.get("extracted", "mongod"))
+		.build();
+
+	private final List<String> events = new ArrayList<>();
+
+	@Test
+	public void cachedFileSetIsNotReported() {
+		try (TransitionWalker.ReachedState<ExtractedFileSet> fileSet = extract(store(Optional.of(EXTRACTED)))) {
+			assertThat(fileSet.current()).isEqualTo(EXTRACTED);
+		}
+		assertThat(events).isEmpty();
+	}
+
+	@Test
+	public void extractionIsReportedOnMiss() {
+		try (TransitionWalker.ReachedState<ExtractedFileSet> fileSet = extract(store(Optional.empty()))) {
+			assertThat(fileSet.current()).isEqualTo(EXTRACTED);
+		}
+		assertThat(events).containsExactly("start extract " + URL, "done extract " + URL);
+	}
+
+	@Test
+	public void failedExtractionIsNotReportedAsDone() {
+		ExtractedFileSetStore failing = new ExtractedFileSetStore() {
+			@Override
+			public Optional<ExtractedFileSet> extractedFileSet(Path archive, FileSet fileSet) {
+				return Optional.empty();
+			}
+
+			@Override
+			public ExtractedFileSet store(Path archive, FileSet fileSet, ExtractedFileSet src) {
+				throw new IllegalStateException("disk full");
+			}
+		};
+
+		assertThatThrownBy(() -> extract(failing))
+			.isInstanceOf(RuntimeException.class);
+		assertThat(events).containsExactly("start extract " + URL, "info extract " + URL + " failed");
+	}
+
+	private TransitionWalker.ReachedState<ExtractedFileSet> extract(ExtractedFileSetStore store) {
+		return Transitions.from(
+				Start.to(Package.class).initializedWith(Package.of(ArchiveType.TGZ, FILE_SET, URL)),
+				Start.to(ProgressListener.class).initializedWith(recording()),
+				Start.to(ExtractedFileSetStore.class).initializedWith(store),
+				ReportingTransition.of(Derive.given(ExtractedFileSetStore.class)
+					.state(ExtractedFileSet.class)
+					.deriveBy(it -> it.extractedFileSet(ARCHIVE, FILE_SET)
+						.orElseGet(() -> {
+							try {
+								return it.store(ARCHIVE, FILE_SET, EXTRACTED);
+							}
+							catch (IOException iox) {
+								throw new UncheckedIOException(iox);
+							}
+						})), "extract"))
+			.walker()
+			.initState(StateID.of(ExtractedFileSet.class));
+	}
+
+	private static ExtractedFileSetStore store(Optional<ExtractedFileSet> cached) {
+		return new ExtractedFileSetStore() {
+			@Override
+			public Optional<ExtractedFileSet> extractedFileSet(Path archive, FileSet fileSet) {
+				return cached;
+			}
+
+			@Override
+			public ExtractedFileSet store(Path archive, FileSet fileSet, ExtractedFileSet src) {
+				return src;
+			}
+		};
+	}
+
+	private ProgressListener recording() {
+		return new ProgressListener() {
+			@Override
+			public void progress(String label, int percent) {
+				events.add("progress " + label);
+			}
+
+			@Override
+			public void done(String label) {
+				events.add("done " + label);
+			}
+
+			@Override
+			public void start(String label) {
+				events.add("start " + label);
+			}
+
+			@Override
+			public void info(String label, String message) {
+				events.add("info " + label + " " + message);
+			}
+		};
+	}
+}
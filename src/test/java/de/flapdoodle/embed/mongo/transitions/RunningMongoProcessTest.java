@@ -20,14 +20,25 @@
  */
 package de.flapdoodle.embed.mongo.transitions;
 
-import de.flapdoodle.embed.process.io.SuccessMessageLineListener;
+import de.flapdoodle.embed.mongo.config.StartupLogCapture;
+import de.flapdoodle.embed.mongo.config.StartupMessages;
+import de.flapdoodle.embed.mongo.runtime.LogEventListener;
+import de.flapdoodle.embed.mongo.runtime.StructuredLog;
+import de.flapdoodle.embed.process.distribution.Version;
+import de.flapdoodle.types.Try;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 class RunningMongoProcessTest {
 
+	private static final String STARTING = "{\"t\":{\"$date\":\"2022-11-02T10:00:00.000+01:00\"},\"s\":\"I\",  \"c\":\"CONTROL\",  \"id\":4615611, \"ctx\":\"initandlisten\",\"msg\":\"MongoDB starting\",\"attr\":{\"pid\":4711,\"port\":27017}}";
+	private static final String WAITING_FOR_CONNECTIONS = "{\"t\":{\"$date\":\"2022-11-02T10:00:01.000+01:00\"},\"s\":\"I\",  \"c\":\"NETWORK\",  \"id\":23016,   \"ctx\":\"listener\",\"msg\":\"Waiting for connections\",\"attr\":{\"port\":27017,\"ssl\":\"off\"}}";
+
 	@ParameterizedTest
 	@ValueSource(strings = {
 		"-->failed errno<--",
@@ -41,7 +52,7 @@ class RunningMongoProcessTest {
 		"the code execution cannot proceed because SSLEAY32.dll was not found. Reinstalling may fix this problem."
 	})
 	void acceptKnownErrorMessages(String message) {
-		SuccessMessageLineListener testeePart = RunningMongoProcess.errorMessageAwareLogWatch();
+		StartupLogWatch testeePart = RunningMongoProcess.errorMessageAwareLogWatch(StartupMessages.defaults(), StartupLogCapture.defaults(), StructuredLog.disabled());
 		testeePart.inspect(message);
 		assertThat(testeePart.successMessageFound()).isFalse();
 		assertThat(testeePart.errorMessage())
@@ -56,8 +67,130 @@ class RunningMongoProcessTest {
 		"Waiting for connections"
 	})
 	void acceptSuccessMessage(String message) {
-		SuccessMessageLineListener testeePart = RunningMongoProcess.errorMessageAwareLogWatch();
+		StartupLogWatch testeePart = RunningMongoProcess.errorMessageAwareLogWatch(StartupMessages.defaults(), StartupLogCapture.defaults(), StructuredLog.disabled());
 		testeePart.inspect(message);
 		assertThat(testeePart.successMessageFound()).isTrue();
 	}
-}
\ No newline at end of file
+
+	@Test
+	void readyIfWireProtocolProbeAnswers() {
+		StartupLogWatch logWatch = RunningMongoProcess.errorMessageAwareLogWatch(StartupMessages.defaults(), StartupLogCapture.defaults(), StructuredLog.disabled());
+		AtomicInteger probes = new AtomicInteger();
+
+		boolean ready = RunningMongoProcess.waitUntilReady(logWatch, () -> true, () -> probes.incrementAndGet() >= 3, 10000);
+
+		assertThat(ready).isTrue();
+		assertThat(probes.get()).isEqualTo(3);
+	}
+
+	@Test
+	void knownErrorWinsOverWireProtocolProbe() {
+		StartupLogWatch logWatch = RunningMongoProcess.errorMessageAwareLogWatch(StartupMessages.defaults(), StartupLogCapture.defaults(), StructuredLog.disabled());
+		logWatch.inspect("ERROR: something");
+
+		assertThat(RunningMongoProcess.waitUntilReady(logWatch, () -> true, () -> true, 10000)).isFalse();
+	}
+
+	@Test
+	void notReadyAfterTimeout() {
+		StartupLogWatch logWatch = RunningMongoProcess.errorMessageAwareLogWatch(StartupMessages.defaults(), StartupLogCapture.defaults(), StructuredLog.disabled());
+
+		assertThat(RunningMongoProcess.waitUntilReady(logWatch, () -> true, () -> false, 120)).isFalse();
+	}
+
+	@Test
+	void notReadyAsSoonAsProcessHasExited() {
+		StartupLogWatch logWatch = RunningMongoProcess.errorMessageAwareLogWatch(StartupMessages.defaults(), StartupLogCapture.defaults(), StructuredLog.disabled());
+
+		long start = System.currentTimeMillis();
+		assertThat(RunningMongoProcess.waitUntilReady(logWatch, () -> false, () -> false, 10000)).isFalse();
+		assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+	}
+
+	@Test
+	void processIdIsExtractedFromStructuredLog() {
+		StartupLogWatch logWatch = RunningMongoProcess.errorMessageAwareLogWatch(StartupMessages.defaults(), StartupLogCapture.defaults(), StructuredLog.disabled());
+		logWatch.inspect("{\"t\":{\"$date\":\"2022-11-02T10:00:00.000+01:00\"},\"s\":\"I\",  \"c\":\"CONTROL\",  \"id\":4615611, \"ctx\":\"initandlisten\",\"msg\":\"MongoDB starting\",\"attr\":{\"pid\":4711,\"port\":27017}}");
+		logWatch.inspect("{\"t\":{\"$date\":\"2022-11-02T10:00:01.000+01:00\"},\"s\":\"I\",  \"c\":\"NETWORK\",  \"id\":23016,   \"ctx\":\"listener\",\"msg\":\"Waiting for connections\",\"attr\":{\"port\":27017,\"ssl\":\"off\"}}");
+
+		assertThat(logWatch.successMessageFound()).isTrue();
+		assertThat(logWatch.processId()).isEqualTo(4711);
+	}
+
+	@Test
+	void noParsingAfterStartupWithoutListener() {
+		AtomicInteger parsed = new AtomicInteger();
+		StartupLogWatch logWatch = countingLogWatch(parsed, false);
+		logWatch.inspect(STARTING);
+		logWatch.inspect(WAITING_FOR_CONNECTIONS);
+		assertThat(parsed).hasValue(2);
+
+		logWatch.inspect(WAITING_FOR_CONNECTIONS);
+		logWatch.inspect(STARTING);
+		assertThat(parsed).hasValue(2);
+		assertThat(StructuredLog.of(Version.of("6.0.1"), LogEventListener.noop()).hasListener()).isFalse();
+	}
+
+	@Test
+	void parsingAfterStartupWithListener() {
+		AtomicInteger parsed = new AtomicInteger();
+		StartupLogWatch logWatch = countingLogWatch(parsed, true);
+		logWatch.inspect(STARTING);
+		logWatch.inspect(WAITING_FOR_CONNECTIONS);
+		logWatch.inspect(WAITING_FOR_CONNECTIONS);
+
+		assertThat(parsed).hasValue(3);
+		assertThat(StructuredLog.of(Version.of("6.0.1"), event -> {}).hasListener()).isTrue();
+	}
+
+	private static StartupLogWatch countingLogWatch(AtomicInteger parsed, boolean eventsAfterStartup) {
+		return new StartupLogWatch(LogLineMatcher.of(StartupMessages.defaults()), new LineBuffer(100, 10000), line -> {
+			parsed.incrementAndGet();
+			return StructuredLog.parse(line);
+		}, eventsAfterStartup);
+	}
+
+	@Test
+	void processIdOfProcessIsUsedIfLogLineIsMissing() {
+		StartupLogWatch logWatch = RunningMongoProcess.errorMessageAwareLogWatch(StartupMessages.defaults(), StartupLogCapture.defaults(), StructuredLog.disabled());
+
+		assertThat(RunningMongoProcess.processId(logWatch, () -> 1234L, 10000)).isEqualTo(1234);
+	}
+
+	@Test
+	void waitForProcessIdIfProcessDoesNotKnowIt() throws InterruptedException {
+		StartupLogWatch logWatch = RunningMongoProcess.errorMessageAwareLogWatch(StartupMessages.defaults(), StartupLogCapture.defaults(), StructuredLog.disabled());
+		Thread logLines = new Thread(() -> {
+			Try.run(() -> Thread.sleep(100));
+			logWatch.inspect("{\"t\":{\"$date\":\"2022-11-02T10:00:00.000+01:00\"},\"s\":\"I\",  \"c\":\"CONTROL\",  \"id\":4615611, \"ctx\":\"initandlisten\",\"msg\":\"MongoDB starting\",\"attr\":{\"pid\":4711,\"port\":27017}}");
+		});
+		logLines.start();
+
+		assertThat(RunningMongoProcess.processId(logWatch, () -> null, 10000)).isEqualTo(4711);
+		logLines.join();
+	}
+
+	@Test
+	void onlyLastLinesAreKept() {
+		StartupLogWatch logWatch = RunningMongoProcess.errorMessageAwareLogWatch(StartupMessages.defaults(), StartupLogCapture.builder()
+			.maxLines(2)
+			.build(), StructuredLog.disabled());
+		logWatch.inspect("one");
+		logWatch.inspect("two");
+		logWatch.inspect("three");
+
+		assertThat(logWatch.allLines()).isEqualTo("... (1 lines dropped)\ntwo\nthree\n");
+	}
+
+	@Test
+	void fatalStructuredLogMessageFailsWithPrecedingError() {
+		StartupLogWatch logWatch = RunningMongoProcess.errorMessageAwareLogWatch(StartupMessages.defaults(), StartupLogCapture.defaults(),
+			StructuredLog.of(Version.of("6.0.1"), LogEventListener.noop()));
+		logWatch.inspect("{\"t\":{\"$date\":\"2022-11-02T10:00:00.000+01:00\"},\"s\":\"E\",\"c\":\"STORAGE\",\"id\":20557,\"ctx\":\"initandlisten\",\"msg\":\"DBException in initAndListen, terminating\",\"attr\":{\"error\":\"Location28596: Unable to determine status of lock file\"}}");
+		assertThat(logWatch.errorMessage()).isEmpty();
+
+		logWatch.inspect("{\"t\":{\"$date\":\"2022-11-02T10:00:00.000+01:00\"},\"s\":\"F\",\"c\":\"-\",\"id\":23091,\"ctx\":\"initandlisten\",\"msg\":\"Fatal assertion\",\"attr\":{\"msgid\":28596}}");
+		assertThat(logWatch.errorMessage())
+			.contains("DBException in initAndListen, terminating: Location28596: Unable to determine status of lock file");
+	}
+}
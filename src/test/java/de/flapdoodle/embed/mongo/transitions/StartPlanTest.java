@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import de.flapdoodle.reverse.State;
+import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.TransitionWalker;
+import de.flapdoodle.reverse.Transitions;
+import de.flapdoodle.reverse.transitions.Derive;
+import de.flapdoodle.reverse.transitions.Join;
+import de.flapdoodle.reverse.transitions.Start;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StartPlanTest {
+
+	private static final StateID<String> BASE = StateID.of("base", String.class);
+	private static final StateID<String> SHARED = StateID.of("shared", String.class);
+	private static final StateID<Integer> INSTANCE = StateID.of("instance", Integer.class);
+	private static final StateID<String> RUNNING = StateID.of("running", String.class);
+
+	private final AtomicInteger sharedCreated = new AtomicInteger();
+	private final AtomicInteger instanceCreated = new AtomicInteger();
+	private final List<String> tearDowns = new ArrayList<>();
+
+	private final Transitions transitions = Transitions.from(
+		Start.to(BASE).initializedWith("base"),
+		Derive.given(BASE).state(SHARED).with(base -> {
+			sharedCreated.incrementAndGet();
+			return State.of(base + "-shared", tearDowns::add);
+		}),
+		Start.to(INSTANCE).providedBy(instanceCreated::incrementAndGet),
+		Join.given(SHARED).and(INSTANCE).state(RUNNING).with((shared, instance) -> State.of(shared + "-" + instance, tearDowns::add))
+	);
+
+	@Test
+	public void sharedStateIsResolvedOnlyOnce() {
+		try (StartPlan<String> plan = StartPlan.of(transitions, RUNNING, Collections.singletonList(SHARED))) {
+			try (TransitionWalker.ReachedState<String> first = plan.start()) {
+				assertThat(first.current()).isEqualTo("base-shared-1");
+			}
+			try (TransitionWalker.ReachedState<String> second = plan.start()) {
+				assertThat(second.current()).isEqualTo("base-shared-2");
+			}
+
+			assertThat(sharedCreated).hasValue(1);
+			assertThat(instanceCreated).hasValue(2);
+			assertThat(tearDowns).containsExactly("base-shared-1", "base-shared-2");
+		}
+
+		assertThat(tearDowns).containsExactly("base-shared-1", "base-shared-2", "base-shared");
+	}
+
+	@Test
+	public void closedPlanCanNotStart() {
+		StartPlan<String> plan = StartPlan.of(transitions, RUNNING, Collections.singletonList(SHARED));
+		plan.close();
+
+		assertThatThrownBy(plan::start)
+			.isInstanceOf(IllegalStateException.class)
+			.hasMessage("plan is closed");
+		assertThat(sharedCreated).hasValue(0);
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.transitions;
+
+import com.sun.net.httpserver.HttpServer;
+import de.flapdoodle.embed.process.archives.ExtractedFileSet;
+import de.flapdoodle.embed.process.config.store.FileSet;
+import de.flapdoodle.embed.process.config.store.FileType;
+import de.flapdoodle.embed.process.config.store.Package;
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import de.flapdoodle.embed.process.io.directories.TempDir;
+import de.flapdoodle.embed.process.io.progress.ProgressListener;
+import de.flapdoodle.embed.process.io.progress.StandardConsoleProgressListener;
+import de.flapdoodle.embed.process.store.ContentHashExtractedFileSetStore;
+import de.flapdoodle.embed.process.store.DownloadCache;
+import de.flapdoodle.embed.process.store.ExtractedFileSetStore;
+import de.flapdoodle.embed.process.types.Name;
+import de.flapdoodle.reverse.StateID;
+import de.flapdoodle.reverse.TransitionWalker;
+import de.flapdoodle.reverse.Transitions;
+import de.flapdoodle.reverse.transitions.Start;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamingExtractPackageTest {
+
+	@org.junit.jupiter.api.io.TempDir
+	Path tempDir;
+
+	private final AtomicInteger downloads = new AtomicInteger();
+	private byte[] archive;
+	private HttpServer server;
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		byte[] filler = new byte[256 * 1024];
+		new Random(42).nextBytes(filler);
+		archive = tgz(
+			"mongodb-linux/README", "readme".getBytes(StandardCharsets.UTF_8),
+			"mongodb-linux/bin/mongod", "#!/bin/sh\necho mongod".getBytes(StandardCharsets.UTF_8),
+			"mongodb-linux/bin/mongos", filler
+		);
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/archive.tgz", exchange -> {
+			downloads.incrementAndGet();
+			exchange.sendResponseHeaders(200, archive.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(archive);
+			}
+		});
+		server.createContext("/broken.tgz", exchange -> {
+			downloads.incrementAndGet();
+			// connection is closed after half of the archive
+			exchange.sendResponseHeaders(200, archive.length);
+			exchange.getResponseBody().write(archive, 0, archive.length / 2);
+			exchange.getResponseBody().flush();
+			exchange.close();
+		});
+		server.start();
+	}
+
+	@AfterEach
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void extractWhileDownloadingAndCacheArchive() throws IOException {
+		Path archives = tempDir.resolve("archives");
+
+		try (TransitionWalker.ReachedState<ExtractedFileSet> fileSet = extract(archives)) {
+			assertThat(fileSet.current().executable()).hasContent("#!/bin/sh\necho mongod");
+			assertThat(fileSet.current().executable().toFile().canExecute()).isTrue();
+		}
+
+		Path cachedArchive = new AtomicDownloadCache(archives).archivePath(new java.net.URL(url()), ArchiveType.TGZ);
+		assertThat(cachedArchive).hasBinaryContent(archive);
+
+		try (TransitionWalker.ReachedState<ExtractedFileSet> fileSet = extract(archives)) {
+			assertThat(fileSet.current().executable()).hasContent("#!/bin/sh\necho mongod");
+		}
+		assertThat(downloads).hasValue(1);
+	}
+
+	@Test
+	public void partiallyExtractedFilesAreRemovedIfDownloadFails() throws IOException {
+		Path archives = tempDir.resolve("archives");
+
+		assertThatThrownBy(() -> extract(archives, url("/broken.tgz")))
+			.isInstanceOf(RuntimeException.class);
+
+		try (Stream<Path> files = Files.list(tempDir)) {
+			assertThat(files.map(it -> it.getFileName().toString()))
+				.noneMatch(it -> it.startsWith("mongod"));
+		}
+	}
+
+	@Test
+	public void failWithNamesOfEntriesNotFoundInArchive() throws IOException {
+		Path archives = tempDir.resolve("archives");
+		FileSet lackingLibrary = FileSet.builder()
+			.addEntry(FileType.Executable, "mongod")
+			.addEntry(FileType.Library, "libmissing.so")
+			.build();
+
+		assertThatThrownBy(() -> extract(archives, url(), lackingLibrary))
+			.isInstanceOf(RuntimeException.class)
+			.hasStackTraceContaining("libmissing.so");
+
+		extract(archives).close();
+		assertThat(downloads).hasValue(2);
+
+		// archive is cached now, extracted with the archive index
+		assertThatThrownBy(() -> extract(archives, url(), lackingLibrary))
+			.isInstanceOf(RuntimeException.class)
+			.hasStackTraceContaining("libmissing.so");
+		assertThat(downloads).hasValue(2);
+	}
+
+	private TransitionWalker.ReachedState<ExtractedFileSet> extract(Path archives) {
+		return extract(archives, url());
+	}
+
+	private TransitionWalker.ReachedState<ExtractedFileSet> extract(Path archives, String url) {
+		return extract(archives, url, FileSet.builder().addEntry(FileType.Executable, "mongod").build());
+	}
+
+	private TransitionWalker.ReachedState<ExtractedFileSet> extract(Path archives, String url, FileSet fileSet) {
+		Package distPackage = Package.builder()
+			.archiveType(ArchiveType.TGZ)
+			.fileSet(fileSet)
+			.url(url)
+			.build();
+
+		return Transitions.from(
+				Start.to(Name.class).initializedWith(Name.of("mongod")),
+				Start.to(Package.class).initializedWith(distPackage),
+				Start.to(TempDir.class).initializedWith(TempDir.of(tempDir)),
+				Start.to(DownloadCache.class).initializedWith(new AtomicDownloadCache(archives)),
+				Start.to(ExtractedFileSetStore.class).initializedWith(new ContentHashExtractedFileSetStore(tempDir.resolve("fileSets"))),
+				Start.to(ProgressListener.class).initializedWith(new StandardConsoleProgressListener()),
+				StreamingExtractPackage.withDefaults()
+			)
+			.walker()
+			.initState(StateID.of(ExtractedFileSet.class));
+	}
+
+	private String url() {
+		return url("/archive.tgz");
+	}
+
+	private String url(String path) {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+	}
+
+	private static byte[] tgz(Object... nameAndContent) throws IOException {
+		ByteArrayOutputStream ret = new ByteArrayOutputStream();
+		try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(ret))) {
+			for (int i = 0; i < nameAndContent.length; i += 2) {
+				byte[] content = (byte[]) nameAndContent[i + 1];
+				TarArchiveEntry entry = new TarArchiveEntry((String) nameAndContent[i]);
+				entry.setSize(content.length);
+				tar.putArchiveEntry(entry);
+				tar.write(content);
+				tar.closeArchiveEntry();
+			}
+		}
+		return ret.toByteArray();
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2011
+ *   Michael Mosmann <michael@mosmann.de>
+ *   Martin Jöhren <m.joehren@googlemail.com>
+ *
+ * with contributions from
+ * 	konstantin-ba@github,Archimedes Trajano	(trajano@github)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.embed.mongo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LruCacheTest {
+
+	private final AtomicInteger computed = new AtomicInteger();
+
+	@Test
+	public void valueIsComputedOnlyOnce() {
+		LruCache<String, String> testee = new LruCache<>(2);
+
+		assertThat(testee.get("a", this::upperCase)).isEqualTo("A");
+		assertThat(testee.get("a", this::upperCase)).isEqualTo("A");
+		assertThat(computed).hasValue(1);
+	}
+
+	@Test
+	public void leastRecentlyUsedEntryIsRemoved() {
+		LruCache<String, String> testee = new LruCache<>(2);
+
+		testee.get("a", this::upperCase);
+		testee.get("b", this::upperCase);
+		testee.get("a", this::upperCase);
+		testee.get("c", this::upperCase);
+		assertThat(testee.size()).isEqualTo(2);
+		assertThat(computed).hasValue(3);
+
+		testee.get("a", this::upperCase);
+		assertThat(computed).hasValue(3);
+		testee.get("b", this::upperCase);
+		assertThat(computed).hasValue(4);
+	}
+
+	private String upperCase(String key) {
+		computed.incrementAndGet();
+		return key.toUpperCase();
+	}
+}